@@ -20,6 +20,7 @@ import org.xwalk.app.runtime.CrossPackageWrapper;
 import org.xwalk.app.runtime.CrossPackageWrapperExceptionHandler;
 import org.xwalk.app.runtime.XWalkRuntimeClient;
 import org.xwalk.app.runtime.XWalkRuntimeLibraryException;
+import org.xwalk.app.runtime.XWalkRuntimeLibraryProbe;
 
 public abstract class XWalkRuntimeActivityBase extends Activity implements CrossPackageWrapperExceptionHandler {
 
@@ -35,6 +36,17 @@ public abstract class XWalkRuntimeActivityBase extends Activity implements Cross
 
     private AlertDialog mLibraryNotFoundDialog = null;
 
+    // The runtime library is being probed, see tryLoadRuntimeView().
+    private boolean mProbing = false;
+
+    private boolean mTriedLoadRuntimeView = false;
+
+    private boolean mCreated = false;
+
+    private boolean mResumed = false;
+
+    private boolean mDestroyed = false;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         IntentFilter intentFilter = new IntentFilter("org.xwalk.intent");
@@ -47,7 +59,7 @@ public abstract class XWalkRuntimeActivityBase extends Activity implements Cross
                 if (bundle == null)
                     return;
 
-                if (bundle.containsKey("remotedebugging")) {
+                if (bundle.containsKey("remotedebugging") && mRuntimeView != null) {
                     String extra = bundle.getString("remotedebugging");
                     if (extra.equals("true")) {
                         String mPackageName = getApplicationContext().getPackageName();
@@ -61,7 +73,8 @@ public abstract class XWalkRuntimeActivityBase extends Activity implements Cross
         registerReceiver(mReceiver, intentFilter);
         super.onCreate(savedInstanceState);
         tryLoadRuntimeView();
-        mRuntimeView.onCreate();
+        if (mRuntimeView != null) mRuntimeView.onCreate();
+        mCreated = true;
     }
 
     @Override
@@ -73,31 +86,34 @@ public abstract class XWalkRuntimeActivityBase extends Activity implements Cross
     @Override
     public void onPause() {
         super.onPause();
-        mRuntimeView.onPause();
+        mResumed = false;
+        if (mRuntimeView != null) mRuntimeView.onPause();
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        mRuntimeView.onResume();
+        mResumed = true;
+        if (mRuntimeView != null) mRuntimeView.onResume();
     }
 
     @Override
     public void onDestroy() {
         unregisterReceiver(mReceiver);
         super.onDestroy();
-        mRuntimeView.onDestroy();
+        mDestroyed = true;
+        if (mRuntimeView != null) mRuntimeView.onDestroy();
     }
 
     @Override
     public void onNewIntent(Intent intent) {
-    	if (!mRuntimeView.onNewIntent(intent)) super.onNewIntent(intent);
+        if (mRuntimeView == null || !mRuntimeView.onNewIntent(intent)) super.onNewIntent(intent);
     }
 
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
-        mRuntimeView.onActivityResult(requestCode, resultCode, data);
+        if (mRuntimeView != null) mRuntimeView.onActivityResult(requestCode, resultCode, data);
     }
 
     private String getLibraryApkDownloadUrl() {
@@ -112,28 +128,78 @@ public abstract class XWalkRuntimeActivityBase extends Activity implements Cross
         return getString(resId);
     }
 
+    /*
+     * The runtime library is probed before loading the runtime view. When the
+     * result is already known, that is in embedded mode or once a process has
+     * probed, the view is loaded at once. Else it's probed in background and
+     * the view is loaded later, so a missing or outdated library doesn't hold
+     * the UI thread.
+     */
     private void tryLoadRuntimeView() {
-        if (mRuntimeView == null || mRuntimeView.get() == null) {
-            mRuntimeView = new XWalkRuntimeClient(this, null, this);
-            if (mRuntimeView.get() != null) {
-                mShownNotFoundDialog = false;
-                if (mLibraryNotFoundDialog != null) mLibraryNotFoundDialog.cancel();
-            }
-            if (mRemoteDebugging) {
-                String mPackageName = getApplicationContext().getPackageName();
-                mRuntimeView.enableRemoteDebugging("", mPackageName);
-            } else {
-                mRuntimeView.disableRemoteDebugging();
+        if (mRuntimeView != null && mRuntimeView.get() != null) return;
+        if (mProbing) return;
+        mProbing = true;
+        XWalkRuntimeLibraryProbe.probe(this, new XWalkRuntimeLibraryProbe.Callback() {
+            @Override
+            public void onProbed(XWalkRuntimeLibraryException error) {
+                mProbing = false;
+                if (mDestroyed) return;
+                // Loaded after onCreate(), the runtime view has to catch up.
+                boolean catchUp = mCreated && mRuntimeView == null;
+                loadRuntimeView(error);
+                if (!catchUp || mRuntimeView == null) return;
+                mRuntimeView.onCreate();
+                if (mResumed) mRuntimeView.onResume();
             }
+        });
+    }
+
+    private void loadRuntimeView(XWalkRuntimeLibraryException error) {
+        if (error != null) {
+            onException(error);
+            mTriedLoadRuntimeView = true;
+            didTryLoadRuntimeView(null);
+            return;
+        }
 
-            didTryLoadRuntimeView(mRuntimeView.get());
+        mRuntimeView = new XWalkRuntimeClient(this, null, this);
+        if (mRuntimeView.get() != null) {
+            mShownNotFoundDialog = false;
+            if (mLibraryNotFoundDialog != null) mLibraryNotFoundDialog.cancel();
         }
+        if (mRemoteDebugging) {
+            String mPackageName = getApplicationContext().getPackageName();
+            mRuntimeView.enableRemoteDebugging("", mPackageName);
+        } else {
+            mRuntimeView.disableRemoteDebugging();
+        }
+
+        mTriedLoadRuntimeView = true;
+        didTryLoadRuntimeView(mRuntimeView.get());
     }
 
+    /*
+     * Get the runtime view.
+     *
+     * In shared mode, the first activity of a process probes the runtime
+     * library in background: the runtime view is null from onCreate() until
+     * didTryLoadRuntimeView() is called, and stays null if the library can't
+     * be used. Descendants should use the runtime view from
+     * didTryLoadRuntimeView() rather than from onCreate() or onStart().
+     *
+     * @return the runtime view, or null if not loaded.
+     */
     public XWalkRuntimeClient getRuntimeView() {
         return mRuntimeView;
     }
 
+    /*
+     * @return whether didTryLoadRuntimeView() was called, successfully or not.
+     */
+    public boolean hasTriedLoadRuntimeView() {
+        return mTriedLoadRuntimeView;
+    }
+
     @Override
     public void onException(Exception e) {
         if (e.getClass() == XWalkRuntimeLibraryException.class) {
@@ -235,6 +301,10 @@ public abstract class XWalkRuntimeActivityBase extends Activity implements Cross
      * Descendant should handle both succeeded and failed to load
      * library apk.
      *
+     * It may be called after onCreate() when the runtime library is probed
+     * in background, see getRuntimeView(). Until then getRuntimeView()
+     * returns null.
+     *
      * @param, The RuntimeView loaded, it can be null for failed to load RuntimeView.
      */
     abstract protected void didTryLoadRuntimeView(View runtimeView);
@@ -10,7 +10,16 @@ import android.content.pm.PackageManager.NameNotFoundException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
 
+/**
+ * The reflection work is done once per process: the library context, the
+ * classes, their constructors and methods are cached the first time they
+ * are resolved, so creating the same wrapper again, like on every onStart
+ * of a runtime activity, doesn't repeat it. Failures are not cached: the
+ * library may be installed later.
+ */
 public abstract class CrossPackageWrapper {
     public final static String LIBRARY_APK_PACKAGE_NAME = "org.xwalk.runtime.lib";
     private Context mLibCtx;
@@ -19,31 +28,46 @@ public abstract class CrossPackageWrapper {
     private CrossPackageWrapperExceptionHandler mExceptionHandler;
     private static boolean sLibraryEmbedded = true;
 
+    // All guarded by sCacheLock.
+    private static final Object sCacheLock = new Object();
+    // The library package context, in shared mode.
+    private static Context sLibCtx;
+    private static final HashMap<String, Class<?>> sClasses = new HashMap<String, Class<?>>();
+    // Constructors and methods by class then signature, see getSignature().
+    private static final HashMap<Class<?>, HashMap<String, Constructor<?>>> sConstructors =
+            new HashMap<Class<?>, HashMap<String, Constructor<?>>>();
+    private static final HashMap<Class<?>, HashMap<String, Method>> sMethods =
+            new HashMap<Class<?>, HashMap<String, Method>>();
+
     public CrossPackageWrapper(Context ctx, String className,
             CrossPackageWrapperExceptionHandler handler, Class<?>... parameters) {
-        try {
-            mTargetClass = ctx.getClassLoader().loadClass(className);
-            sLibraryEmbedded = true;
-        } catch (ClassNotFoundException e) {
-            sLibraryEmbedded = false;
-        }
         mExceptionHandler = handler;
+        synchronized (sCacheLock) {
+            mTargetClass = sClasses.get(className);
+            if (mTargetClass != null) mLibCtx = sLibraryEmbedded ? ctx : sLibCtx;
+        }
+        if (mTargetClass == null) {
+            try {
+                mTargetClass = ctx.getClassLoader().loadClass(className);
+                sLibraryEmbedded = true;
+            } catch (ClassNotFoundException e) {
+                sLibraryEmbedded = false;
+            }
+        }
         try {
-            if (sLibraryEmbedded) {
-                mLibCtx = ctx;
-            } else {
-                mLibCtx = ctx.createPackageContext(
-                        LIBRARY_APK_PACKAGE_NAME,
-                        Context.CONTEXT_INCLUDE_CODE | Context.CONTEXT_IGNORE_SECURITY);
-                Context app = ctx.getApplicationContext();
-                assert(app instanceof XWalkRuntimeApplication);
-                XWalkRuntimeApplication xwalkApp = (XWalkRuntimeApplication) app;
-                xwalkApp.addResource(mLibCtx.getResources());
-
-                mTargetClass =
-                        mLibCtx.getClassLoader().loadClass(className);
+            if (mLibCtx == null) {
+                if (sLibraryEmbedded) {
+                    mLibCtx = ctx;
+                } else {
+                    mLibCtx = getLibraryContext(ctx);
+                    mTargetClass =
+                            mLibCtx.getClassLoader().loadClass(className);
+                }
+                synchronized (sCacheLock) {
+                    sClasses.put(className, mTargetClass);
+                }
             }
-            mCreator = mTargetClass.getConstructor(parameters);
+            mCreator = getConstructor(mTargetClass, parameters);
         } catch (NameNotFoundException e) {
             handleException(e);
         } catch (ClassNotFoundException e) {
@@ -53,6 +77,48 @@ public abstract class CrossPackageWrapper {
         }
     }
 
+    private static Context getLibraryContext(Context ctx) throws NameNotFoundException {
+        synchronized (sCacheLock) {
+            if (sLibCtx != null) return sLibCtx;
+        }
+        Context libCtx = ctx.createPackageContext(
+                LIBRARY_APK_PACKAGE_NAME,
+                Context.CONTEXT_INCLUDE_CODE | Context.CONTEXT_IGNORE_SECURITY);
+        Context app = ctx.getApplicationContext();
+        assert(app instanceof XWalkRuntimeApplication);
+        XWalkRuntimeApplication xwalkApp = (XWalkRuntimeApplication) app;
+        xwalkApp.addResource(libCtx.getResources());
+        synchronized (sCacheLock) {
+            // Keep the first one, its resources are the ones added to the application.
+            if (sLibCtx == null) sLibCtx = libCtx;
+            return sLibCtx;
+        }
+    }
+
+    private static String getSignature(String name, Class<?>... parameters) {
+        return name + Arrays.toString(parameters);
+    }
+
+    private static Constructor<?> getConstructor(Class<?> clazz, Class<?>... parameters)
+            throws NoSuchMethodException {
+        String signature = getSignature("", parameters);
+        synchronized (sCacheLock) {
+            HashMap<String, Constructor<?>> constructors = sConstructors.get(clazz);
+            Constructor<?> constructor = constructors == null ? null : constructors.get(signature);
+            if (constructor != null) return constructor;
+        }
+        Constructor<?> constructor = clazz.getConstructor(parameters);
+        synchronized (sCacheLock) {
+            HashMap<String, Constructor<?>> constructors = sConstructors.get(clazz);
+            if (constructors == null) {
+                constructors = new HashMap<String, Constructor<?>>();
+                sConstructors.put(clazz, constructors);
+            }
+            constructors.put(signature, constructor);
+        }
+        return constructor;
+    }
+
     public Object createInstance(Object... parameters) {
         Object ret = null;
         if (mCreator != null) {
@@ -89,8 +155,23 @@ public abstract class CrossPackageWrapper {
 
     public Method lookupMethod(String method, Class<?>... parameters) {
         if (mTargetClass == null) return null;
+        String signature = getSignature(method, parameters);
+        synchronized (sCacheLock) {
+            HashMap<String, Method> methods = sMethods.get(mTargetClass);
+            Method m = methods == null ? null : methods.get(signature);
+            if (m != null) return m;
+        }
         try {
-            return mTargetClass.getMethod(method, parameters);
+            Method m = mTargetClass.getMethod(method, parameters);
+            synchronized (sCacheLock) {
+                HashMap<String, Method> methods = sMethods.get(mTargetClass);
+                if (methods == null) {
+                    methods = new HashMap<String, Method>();
+                    sMethods.put(mTargetClass, methods);
+                }
+                methods.put(signature, m);
+            }
+            return m;
         } catch (NoSuchMethodException e) {
             handleException(e);
         }
@@ -7,6 +7,7 @@ package org.xwalk.app.runtime;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.content.res.XmlResourceParser;
+import android.util.SparseBooleanArray;
 import android.util.TypedValue;
 
 /**
@@ -30,51 +31,106 @@ import android.util.TypedValue;
  * For R.attr and R.style, I have no confidence that it's covered.
  * But the only place use this R.attr and R.style is "select" tag
  * which is verified working well with this MixedResources.
+ *
+ * Both packages use the same package id, so the owner of a resource id
+ * can't be told from the id itself. It is found out on the first lookup,
+ * which tries the extend resources first, then remembered, so later
+ * lookups of the id go straight to its owner without throwing. It's
+ * remembered per kind of lookup: one kind can fail where another succeeds
+ * for the same id, e.g. getText() of a resource which isn't a string.
  */
 public class XWalkMixedResources extends Resources {
 
+    private static final int LOOKUP_TEXT = 0;
+    private static final int LOOKUP_LAYOUT = 1;
+    private static final int LOOKUP_VALUE = 2;
+    private static final int LOOKUP_VALUE_FOR_DENSITY = 3;
+    private static final int LOOKUP_COUNT = 4;
+
     private Resources mExtend;
+    // Whether each resource id looked up so far belongs to mExtend, by kind
+    // of lookup.
+    private final SparseBooleanArray[] mExtendOwned = new SparseBooleanArray[LOOKUP_COUNT];
 
     XWalkMixedResources(Resources base, Resources extend) {
         super(base.getAssets(), base.getDisplayMetrics(),
                 base.getConfiguration());
         mExtend = extend;
+        for (int i = 0; i < LOOKUP_COUNT; i++) {
+            mExtendOwned[i] = new SparseBooleanArray();
+        }
+    }
+
+    /**
+     * @return true if the id has to be looked up in mExtend first, that is
+     *         if it belongs to mExtend or its owner is not known yet.
+     */
+    private boolean tryExtend(int lookup, int id) {
+        synchronized (mExtendOwned) {
+            return mExtendOwned[lookup].get(id, true);
+        }
+    }
+
+    private void setOwner(int lookup, int id, boolean extend) {
+        synchronized (mExtendOwned) {
+            mExtendOwned[lookup].put(id, extend);
+        }
     }
 
     @Override
     public CharSequence getText(int id) throws NotFoundException {
-        try {
-            return mExtend.getText(id);
-        } catch (NotFoundException e) {
-            return super.getText(id);
+        if (tryExtend(LOOKUP_TEXT, id)) {
+            try {
+                CharSequence text = mExtend.getText(id);
+                setOwner(LOOKUP_TEXT, id, true);
+                return text;
+            } catch (NotFoundException e) {
+                setOwner(LOOKUP_TEXT, id, false);
+            }
         }
+        return super.getText(id);
     }
 
     @Override
     public XmlResourceParser getLayout(int id) throws NotFoundException {
-        try {
-            return mExtend.getLayout(id);
-        } catch (NotFoundException e) {
-            return super.getLayout(id);
+        if (tryExtend(LOOKUP_LAYOUT, id)) {
+            try {
+                XmlResourceParser parser = mExtend.getLayout(id);
+                setOwner(LOOKUP_LAYOUT, id, true);
+                return parser;
+            } catch (NotFoundException e) {
+                setOwner(LOOKUP_LAYOUT, id, false);
+            }
         }
+        return super.getLayout(id);
     }
 
     @Override
     public void getValue(int id, TypedValue outValue, boolean resolveRefs) {
-        try {
-            mExtend.getValue(id, outValue, resolveRefs);
-        } catch (NotFoundException e) {
-            super.getValue(id, outValue, resolveRefs);
+        if (tryExtend(LOOKUP_VALUE, id)) {
+            try {
+                mExtend.getValue(id, outValue, resolveRefs);
+                setOwner(LOOKUP_VALUE, id, true);
+                return;
+            } catch (NotFoundException e) {
+                setOwner(LOOKUP_VALUE, id, false);
+            }
         }
+        super.getValue(id, outValue, resolveRefs);
     }
 
     @Override
     public void getValueForDensity(int id, int density, TypedValue outValue, boolean resolveRefs) {
-        try {
-            mExtend.getValueForDensity(id, density, outValue, resolveRefs);
-        } catch (NotFoundException e) {
-            super.getValueForDensity(id, density, outValue, resolveRefs);
+        if (tryExtend(LOOKUP_VALUE_FOR_DENSITY, id)) {
+            try {
+                mExtend.getValueForDensity(id, density, outValue, resolveRefs);
+                setOwner(LOOKUP_VALUE_FOR_DENSITY, id, true);
+                return;
+            } catch (NotFoundException e) {
+                setOwner(LOOKUP_VALUE_FOR_DENSITY, id, false);
+            }
         }
+        super.getValueForDensity(id, density, outValue, resolveRefs);
     }
 
     @Override
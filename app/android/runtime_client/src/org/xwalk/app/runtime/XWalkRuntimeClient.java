@@ -24,6 +24,7 @@ import java.util.regex.Pattern;
  */
 public class XWalkRuntimeClient extends CrossPackageWrapper {
     private final static String RUNTIME_VIEW_CLASS_NAME = "org.xwalk.runtime.XWalkRuntimeView";
+    private final static Pattern VERSION_PATTERN = Pattern.compile("\\d+(\\.\\d+)*");
     private boolean mRuntimeLoaded = false;
     private Object mInstance;
     private Method mLoadAppFromUrl;
@@ -81,13 +82,12 @@ public class XWalkRuntimeClient extends CrossPackageWrapper {
      * @return true if library is not older than client, false otherwise or either of the version string
      * is invalid. Valid string should be \d+[\.\d+]*
      */
-    private static boolean compareVersion(String libVersion, String clientVersion) {
+    static boolean compareVersion(String libVersion, String clientVersion) {
         if (libVersion.equals(clientVersion)) {
             return true;
         }
-        Pattern version = Pattern.compile("\\d+(\\.\\d+)*");
-        Matcher lib = version.matcher(libVersion);
-        Matcher client = version.matcher(clientVersion);
+        Matcher lib = VERSION_PATTERN.matcher(libVersion);
+        Matcher client = VERSION_PATTERN.matcher(clientVersion);
         if (lib.matches() && client.matches()) {
             StringTokenizer libTokens = new StringTokenizer(libVersion, ".");
             StringTokenizer clientTokens = new StringTokenizer(clientVersion, ".");
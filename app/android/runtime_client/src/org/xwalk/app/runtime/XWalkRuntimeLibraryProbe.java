@@ -0,0 +1,177 @@
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.app.runtime;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * Checks in background whether the runtime library can be used: in shared
+ * mode, that the library package is installed, not older than this client,
+ * and has a native library for this device. Nothing is loaded from the
+ * library to find that out.
+ *
+ * The result is kept until the library package is added, replaced or
+ * removed, so the check is done once per process in the common case. When
+ * the library is embedded, the result is known at once.
+ */
+public class XWalkRuntimeLibraryProbe {
+    private static final String TAG = "XWalkRuntimeLibraryProbe";
+    private static final String RUNTIME_VIEW_CLASS_NAME = "org.xwalk.runtime.XWalkRuntimeView";
+    private static final String NATIVE_LIBRARY_NAME = "libxwalkcore.so";
+
+    public interface Callback {
+        /**
+         * Called on the UI thread, at once if the result is known.
+         * @param error null if the library can be used, else why it can't.
+         */
+        void onProbed(XWalkRuntimeLibraryException error);
+    }
+
+    // All guarded by sLock.
+    private static final Object sLock = new Object();
+    private static Boolean sEmbedded;
+    private static boolean sProbed = false;
+    private static XWalkRuntimeLibraryException sError;
+    // Bumped on package changes, a probe started before one is not kept.
+    private static int sGeneration = 0;
+    // The callbacks waiting for the running probe, null if none is running.
+    private static ArrayList<Callback> sCallbacks;
+    private static BroadcastReceiver sPackageReceiver;
+
+    /**
+     * Get whether the runtime library can be used. Must be called on the UI thread.
+     */
+    public static void probe(Context context, Callback callback) {
+        if (isEmbedded(context)) {
+            callback.onProbed(null);
+            return;
+        }
+
+        XWalkRuntimeLibraryException error;
+        synchronized (sLock) {
+            if (!sProbed) {
+                if (sCallbacks == null) {
+                    sCallbacks = new ArrayList<Callback>();
+                    start(context.getApplicationContext());
+                }
+                sCallbacks.add(callback);
+                return;
+            }
+            error = sError;
+        }
+        callback.onProbed(error);
+    }
+
+    private static void start(final Context context) {
+        final int generation = sGeneration;
+        new AsyncTask<Void, Void, XWalkRuntimeLibraryException>() {
+            @Override
+            protected XWalkRuntimeLibraryException doInBackground(Void... params) {
+                return check(context);
+            }
+
+            @Override
+            protected void onPostExecute(XWalkRuntimeLibraryException error) {
+                ArrayList<Callback> callbacks;
+                synchronized (sLock) {
+                    callbacks = sCallbacks;
+                    sCallbacks = null;
+                    if (generation == sGeneration) {
+                        sProbed = true;
+                        sError = error;
+                    }
+                }
+                for (Callback callback : callbacks) {
+                    callback.onProbed(error);
+                }
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private static boolean isEmbedded(Context context) {
+        synchronized (sLock) {
+            if (sEmbedded != null) return sEmbedded;
+        }
+        boolean embedded;
+        try {
+            context.getClassLoader().loadClass(RUNTIME_VIEW_CLASS_NAME);
+            embedded = true;
+        } catch (ClassNotFoundException e) {
+            embedded = false;
+        }
+        synchronized (sLock) {
+            sEmbedded = embedded;
+        }
+        return embedded;
+    }
+
+    // Run in background, in shared mode.
+    private static XWalkRuntimeLibraryException check(Context context) {
+        listenToPackageChanges(context);
+
+        PackageInfo info;
+        try {
+            info = context.getPackageManager().getPackageInfo(
+                    CrossPackageWrapper.LIBRARY_APK_PACKAGE_NAME, 0);
+        } catch (NameNotFoundException e) {
+            return new XWalkRuntimeLibraryException(
+                    XWalkRuntimeLibraryException.XWALK_RUNTIME_LIBRARY_NOT_INSTALLED, e);
+        }
+        if (info.versionName == null ||
+                !XWalkRuntimeClient.compareVersion(info.versionName,
+                        XWalkRuntimeClient.getVersion())) {
+            return new XWalkRuntimeLibraryException(
+                    XWalkRuntimeLibraryException.XWALK_RUNTIME_LIBRARY_NOT_UP_TO_DATE_CRITICAL);
+        }
+        // The library installed is built for another CPU architecture.
+        String nativeLibraryDir = info.applicationInfo.nativeLibraryDir;
+        if (nativeLibraryDir == null ||
+                !new File(nativeLibraryDir, NATIVE_LIBRARY_NAME).exists()) {
+            Log.w(TAG, "No " + NATIVE_LIBRARY_NAME + " in " + nativeLibraryDir);
+            return new XWalkRuntimeLibraryException(
+                    XWalkRuntimeLibraryException.XWALK_RUNTIME_LIBRARY_NOT_INSTALLED);
+        }
+        return null;
+    }
+
+    private static void listenToPackageChanges(Context context) {
+        synchronized (sLock) {
+            if (sPackageReceiver != null) return;
+            sPackageReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    Uri data = intent.getData();
+                    if (data == null || !CrossPackageWrapper.LIBRARY_APK_PACKAGE_NAME.equals(
+                            data.getSchemeSpecificPart())) {
+                        return;
+                    }
+                    synchronized (sLock) {
+                        sGeneration++;
+                        sProbed = false;
+                        sError = null;
+                    }
+                }
+            };
+        }
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        context.registerReceiver(sPackageReceiver, filter);
+    }
+}
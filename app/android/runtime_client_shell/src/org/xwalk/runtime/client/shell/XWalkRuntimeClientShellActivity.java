@@ -77,7 +77,7 @@ public class XWalkRuntimeClientShellActivity extends XWalkRuntimeActivityBase {
 
     @Override
     protected void didTryLoadRuntimeView(View runtimeView) {
-        if (getRuntimeView().get() != null) {
+        if (runtimeView != null) {
             setContentView(R.layout.testshell_activity);
             LinearLayout container = (LinearLayout) findViewById(R.id.content_container);
             container.addView(getRuntimeView().get(),
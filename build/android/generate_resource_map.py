@@ -0,0 +1,141 @@
+#!/usr/bin/env python
+
+# Copyright (c) 2014 Intel Corporation. All rights reserved.
+# Use of this source code is governed by a BSD-style license that can be
+# found in the LICENSE file.
+
+"""Generate the static resource id remapping for xwalk core library.
+
+When xwalk core is used as a library project, the resource ids of
+org.chromium.content.R, org.chromium.ui.R and org.xwalk.core.internal.R
+(see the resource_map directories) are only known once the embedder is
+built, as org.xwalk.core.R. Instead of walking those classes reflectively
+at startup, this script emits:
+
+  org/xwalk/core/internal/XWalkInternalResourcesMap.java
+    A Runnable doing plain field assignments, e.g.
+    org.chromium.content.R.string.foo = org.xwalk.core.R.string.foo;
+
+  org/xwalk/core/R.java
+    A compile-time stub of org.xwalk.core.R with non-final fields so
+    that javac does not inline any value. It is excluded from the
+    library jar, the embedder's generated R is used at runtime.
+
+Both int fields and the int[] fields of styleables are remapped, the
+latter by reference.
+"""
+
+import optparse
+import os
+import re
+import sys
+
+GENERATED_PACKAGE = 'org.xwalk.core'
+MAP_CLASS = 'XWalkInternalResourcesMap'
+
+CLASS_PATTERN = re.compile(r'^\s*public\s+static\s+final\s+class\s+(\w+)')
+FIELD_PATTERN = re.compile(
+    r'^\s*public\s+static\s+(int(?:\s*\[\s*\])?)\s+(\w+)\s*;')
+PACKAGE_PATTERN = re.compile(r'^\s*package\s+([\w.]+)\s*;')
+
+HEADER = """\
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+// This file is autogenerated by
+//     xwalk/build/android/generate_resource_map.py
+// Please do not change its content.
+
+"""
+
+
+def ParseResourceMap(r_file):
+  """Returns (package, [(inner_class, [(type, field), ...]), ...]) of a R.java.
+
+  type is either 'int' or 'int[]'.
+  """
+  package = None
+  classes = []
+  for line in open(r_file):
+    match = PACKAGE_PATTERN.match(line)
+    if match:
+      package = match.group(1)
+      continue
+    match = CLASS_PATTERN.match(line)
+    if match:
+      classes.append((match.group(1), []))
+      continue
+    match = FIELD_PATTERN.match(line)
+    if match and classes:
+      field_type = re.sub(r'\s+', '', match.group(1))
+      classes[-1][1].append((field_type, match.group(2)))
+  if not package:
+    raise Exception('No package declaration found in %s' % r_file)
+  return package, classes
+
+
+def WriteStubR(resource_maps, output_dir):
+  merged = {}
+  for _, classes in resource_maps:
+    for inner_class, fields in classes:
+      merged.setdefault(inner_class, set()).update(fields)
+
+  lines = [HEADER, 'package %s;\n\n' % GENERATED_PACKAGE]
+  lines.append('public final class R {\n')
+  for inner_class in sorted(merged):
+    lines.append('    public static final class %s {\n' % inner_class)
+    for field_type, field in sorted(merged[inner_class],
+                                    key=lambda field: field[1]):
+      lines.append('        public static %s %s;\n' % (field_type, field))
+    lines.append('    }\n')
+  lines.append('}\n')
+  WriteFile(os.path.join(output_dir,
+                         GENERATED_PACKAGE.replace('.', os.sep), 'R.java'),
+            lines)
+
+
+def WriteMap(resource_maps, output_dir):
+  lines = [HEADER, 'package org.xwalk.core.internal;\n\n']
+  lines.append('final class %s implements Runnable {\n' % MAP_CLASS)
+  lines.append('    @Override\n')
+  lines.append('    public void run() {\n')
+  for package, classes in resource_maps:
+    for inner_class, fields in classes:
+      for _, field in fields:
+        lines.append('        %s.R.%s.%s = %s.R.%s.%s;\n' % (
+            package, inner_class, field,
+            GENERATED_PACKAGE, inner_class, field))
+  lines.append('    }\n')
+  lines.append('}\n')
+  WriteFile(os.path.join(output_dir, 'org', 'xwalk', 'core', 'internal',
+                         MAP_CLASS + '.java'),
+            lines)
+
+
+def WriteFile(path, lines):
+  directory = os.path.dirname(path)
+  if not os.path.exists(directory):
+    os.makedirs(directory)
+  output = open(path, 'w')
+  output.writelines(lines)
+  output.close()
+
+
+def main(argv):
+  parser = optparse.OptionParser(
+      usage='%prog --output-dir=DIR RESOURCE_MAP_R_JAVA...')
+  info = ('The output directory for the generated java sources')
+  parser.add_option('--output-dir', help=info)
+  options, resource_map_files = parser.parse_args(argv[1:])
+
+  if not resource_map_files or not options.output_dir:
+    parser.error('--output-dir and the resource_map R.java files are required.')
+
+  resource_maps = [ParseResourceMap(r) for r in resource_map_files]
+  WriteStubR(resource_maps, options.output_dir)
+  WriteMap(resource_maps, options.output_dir)
+
+
+if __name__ == '__main__':
+  sys.exit(main(sys.argv))
@@ -12,6 +12,115 @@ var _displayAvailable = false;
 var _nextRequestId = 0;
 var _showRequests = {};
 
+// The channel between the page which requested the presentation and the
+// presentation content. Messages posted in the same task are sent as one
+// batch, which the extension forwards to the peer without parsing it.
+// Each entry is [type, payload]: "s" for a string, "b" for binary data
+// encoded in base64, "j" for any other JSON value.
+var _channelQueue = [];
+var _channelFlushScheduled = false;
+
+function PresentationChannel() {
+  this.readyState = "closed";
+  this.onopen = null;
+  this.onmessage = null;
+  this.onclose = null;
+}
+
+PresentationChannel.prototype.postMessage = function(data) {
+  if (this.readyState != "open") {
+    console.error("The presentation channel is not open!");
+    return;
+  }
+
+  _channelQueue.push(encodeChannelData(data));
+  if (!_channelFlushScheduled) {
+    _channelFlushScheduled = true;
+    // A microtask, so that the batch isn't delayed behind other tasks.
+    Promise.resolve().then(flushChannel);
+  }
+};
+
+var _channel = new PresentationChannel();
+
+function encodeChannelData(data) {
+  if (typeof data === "string")
+    return ["s", data];
+
+  if (data instanceof ArrayBuffer || ArrayBuffer.isView(data)) {
+    var bytes = data instanceof ArrayBuffer ? new Uint8Array(data) :
+        new Uint8Array(data.buffer, data.byteOffset, data.byteLength);
+    var binary = "";
+    // Convert by chunks to stay below the maximum count of arguments.
+    for (var i = 0; i < bytes.length; i += 8192) {
+      binary += String.fromCharCode.apply(null, bytes.subarray(i, i + 8192));
+    }
+    return ["b", btoa(binary)];
+  }
+
+  return ["j", data];
+}
+
+function decodeChannelData(entry) {
+  if (entry[0] != "b")
+    return entry[1];
+
+  var binary = atob(entry[1]);
+  var bytes = new Uint8Array(binary.length);
+  for (var i = 0; i < binary.length; ++i) {
+    bytes[i] = binary.charCodeAt(i);
+  }
+  return bytes.buffer;
+}
+
+function flushChannel() {
+  _channelFlushScheduled = false;
+  if (_channelQueue.length == 0)
+    return;
+
+  // "cmd" must come first, it's all the extension reads of the message.
+  var message = { "cmd": "ChannelData", "data": _channelQueue };
+  _channelQueue = [];
+  extension.postMessage(JSON.stringify(message));
+}
+
+function handleChannelOpen() {
+  // Open at once, so that the data which follows isn't dropped. Only the
+  // event is deferred.
+  _channel.readyState = "open";
+  setTimeout(function() {
+    if (_channel.readyState == "open" && _channel.onopen)
+      _channel.onopen.apply(_channel, []);
+  }, 0);
+}
+
+function handleChannelData(entries) {
+  if (_channel.readyState != "open" || !_channel.onmessage)
+    return;
+
+  for (var i = 0; i < entries.length; ++i) {
+    _channel.onmessage.apply(_channel, [{ "data": decodeChannelData(entries[i]) }]);
+  }
+}
+
+function handleChannelClose() {
+  if (_channel.readyState == "closed")
+    return;
+
+  _channel.readyState = "closed";
+  _channelQueue = [];
+  setTimeout(function() {
+    if (_channel.onclose)
+      _channel.onclose.apply(_channel, []);
+  }, 0);
+}
+
+// Called once in the presentation content when it's loaded.
+function attachChannel(token) {
+  var message = { "cmd": "ChannelAttach", "token": token };
+  extension.postMessage(JSON.stringify(message));
+}
+
 function DOMError(msg) {
   this.name = msg;
 }
@@ -46,6 +155,23 @@ function requestShowPresentation(url, successCallback, errorCallback) {
   extension.postMessage(JSON.stringify(message));
 }
 
+// In warm mode, the content view for the secondary display is created as
+// soon as the display is available, and |urlHint| is preloaded if given, so
+// that a later requestShow for the same url shows up at once.
+function setWarmMode(enabled, urlHint) {
+  if (urlHint !== undefined && typeof urlHint !== "string") {
+    console.error("Invalid parameter for presentation.setWarmMode!");
+    return;
+  }
+
+  var message = { "cmd": "SetWarmMode", "enabled": !!enabled };
+  if (urlHint) {
+    message.url = urlHint;
+    message.baseUrl = location.href.substring(0, location.href.lastIndexOf("/")+1);
+  }
+  extension.postMessage(JSON.stringify(message));
+}
+
 function addEventListener(name, callback, useCapture /* ignored */) {
   if (typeof name !== "string" || typeof callback !== "function") {
     console.error("Invalid parameter for presentation.addEventListener!");
@@ -105,7 +231,14 @@ function handleShowFailed(requestId, errorMessage) {
 
 extension.setMessageListener(function(json) {
   var msg = JSON.parse(json);
-  if (msg.cmd == "DisplayAvailableChange") {
+  if (msg.cmd == "ChannelData") {
+    // Delivered at once, the channel is meant for low latency updates.
+    handleChannelData(msg.data);
+  } else if (msg.cmd == "ChannelOpen") {
+    handleChannelOpen();
+  } else if (msg.cmd == "ChannelClose") {
+    handleChannelClose();
+  } else if (msg.cmd == "DisplayAvailableChange") {
     /* Using setTimeout here to ensure the error in user-defined event handler
        would be captured in developer tools. */
     setTimeout(function() {
@@ -125,6 +258,9 @@ extension.setMessageListener(function(json) {
 })
 
 exports.requestShow = requestShowPresentation;
+exports.setWarmMode = setWarmMode;
+exports.channel = _channel;
+exports._attachChannel = attachChannel;
 exports.addEventListener = addEventListener;
 exports.removeEventListener = removeEventListener;
 exports.__defineSetter__("on" + DISPLAY_AVAILABLE_CHANGE_EVENT,
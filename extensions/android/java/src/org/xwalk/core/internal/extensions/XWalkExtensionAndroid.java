@@ -62,6 +62,14 @@ public abstract class XWalkExtensionAndroid {
     @CalledByNative
     public abstract String handleSyncMessage(int instanceID, String message);
 
+    /**
+     * Called when an instance is destroyed, e.g. its page navigated away.
+     * No more messages come from it, and it can't receive any.
+     */
+    @CalledByNative
+    public void onInstanceDestroyed(int instanceID) {
+    }
+
     private native long nativeGetOrCreateExtension(String name, String jsApi, String[] entryPoints);
     private native void nativePostMessage(long nativeXWalkExtensionAndroid, int instanceID, String message);
     private native void nativeBroadcastMessage(long nativeXWalkExtensionAndroid, String message);
@@ -127,6 +127,8 @@ void XWalkExtensionAndroid::RemoveInstance(int instance) {
   }
 
   instances_.erase(instance);
+  // Let the Java side release what it kept for this instance.
+  Java_XWalkExtensionAndroid_onInstanceDestroyed(env, obj.obj(), instance);
 }
 
 void XWalkExtensionAndroid::BindToJavaObject(JNIEnv* env, jobject obj) {
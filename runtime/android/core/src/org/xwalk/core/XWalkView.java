@@ -221,6 +221,53 @@ public class XWalkView extends XWalkViewInternal {
         super.stopLoading();
     }
 
+    /**
+     * Hint that the given url is likely to be loaded soon, so that the
+     * DNS resolution and the TCP/TLS connection to its host are done ahead.
+     * Only 'http:' and 'https:' urls are supported.
+     * @param url the url likely to be loaded.
+     * @since 3.0
+     */
+    public void preconnect(String url) {
+        super.preconnect(url);
+    }
+
+    /**
+     * Load the given url into a hidden content, which replaces the displayed
+     * one when {@link #load} is called with the same url. Only one page is
+     * prerendered per view, and the count of prerendered pages in the process
+     * is limited. A prerender is cancelled when another url is loaded, when
+     * it's not used in time or when the system is low on memory.
+     * Note the page load callbacks of a prerendered page happen before it's
+     * displayed.
+     * @param url the url likely to be loaded.
+     * @return false if the page can't be prerendered.
+     * @since 3.0
+     */
+    public boolean prerender(String url) {
+        return super.prerender(url);
+    }
+
+    /**
+     * Cancel the page prerendered by {@link #prerender}, if any.
+     * @since 3.0
+     */
+    public void cancelPrerender() {
+        super.cancelPrerender();
+    }
+
+    /**
+     * Cancel the download of an 'app:', 'file:' or 'content:' url, which
+     * deletes its partial data. Downloads of 'http:' and 'https:' urls are
+     * handed to the system DownloadManager and can't be cancelled here.
+     * @param url the url being downloaded.
+     * @return false if the url is not being downloaded.
+     * @since 3.0
+     */
+    public boolean cancelDownload(String url) {
+        return super.cancelDownload(url);
+    }
+
     /**
      * Get the url of current web page/app. This may be different from what's passed
      * by caller.
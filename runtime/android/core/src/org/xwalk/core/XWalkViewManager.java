@@ -0,0 +1,66 @@
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core;
+
+import android.content.Context;
+
+import org.xwalk.core.internal.XWalkViewManagerInternal;
+
+/**
+ * This class bounds the memory used by many XWalkView instances by keeping
+ * at most a given count of them alive. The least recently used hidden views
+ * are discarded: their navigation state is saved to the cache directory and
+ * their web contents are destroyed. A discarded XWalkView is transparently
+ * restored when it's shown or loaded again.
+ * It's not thread-safe and should be only called on UI thread.
+ */
+public class XWalkViewManager extends XWalkViewManagerInternal {
+    /**
+     * Constructs a manager keeping at most maxLiveViews views alive.
+     * @param context the context to get the cache directory.
+     * @param maxLiveViews the count of views allowed to stay alive.
+     * @since 3.0
+     */
+    public XWalkViewManager(Context context, int maxLiveViews) {
+        super(context, maxLiveViews);
+    }
+
+    /**
+     * Start managing a XWalkView. It becomes the most recently used one.
+     * @param view the XWalkView to manage.
+     * @since 3.0
+     */
+    public void add(XWalkView view) {
+        super.add(view);
+    }
+
+    /**
+     * Stop managing a XWalkView.
+     * @param view the XWalkView to forget.
+     * @since 3.0
+     */
+    public void remove(XWalkView view) {
+        super.remove(view);
+    }
+
+    /**
+     * Mark a XWalkView as the most recently used one and restore it if it
+     * was discarded. Call it when the view is about to be displayed.
+     * @param view the XWalkView used.
+     * @since 3.0
+     */
+    public void touch(XWalkView view) {
+        super.touch(view);
+    }
+
+    /**
+     * Get the count of managed XWalkView instances which are alive.
+     * @return the count of live views.
+     * @since 3.0
+     */
+    public int getLiveViewCount() {
+        return super.getLiveViewCount();
+    }
+}
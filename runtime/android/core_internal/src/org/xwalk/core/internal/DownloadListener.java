@@ -8,4 +8,21 @@ interface DownloadListener {
 
     public abstract void onDownloadStart(String url, String userAgent,
             String contentDisposition, String mimetype, long contentLength);
+
+    /**
+     * Called periodically while a non-HTTP url is downloaded.
+     * @param totalBytes the expected length, or a value <= 0 if unknown.
+     */
+    public abstract void onDownloadProgress(String url, long downloadedBytes, long totalBytes);
+
+    /**
+     * Called when a non-HTTP url is downloaded.
+     * @param checksum the SHA-256 of the data, in hexadecimal.
+     */
+    public abstract void onDownloadFinished(String url, String path, String checksum);
+
+    /**
+     * Called when the download of a non-HTTP url failed or was cancelled.
+     */
+    public abstract void onDownloadFailed(String url, boolean cancelled);
 }
@@ -6,14 +6,15 @@
 package org.xwalk.core.internal;
 
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.graphics.Rect;
 import android.os.Bundle;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.View;
 import android.view.ViewGroup;
 import android.webkit.ValueCallback;
 import android.webkit.WebResourceResponse;
@@ -59,6 +60,26 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
     private XWalkGeolocationPermissions mGeolocationPermissions;
     private XWalkLaunchScreenManager mLaunchScreenManager;
 
+    // Visibility tracking. The renderer is hidden whenever the embedder asked
+    // for it or the view can't be seen: detached, GONE/INVISIBLE (itself, an
+    // ancestor or the window) or zero-sized. A hidden renderer stops drawing
+    // and requestAnimationFrame, and its timers are throttled by blink,
+    // without affecting the sibling views.
+    private boolean mHiddenByEmbedder = false;
+    private boolean mAttachedToWindow = false;
+    private boolean mWindowVisible = true;
+    private boolean mHasSize = true;
+    private boolean mRendererHidden = false;
+
+    // All the views share one renderer process. Its memory cache is only
+    // cleared, and its timers only suspended, once none of them is shown.
+    // UI thread only.
+    private static int sShownContents = 0;
+    private static boolean sTimersPausedByEmbedder = false;
+    private static boolean sTimersSuspendedForMemory = false;
+
+    private static final int PRECONNECT_SOCKET_COUNT = 1;
+
     long mXWalkContent;
     long mWebContents;
 
@@ -109,6 +130,8 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
                         FrameLayout.LayoutParams.MATCH_PARENT));
 
         mXWalkContent = nativeInit(mXWalkContentsDelegateAdapter, mContentsClientBridge);
+        // Not hidden until updateRendererVisibility() says so.
+        sShownContents++;
 
         // The native side object has been bound to this java instance, so now is the time to
         // bind all the native->java relationships.
@@ -141,8 +164,7 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
         // loaded by XMLHttpRequest.
         mSettings.setAllowFileAccessFromFileURLs(true);
 
-        SharedPreferences sharedPreferences = new InMemorySharedPreferences();
-        mGeolocationPermissions = new XWalkGeolocationPermissions(sharedPreferences);
+        mGeolocationPermissions = new XWalkGeolocationPermissions(getContext());
 
         MediaPlayerBridge.setResourceLoadingFilter(
                 new XWalkMediaPlayerResourceLoadingFilter());
@@ -179,6 +201,12 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
         doLoadUrl(url, data);
     }
 
+    // Warm up DNS and TCP/TLS connections for the given url.
+    void preconnect(String url) {
+        if (mXWalkContent == 0 || url == null || url.isEmpty()) return;
+        nativePreconnect(mXWalkContent, url, PRECONNECT_SOCKET_COUNT);
+    }
+
     public void reload(int mode) {
         switch (mode) {
             case XWalkViewInternal.RELOAD_IGNORE_CACHE:
@@ -254,11 +282,90 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
     }
 
     public void onPause() {
-        mContentViewCore.onHide();
+        mHiddenByEmbedder = true;
+        updateRendererVisibility();
     }
 
     public void onResume() {
-        mContentViewCore.onShow();
+        mHiddenByEmbedder = false;
+        updateRendererVisibility();
+    }
+
+    boolean isRendererHidden() {
+        return mRendererHidden;
+    }
+
+    private void updateRendererVisibility() {
+        if (mXWalkContent == 0) return;
+        boolean hidden = mHiddenByEmbedder || !mAttachedToWindow || !mWindowVisible ||
+                !mHasSize || !isShown();
+        if (hidden == mRendererHidden) return;
+        mRendererHidden = hidden;
+        if (hidden) {
+            sShownContents--;
+            mContentViewCore.onHide();
+        } else {
+            sShownContents++;
+            if (sTimersSuspendedForMemory) {
+                sTimersSuspendedForMemory = false;
+                ContentViewStatics.setWebKitSharedTimersSuspended(false);
+            }
+            mContentViewCore.onShow();
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mAttachedToWindow = true;
+        updateRendererVisibility();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        mAttachedToWindow = false;
+        updateRendererVisibility();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        mWindowVisible = visibility == VISIBLE;
+        updateRendererVisibility();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateRendererVisibility();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mHasSize = w > 0 && h > 0;
+        updateRendererVisibility();
+    }
+
+    // Called by XWalkMemoryPressureManager through XWalkViewInternal.
+    // The renderer caches aren't measured, only the favicon is counted.
+    long trimMemory(int level) {
+        if (mXWalkContent == 0) return 0;
+        long freed = mContentsClientBridge.releaseFavicon();
+        // The memory cache and the timers belong to the whole renderer
+        // process, leave them alone while any view is shown.
+        if (sShownContents > 0) return freed;
+
+        nativeClearCache(mXWalkContent, false);
+        // The app went to background: nothing needs to run until a view is
+        // shown again, unless the embedder paused the timers itself.
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND &&
+                !sTimersPausedByEmbedder && !sTimersSuspendedForMemory) {
+            sTimersSuspendedForMemory = true;
+            ContentViewStatics.setWebKitSharedTimersSuspended(true);
+        }
+        return freed;
     }
 
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
@@ -305,11 +412,15 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
     // TODO(Guangzhen): ContentViewStatics will be removed in upstream,
     // details in content_view_statics.cc.
     // We need follow up after upstream updates that.
-    public void pauseTimers() {
+    public static void pauseTimers() {
+        sTimersPausedByEmbedder = true;
+        sTimersSuspendedForMemory = false;
         ContentViewStatics.setWebKitSharedTimersSuspended(true);
     }
 
-    public void resumeTimers() {
+    public static void resumeTimers() {
+        sTimersPausedByEmbedder = false;
+        sTimersSuspendedForMemory = false;
         ContentViewStatics.setWebKitSharedTimersSuspended(false);
     }
 
@@ -400,6 +511,26 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
         return getNavigationHistory();
     }
 
+    byte[] getState() {
+        if (mXWalkContent == 0) return null;
+        return nativeGetState(mXWalkContent);
+    }
+
+    boolean setState(byte[] state) {
+        Bundle inState = new Bundle();
+        inState.putByteArray(SAVE_RESTORE_STATE_KEY, state);
+        return restoreState(inState) != null;
+    }
+
+    // Bind the settings of a discarded content to this one, so what the
+    // embedder changed is kept when the view is revived.
+    void adoptSettings(XWalkSettings settings) {
+        if (settings == null || settings == mSettings) return;
+        mSettings.setWebContents(0);
+        settings.setWebContents(mWebContents);
+        mSettings = settings;
+    }
+
     public XWalkNavigationHistoryInternal restoreState(Bundle inState) {
         if (inState == null) return null;
 
@@ -451,6 +582,7 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
 
     public void destroy() {
         if (mXWalkContent == 0) return;
+        if (!mRendererHidden) sShownContents--;
 
         XWalkPreferencesInternal.unload(this);
         // Reset existing notification service in order to destruct it.
@@ -565,10 +697,9 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
             return;
         }
         // Allow if the origin has a retained allow.
-        if (mGeolocationPermissions.hasOrigin(origin)) {
-            nativeInvokeGeolocationCallback(mXWalkContent,
-                    mGeolocationPermissions.isOriginAllowed(origin),
-                    origin);
+        Boolean allowed = mGeolocationPermissions.getRetainedPermission(origin);
+        if (allowed != null) {
+            nativeInvokeGeolocationCallback(mXWalkContent, allowed, origin);
             return;
         }
         mContentsClientBridge.onGeolocationPermissionsShowPrompt(
@@ -639,4 +770,5 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
             long nativeXWalkContent, boolean value, String requestingFrame);
     private native byte[] nativeGetState(long nativeXWalkContent);
     private native boolean nativeSetState(long nativeXWalkContent, byte[] state);
+    private native void nativePreconnect(long nativeXWalkContent, String url, int count);
 }
@@ -347,6 +347,14 @@ class XWalkContentsClientBridge extends XWalkContentsClient
         mFavicon = bitmap;
     }
 
+    // Drop the cached favicon under memory pressure, returns the bytes freed.
+    long releaseFavicon() {
+        if (mFavicon == null) return 0;
+        long size = mFavicon.getByteCount();
+        mFavicon = null;
+        return size;
+    }
+
     @Override
     public void onShowCustomView(View view, XWalkWebChromeClient.CustomViewCallback callback) {
         if (mXWalkWebChromeClient != null && isOwnerActivityRunning()) {
@@ -552,6 +560,7 @@ class XWalkContentsClientBridge extends XWalkContentsClient
 
     @CalledByNative
     private void updateNotificationIcon(int notificationId, Bitmap icon) {
+        if (mNotificationService == null) return;
         mNotificationService.updateNotificationIcon(notificationId, icon);
     }
 
@@ -560,12 +569,14 @@ class XWalkContentsClientBridge extends XWalkContentsClient
             int notificationId, long delegate) {
         // FIXME(wang16): use replaceId to replace exist notification. It happens when
         //                a notification with same name and tag fires.
+        if (mNotificationService == null) return;
         mNotificationService.showNotification(
                 title, message, notificationId, delegate);
     }
 
     @CalledByNative
     private void cancelNotification(int notificationId, long delegate) {
+        if (mNotificationService == null) return;
         mNotificationService.cancelNotification(notificationId, delegate);
     }
 
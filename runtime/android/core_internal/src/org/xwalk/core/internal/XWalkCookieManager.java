@@ -4,6 +4,17 @@
 
 package org.xwalk.core.internal;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.webkit.ValueCallback;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.chromium.base.JNINamespace;
 
 /**
@@ -15,6 +26,9 @@ import org.chromium.base.JNINamespace;
  */
 @JNINamespace("xwalk")
 public final class XWalkCookieManager {
+    // Runs the asynchronous operations, in the order they were requested.
+    private static ExecutorService sExecutor;
+
     /**
      * Control whether cookie is enabled or disabled
      * @param accept TRUE if accept cookie
@@ -54,6 +68,76 @@ public final class XWalkCookieManager {
         return cookie == null || cookie.trim().isEmpty() ? null : cookie;
     }
 
+    /**
+     * Set cookies for several urls at once, with a single native call.
+     * @param cookies The values for set-cookie: by url
+     */
+    public void setCookies(Map<String, List<String>> cookies) {
+        setCookies(cookies, false);
+    }
+
+    private void setCookies(Map<String, List<String>> cookies, boolean waitForCompletion) {
+        ArrayList<String> urls = new ArrayList<String>();
+        ArrayList<String> values = new ArrayList<String>();
+        for (Map.Entry<String, List<String>> entry : cookies.entrySet()) {
+            for (String value : entry.getValue()) {
+                urls.add(entry.getKey());
+                values.add(value);
+            }
+        }
+        if (urls.isEmpty()) return;
+        nativeSetCookies(urls.toArray(new String[urls.size()]),
+                values.toArray(new String[values.size()]), waitForCompletion);
+    }
+
+    /**
+     * Get the cookies of several urls at once, with a single native call
+     * which waits for all of them together.
+     * @param urls The urls needing cookies
+     * @return The cookies by url, null for urls without cookies, in the order of urls
+     */
+    public Map<String, String> getCookies(List<String> urls) {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        if (urls.isEmpty()) return result;
+        String[] cookies = nativeGetCookies(urls.toArray(new String[urls.size()]));
+        for (int i = 0; i < urls.size(); i++) {
+            String cookie = cookies[i];
+            result.put(urls.get(i), cookie == null || cookie.trim().isEmpty() ? null : cookie);
+        }
+        return result;
+    }
+
+    /**
+     * Same as setCookies(), without blocking the calling thread.
+     * @param callback Called on the thread of the caller, or the UI thread
+     *        if it has no looper, once the cookies are set. May be null.
+     */
+    public void setCookiesAsync(final Map<String, List<String>> cookies,
+            final ValueCallback<Void> callback) {
+        runAsync(new AsyncOperation<Void>(callback) {
+            @Override
+            Void compute() {
+                setCookies(cookies, true);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Same as getCookies(), without blocking the calling thread.
+     * @param callback Called on the thread of the caller, or the UI thread
+     *        if it has no looper, with the cookies by url.
+     */
+    public void getCookiesAsync(final List<String> urls,
+            final ValueCallback<Map<String, String>> callback) {
+        runAsync(new AsyncOperation<Map<String, String>>(callback) {
+            @Override
+            Map<String, String> compute() {
+                return getCookies(urls);
+            }
+        });
+    }
+
     /**
      * Remove all session cookies, which are cookies without expiration date
      */
@@ -86,6 +170,52 @@ public final class XWalkCookieManager {
         nativeFlushCookieStore();
     }
 
+    /**
+     * Write the cookies to the persistent store without blocking the calling
+     * thread.
+     * @param callback Called on the thread of the caller, or the UI thread
+     *        if it has no looper, once the cookies are written. May be null.
+     */
+    public void flushCookieStoreAsync(ValueCallback<Void> callback) {
+        runAsync(new AsyncOperation<Void>(callback) {
+            @Override
+            Void compute() {
+                nativeFlushCookieStoreAndWait();
+                return null;
+            }
+        });
+    }
+
+    private abstract static class AsyncOperation<T> implements Runnable {
+        private final ValueCallback<T> mCallback;
+        private final Handler mHandler;
+
+        AsyncOperation(ValueCallback<T> callback) {
+            mCallback = callback;
+            Looper looper = Looper.myLooper();
+            mHandler = new Handler(looper != null ? looper : Looper.getMainLooper());
+        }
+
+        abstract T compute();
+
+        @Override
+        public void run() {
+            final T result = compute();
+            if (mCallback == null) return;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mCallback.onReceiveValue(result);
+                }
+            });
+        }
+    }
+
+    private static synchronized void runAsync(Runnable operation) {
+        if (sExecutor == null) sExecutor = Executors.newSingleThreadExecutor();
+        sExecutor.execute(operation);
+    }
+
     /**
      * Whether cookies are accepted for file scheme URLs.
      */
@@ -112,11 +242,15 @@ public final class XWalkCookieManager {
 
     private native void nativeSetCookie(String url, String value);
     private native String nativeGetCookie(String url);
+    private native void nativeSetCookies(String[] urls, String[] values,
+            boolean waitForCompletion);
+    private native String[] nativeGetCookies(String[] urls);
 
     private native void nativeRemoveSessionCookie();
     private native void nativeRemoveAllCookie();
     private native void nativeRemoveExpiredCookie();
     private native void nativeFlushCookieStore();
+    private native void nativeFlushCookieStoreAndWait();
 
     private native boolean nativeHasCookies();
 
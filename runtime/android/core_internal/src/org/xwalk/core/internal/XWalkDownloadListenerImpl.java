@@ -6,10 +6,13 @@ package org.xwalk.core.internal;
 
 import android.app.DownloadManager;
 import android.app.DownloadManager.Request;
+import android.app.Notification;
+import android.app.NotificationManager;
 import android.content.pm.PackageManager;
 import android.content.Context;
 import android.net.Uri;
-import android.os.AsyncTask;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
 import android.os.Environment;
 import android.webkit.MimeTypeMap;
 import android.webkit.URLUtil;
@@ -17,12 +20,8 @@ import android.widget.Toast;
 import android.Manifest;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.IOException;
-import java.io.OutputStream;
+import java.util.HashMap;
 
-import org.xwalk.core.internal.AndroidProtocolHandler;
 import org.xwalk.core.internal.DownloadListener;
 import org.xwalk.core.internal.R;
 
@@ -33,7 +32,14 @@ class XWalkDownloadListenerImpl implements DownloadListener {
     private static String DOWNLOAD_FAILED_TOAST;
     private static String DOWNLOAD_FINISHED_TOAST;
 
+    // Tags the progress notifications, their ids are the hash of the url.
+    private static final String PROGRESS_NOTIFICATION_TAG = "XWalkDownload";
+
+    private static XWalkFileDownloader sFileDownloader;
+
     private Context mContext;
+    // The file names of the non-HTTP downloads in progress by url.
+    private final HashMap<String, String> mFileNames = new HashMap<String, String>();
 
     public XWalkDownloadListenerImpl(Context context) {
         mContext = context;
@@ -66,10 +72,89 @@ class XWalkDownloadListenerImpl implements DownloadListener {
             getDownloadManager().enqueue(request);
             popupMessages(DOWNLOAD_START_TOAST + fileName);
         } else {
-            new FileTransfer(url, fileName).execute();
+            File dir = Environment.getExternalStoragePublicDirectory(
+                    Environment.DIRECTORY_DOWNLOADS);
+            File dst = new File(dir, fileName);
+            if (dst.exists()) {
+                popupMessages(DOWNLOAD_ALREADY_EXISTS_TOAST);
+                return;
+            }
+            if (!getFileDownloader().enqueue(url, dst, contentLength, this)) {
+                popupMessages(DOWNLOAD_FAILED_TOAST);
+                return;
+            }
+            mFileNames.put(url, fileName);
+            popupMessages(DOWNLOAD_START_TOAST + fileName);
         }
     }
 
+    @Override
+    public void onDownloadProgress(String url, long downloadedBytes, long totalBytes) {
+        String fileName = mFileNames.get(url);
+        if (fileName == null) return;
+
+        Notification.Builder builder = new Notification.Builder(mContext.getApplicationContext())
+                .setSmallIcon(android.R.drawable.stat_sys_download)
+                .setContentTitle(fileName)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true);
+        if (totalBytes > 0) {
+            // setProgress takes ints, scale to per mille.
+            int progress = (int) Math.min(1000, downloadedBytes * 1000 / totalBytes);
+            builder.setProgress(1000, progress, false);
+        } else {
+            builder.setProgress(0, 0, true);
+        }
+        getNotificationManager().notify(PROGRESS_NOTIFICATION_TAG, url.hashCode(),
+                build(builder));
+    }
+
+    @Override
+    public void onDownloadFinished(String url, String path, String checksum) {
+        clearProgress(url);
+        popupMessages(DOWNLOAD_FINISHED_TOAST);
+    }
+
+    @Override
+    public void onDownloadFailed(String url, boolean cancelled) {
+        clearProgress(url);
+        if (!cancelled) popupMessages(DOWNLOAD_FAILED_TOAST);
+    }
+
+    private void clearProgress(String url) {
+        if (mFileNames.remove(url) == null) return;
+        getNotificationManager().cancel(PROGRESS_NOTIFICATION_TAG, url.hashCode());
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Notification build(Notification.Builder builder) {
+        if (VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN) {
+            return builder.build();
+        } else {
+            return builder.getNotification();
+        }
+    }
+
+    /**
+     * Cancel the download of a non-HTTP url.
+     * @return false if the url is not being downloaded.
+     */
+    static synchronized boolean cancelDownload(String url) {
+        return sFileDownloader != null && sFileDownloader.cancel(url);
+    }
+
+    private static synchronized XWalkFileDownloader getFileDownloader(Context context) {
+        // Shared by all the views, to bound the concurrent downloads.
+        if (sFileDownloader == null) {
+            sFileDownloader = new XWalkFileDownloader(context.getApplicationContext());
+        }
+        return sFileDownloader;
+    }
+
+    private XWalkFileDownloader getFileDownloader() {
+        return getFileDownloader(mContext);
+    }
+
     private String getFileName(String url, String contentDisposition, String mimetype) {
         String fileName = URLUtil.guessFileName(url, contentDisposition, mimetype);
         int extensionIndex = fileName.lastIndexOf(".");
@@ -92,6 +177,10 @@ class XWalkDownloadListenerImpl implements DownloadListener {
         return downloadManager;
     }
 
+    private NotificationManager getNotificationManager() {
+        return (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+    }
+
     private boolean checkWriteExternalPermission() {
         int result = mContext.checkCallingOrSelfPermission(
                 Manifest.permission.WRITE_EXTERNAL_STORAGE);
@@ -104,64 +193,4 @@ class XWalkDownloadListenerImpl implements DownloadListener {
     private void popupMessages(String message) {
         Toast.makeText(mContext, message, Toast.LENGTH_SHORT).show();
     }
-
-    private class FileTransfer extends AsyncTask<Void, Void, String> {
-        String url;
-        String fileName;
-
-        public FileTransfer(String url, String fileName) {
-            this.url = url;
-            this.fileName = fileName;
-        }
-
-        @Override
-        protected String doInBackground(Void... params) {
-            OutputStream dstStream = null;
-            InputStream srcStream = null;
-            File dir = Environment.getExternalStoragePublicDirectory(
-                    Environment.DIRECTORY_DOWNLOADS);
-            File dst = new File(dir, fileName);
-            if (dst.exists()) {
-                return "Existed";
-            }
-            try {
-                dstStream = new FileOutputStream(dst);
-                srcStream = AndroidProtocolHandler.open(mContext, url);
-                if (dstStream != null && srcStream != null) {
-                    streamTransfer(srcStream, dstStream);
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            } finally {
-                try {
-                    if (srcStream != null) srcStream.close();
-                    if (dstStream != null) dstStream.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    return "Failed";
-                }
-            }
-            return "Finished";
-        }
-
-        @Override
-        protected void onPostExecute(String result) {
-            if (result.equals("Failed")) {
-                popupMessages(DOWNLOAD_FAILED_TOAST);
-            } else if (result.equals("Existed")) {
-                popupMessages(DOWNLOAD_ALREADY_EXISTS_TOAST);
-            } else if (result.equals("Finished")) {
-                popupMessages(DOWNLOAD_FINISHED_TOAST);
-            }
-        }
-
-        private void streamTransfer(InputStream src, OutputStream dst) throws IOException {
-            // Transfer bytes from src to dst.
-            byte[] buf = new byte[1024];
-            int length = 0;
-            while ((length = src.read(buf)) > 0) {
-                dst.write(buf, 0, length);
-            }
-        }
-    }
 }
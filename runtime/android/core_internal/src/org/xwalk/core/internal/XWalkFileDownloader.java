@@ -0,0 +1,347 @@
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal;
+
+import android.content.Context;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads the app://, file:// and content:// urls which DownloadManager
+ * can't handle.
+ *
+ * Downloads run on their own bounded pool instead of the shared AsyncTask
+ * executor, and copy through NIO channels with a large buffer. The data
+ * is written to a ".part" file, renamed once complete: a failed download
+ * leaves it behind, and the next download of the same url to the same file
+ * resumes from there. A ".stamp" file next to it records the length and
+ * modification time of the source, and the download starts over unless
+ * both are known and unchanged. A SHA-256 checksum is computed while copying.
+ *
+ * A cancelled download stays registered until its transfer has stopped and
+ * cleaned up, so the same url can't be downloaded again over its files
+ * meanwhile. Progress is reported at most every PROGRESS_INTERVAL ms.
+ *
+ * The listener callbacks are called on the UI thread.
+ */
+class XWalkFileDownloader {
+    private static final String TAG = "XWalkFileDownloader";
+
+    static final String PARTIAL_SUFFIX = ".part";
+    static final String STAMP_SUFFIX = ".stamp";
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_CONCURRENT_DOWNLOADS = 2;
+    private static final int MAX_QUEUED_DOWNLOADS = 16;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final long PROGRESS_INTERVAL = 250;
+    private static final String CHECKSUM_ALGORITHM = "SHA-256";
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor mExecutor;
+    // Running and queued downloads by url.
+    private final HashMap<String, Transfer> mTransfers = new HashMap<String, Transfer>();
+
+    XWalkFileDownloader(Context context) {
+        mContext = context;
+        mExecutor = new ThreadPoolExecutor(MAX_CONCURRENT_DOWNLOADS, MAX_CONCURRENT_DOWNLOADS,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(MAX_QUEUED_DOWNLOADS));
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queue a download.
+     * @param url the url to download.
+     * @param dst the file to download to.
+     * @param contentLength the expected length, or a value <= 0 if unknown.
+     * @param listener the listener to report to.
+     * @return false if the url is already being downloaded, or is still being
+     *         cancelled, or the queue is full.
+     */
+    boolean enqueue(String url, File dst, long contentLength, DownloadListener listener) {
+        Transfer transfer = new Transfer(url, dst, contentLength, listener);
+        synchronized (mTransfers) {
+            if (mTransfers.containsKey(url)) return false;
+            try {
+                mExecutor.execute(transfer);
+            } catch (RejectedExecutionException e) {
+                Log.w(TAG, "Too many downloads, rejected " + url);
+                return false;
+            }
+            mTransfers.put(url, transfer);
+        }
+        return true;
+    }
+
+    /**
+     * Cancel a download. Its partial data is deleted.
+     * @return false if the url is not being downloaded. Otherwise the
+     *         listener is told the download was cancelled.
+     */
+    boolean cancel(String url) {
+        Transfer transfer;
+        synchronized (mTransfers) {
+            // It's unregistered by finish(), once it no longer touches its files.
+            transfer = mTransfers.get(url);
+            if (transfer == null || transfer.mCancelled) return false;
+            transfer.mCancelled = true;
+        }
+        // Let a queued one report its cancellation at once.
+        if (mExecutor.remove(transfer)) transfer.finish(false, null);
+        return true;
+    }
+
+    private class Transfer implements Runnable {
+        private final String mUrl;
+        private final File mDst;
+        private final long mContentLength;
+        private final DownloadListener mListener;
+        private volatile boolean mCancelled = false;
+        private long mLastProgressTime = 0;
+
+        Transfer(String url, File dst, long contentLength, DownloadListener listener) {
+            mUrl = url;
+            mDst = dst;
+            mContentLength = contentLength;
+            mListener = listener;
+        }
+
+        @Override
+        public void run() {
+            String checksum = null;
+            try {
+                if (!mCancelled) checksum = transfer();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to download " + mUrl + ": " + e);
+            } catch (NoSuchAlgorithmException e) {
+                Log.e(TAG, e.toString());
+            }
+            finish(checksum != null, checksum);
+        }
+
+        /**
+         * @return the checksum, or null if cancelled.
+         */
+        private String transfer() throws IOException, NoSuchAlgorithmException {
+            MessageDigest digest = MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+            File part = new File(mDst.getPath() + PARTIAL_SUFFIX);
+            File stampFile = new File(part.getPath() + STAMP_SUFFIX);
+            InputStream input = AndroidProtocolHandler.open(mContext, mUrl);
+            if (input == null) throw new IOException("Can't open " + mUrl);
+
+            ReadableByteChannel src = (input instanceof FileInputStream) ?
+                    ((FileInputStream) input).getChannel() : Channels.newChannel(input);
+            FileOutputStream output = null;
+            try {
+                String stamp = getSourceStamp(src);
+                long offset = part.exists() ? part.length() : 0;
+                if (offset > 0 && !(stamp != null && stamp.equals(readStamp(stampFile)) &&
+                        skip(src, input, offset) && digestFile(part, digest))) {
+                    // Can't resume, start over.
+                    digest.reset();
+                    offset = 0;
+                    src.close();
+                    input = AndroidProtocolHandler.open(mContext, mUrl);
+                    if (input == null) throw new IOException("Can't open " + mUrl);
+                    src = (input instanceof FileInputStream) ?
+                            ((FileInputStream) input).getChannel() : Channels.newChannel(input);
+                }
+                if (offset == 0) writeStamp(stampFile, stamp);
+
+                output = new FileOutputStream(part, offset > 0);
+                FileChannel dst = output.getChannel();
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                long done = offset;
+                while (!mCancelled && src.read(buffer) >= 0) {
+                    buffer.flip();
+                    digest.update(buffer.array(), 0, buffer.limit());
+                    while (buffer.hasRemaining()) dst.write(buffer);
+                    done += buffer.limit();
+                    buffer.clear();
+                    reportProgress(done);
+                }
+            } finally {
+                closeQuietly(src);
+                closeQuietly(output);
+            }
+
+            // Completed only if not cancelled in the meantime.
+            synchronized (mTransfers) {
+                if (!mCancelled) {
+                    if (!part.renameTo(mDst)) throw new IOException("Can't rename " + part);
+                    stampFile.delete();
+                    return toHex(digest.digest());
+                }
+            }
+            part.delete();
+            stampFile.delete();
+            return null;
+        }
+
+        private void reportProgress(final long done) {
+            long now = SystemClock.uptimeMillis();
+            if (now - mLastProgressTime < PROGRESS_INTERVAL) return;
+            mLastProgressTime = now;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mCancelled) mListener.onDownloadProgress(mUrl, done, mContentLength);
+                }
+            });
+        }
+
+        /**
+         * @return the length and modification time of the source, or null if
+         *         either is unknown.
+         */
+        private String getSourceStamp(ReadableByteChannel src) throws IOException {
+            long length = (src instanceof FileChannel) ?
+                    ((FileChannel) src).size() : mContentLength;
+            // The app: and file: sources are packaged assets and resources,
+            // which only change when the app is updated.
+            long modified = 0;
+            String scheme = Uri.parse(mUrl).getScheme();
+            if (AndroidProtocolHandler.APP_SCHEME.equals(scheme) ||
+                    AndroidProtocolHandler.FILE_SCHEME.equals(scheme)) {
+                try {
+                    modified = mContext.getPackageManager().getPackageInfo(
+                            mContext.getPackageName(), 0).lastUpdateTime;
+                } catch (NameNotFoundException e) {
+                    Log.w(TAG, e.toString());
+                }
+            }
+            if (length <= 0 || modified <= 0) return null;
+            return length + ":" + modified;
+        }
+
+        private void finish(final boolean succeeded, final String checksum) {
+            synchronized (mTransfers) {
+                if (mTransfers.get(mUrl) == this) mTransfers.remove(mUrl);
+            }
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (succeeded) {
+                        mListener.onDownloadFinished(mUrl, mDst.getPath(), checksum);
+                    } else {
+                        mListener.onDownloadFailed(mUrl, mCancelled);
+                    }
+                }
+            });
+        }
+    }
+
+    // Move src past offset bytes, by seeking when it's a file.
+    private static boolean skip(ReadableByteChannel src, InputStream input, long offset)
+            throws IOException {
+        if (src instanceof FileChannel) {
+            FileChannel channel = (FileChannel) src;
+            if (channel.size() < offset) return false;
+            channel.position(offset);
+            return true;
+        }
+        long remaining = offset;
+        while (remaining > 0) {
+            long skipped = input.skip(remaining);
+            if (skipped <= 0) return false;
+            remaining -= skipped;
+        }
+        return true;
+    }
+
+    private static String readStamp(File file) {
+        if (!file.exists()) return null;
+        RandomAccessFile input = null;
+        try {
+            input = new RandomAccessFile(file, "r");
+            return input.readLine();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read " + file + ": " + e);
+            return null;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    // Without a stamp, a later attempt won't resume from the partial data.
+    private static void writeStamp(File file, String stamp) {
+        file.delete();
+        if (stamp == null) return;
+        FileWriter output = null;
+        try {
+            output = new FileWriter(file);
+            output.write(stamp);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + file + ": " + e);
+        } finally {
+            closeQuietly(output);
+        }
+    }
+
+    // Feed what a previous attempt wrote to the digest.
+    private static boolean digestFile(File file, MessageDigest digest) {
+        FileInputStream input = null;
+        try {
+            input = new FileInputStream(file);
+            FileChannel channel = input.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer.array(), 0, buffer.limit());
+                buffer.clear();
+            }
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read " + file + ": " + e);
+            return false;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close stream: " + e);
+        }
+    }
+}
@@ -4,11 +4,18 @@
 
 package org.xwalk.core.internal;
 
+import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.AsyncTask;
 import android.webkit.ValueCallback;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
 import org.chromium.base.ThreadUtils;
 import org.chromium.net.GURLUtils;
@@ -16,6 +23,12 @@ import org.chromium.net.GURLUtils;
 /**
  * This class is used to manage permissions for the WebView's Geolocation JavaScript API.
  *
+ * The permissions are shared by all the views of the process and retained
+ * across runs: they're kept in memory by origin, loaded once in background
+ * and written back to disk asynchronously. The synchronous lookups never
+ * wait for the load: until it's done, only the permissions set meanwhile
+ * are known, and the user is prompted for the other origins.
+ *
  * Callbacks are posted on the UI thread.
  * @hide
  */
@@ -28,12 +41,17 @@ public final class XWalkGeolocationPermissions {
         public void invoke(String origin, boolean allow, boolean remember);
     };
 
-    private static final String PREF_PREFIX =
-            XWalkGeolocationPermissions.class.getCanonicalName() + "%";
-    private final SharedPreferences mSharedPreferences;
+    private static final String PREFERENCES_NAME = "xwalk_geolocation_permissions";
+
+    private static PermissionStore sStore;
 
-    public XWalkGeolocationPermissions(SharedPreferences sharedPreferences) {
-        mSharedPreferences = sharedPreferences;
+    private final PermissionStore mStore;
+
+    public XWalkGeolocationPermissions(Context context) {
+        synchronized (XWalkGeolocationPermissions.class) {
+            if (sStore == null) sStore = new PermissionStore(context.getApplicationContext());
+            mStore = sStore;
+        }
     }
 
     /**
@@ -41,9 +59,7 @@ public final class XWalkGeolocationPermissions {
      */
     public void allow(String origin) {
         String key = getOriginKey(origin);
-        if (key != null) {
-            mSharedPreferences.edit().putBoolean(key, true).apply();
-        }
+        if (key != null) mStore.put(key, true);
     }
 
     /**
@@ -51,9 +67,7 @@ public final class XWalkGeolocationPermissions {
      */
     public void deny(String origin) {
         String key = getOriginKey(origin);
-        if (key != null) {
-            mSharedPreferences.edit().putBoolean(key, false).apply();
-        }
+        if (key != null) mStore.put(key, false);
     }
 
     /**
@@ -61,52 +75,56 @@ public final class XWalkGeolocationPermissions {
      */
     public void clear(String origin) {
         String key = getOriginKey(origin);
-        if (key != null) {
-            mSharedPreferences.edit().remove(key).apply();
-        }
+        if (key != null) mStore.remove(key);
     }
 
     /**
      * Clear stored permissions for all origins.
      */
     public void clearAll() {
-        SharedPreferences.Editor editor = null;
-        for (String name : mSharedPreferences.getAll().keySet()) {
-            if (name.startsWith(PREF_PREFIX)) {
-                if (editor == null) {
-                    editor = mSharedPreferences.edit();
-                }
-                editor.remove(name);
-            }
-        }
-        if (editor != null) {
-            editor.apply();
-        }
+        mStore.clear();
     }
 
     /**
      * Synchronous method to get if an origin is set to be allowed.
      */
     public boolean isOriginAllowed(String origin) {
-        return mSharedPreferences.getBoolean(getOriginKey(origin), false);
+        Boolean allowed = getRetainedPermission(origin);
+        return allowed != null && allowed;
     }
 
     /**
      * Returns true if the origin is either set to allowed or denied.
      */
     public boolean hasOrigin(String origin) {
-        return mSharedPreferences.contains(getOriginKey(origin));
+        return getRetainedPermission(origin) != null;
+    }
+
+    /**
+     * Get the permission retained for an origin in one lookup.
+     * @return null if the origin is neither set to allowed nor denied.
+     */
+    Boolean getRetainedPermission(String origin) {
+        String key = getOriginKey(origin);
+        return key == null ? null : mStore.get(key);
     }
 
     /**
      * Asynchronous method to get if an origin set to be allowed.
      */
-    public void getAllowed(String origin, final ValueCallback<Boolean> callback) {
-        final boolean finalAllowed = isOriginAllowed(origin);
-        ThreadUtils.postOnUiThread(new Runnable() {
+    public void getAllowed(final String origin, final ValueCallback<Boolean> callback) {
+        // Answered once the permissions are loaded.
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
             @Override
             public void run() {
-                callback.onReceiveValue(finalAllowed);
+                mStore.waitUntilLoaded();
+                final boolean allowed = isOriginAllowed(origin);
+                ThreadUtils.postOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onReceiveValue(allowed);
+                    }
+                });
             }
         });
     }
@@ -115,16 +133,17 @@ public final class XWalkGeolocationPermissions {
      * Async method to get the domains currently allowed or denied.
      */
     public void getOrigins(final ValueCallback<Set<String>> callback) {
-        final Set<String> origins = new HashSet<String>();
-        for (String name : mSharedPreferences.getAll().keySet()) {
-            if (name.startsWith(PREF_PREFIX)) {
-                origins.add(name.substring(PREF_PREFIX.length()));
-            }
-        }
-        ThreadUtils.postOnUiThread(new Runnable() {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
             @Override
             public void run() {
-                callback.onReceiveValue(origins);
+                mStore.waitUntilLoaded();
+                final Set<String> origins = mStore.getOrigins();
+                ThreadUtils.postOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onReceiveValue(origins);
+                    }
+                });
             }
         });
     }
@@ -138,6 +157,128 @@ public final class XWalkGeolocationPermissions {
             return null;
         }
 
-        return PREF_PREFIX + origin;
+        return origin;
+    }
+
+    /**
+     * The retained permissions by origin. Reads are lock-free map lookups,
+     * which don't wait for the initial load from disk. Writes update the map
+     * then go to disk through SharedPreferences.Editor.apply(), which doesn't
+     * wait for the disk. The writes made before the load is done are replayed
+     * over the loaded permissions, and written by the loading thread.
+     */
+    private static class PermissionStore {
+        // A change made before the load is done. A null origin clears all the
+        // permissions, a null permission removes the one of the origin.
+        private static class Change {
+            final String mOrigin;
+            final Boolean mAllowed;
+
+            Change(String origin, Boolean allowed) {
+                mOrigin = origin;
+                mAllowed = allowed;
+            }
+        }
+
+        private final SharedPreferences mPreferences;
+        private final ConcurrentHashMap<String, Boolean> mPermissions =
+                new ConcurrentHashMap<String, Boolean>();
+        private final CountDownLatch mLoaded = new CountDownLatch(1);
+        // Null once the load is done.
+        private ArrayList<Change> mPendingChanges = new ArrayList<Change>();
+
+        PermissionStore(Context context) {
+            mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    load();
+                }
+            });
+        }
+
+        private void load() {
+            HashMap<String, Boolean> loaded = new HashMap<String, Boolean>();
+            for (Map.Entry<String, ?> entry : mPreferences.getAll().entrySet()) {
+                if (entry.getValue() instanceof Boolean) {
+                    loaded.put(entry.getKey(), (Boolean) entry.getValue());
+                }
+            }
+
+            synchronized (this) {
+                SharedPreferences.Editor editor = mPreferences.edit();
+                for (Change change : mPendingChanges) {
+                    if (change.mOrigin == null) {
+                        loaded.clear();
+                        editor.clear();
+                    } else if (change.mAllowed == null) {
+                        loaded.remove(change.mOrigin);
+                        editor.remove(change.mOrigin);
+                    } else {
+                        loaded.put(change.mOrigin, change.mAllowed);
+                        editor.putBoolean(change.mOrigin, change.mAllowed);
+                    }
+                }
+                if (!mPendingChanges.isEmpty()) editor.apply();
+                mPendingChanges = null;
+                // Holds the final values only, a reader never sees one which
+                // was changed meanwhile.
+                mPermissions.putAll(loaded);
+                mLoaded.countDown();
+            }
+        }
+
+        /**
+         * @return null if the origin has no permission, or if it's not loaded yet.
+         */
+        Boolean get(String origin) {
+            return mPermissions.get(origin);
+        }
+
+        Set<String> getOrigins() {
+            return new HashSet<String>(mPermissions.keySet());
+        }
+
+        synchronized void put(String origin, boolean allowed) {
+            mPermissions.put(origin, allowed);
+            if (mPendingChanges != null) {
+                mPendingChanges.add(new Change(origin, allowed));
+            } else {
+                mPreferences.edit().putBoolean(origin, allowed).apply();
+            }
+        }
+
+        synchronized void remove(String origin) {
+            mPermissions.remove(origin);
+            if (mPendingChanges != null) {
+                mPendingChanges.add(new Change(origin, null));
+            } else {
+                mPreferences.edit().remove(origin).apply();
+            }
+        }
+
+        synchronized void clear() {
+            mPermissions.clear();
+            if (mPendingChanges != null) {
+                mPendingChanges.add(new Change(null, null));
+            } else {
+                mPreferences.edit().clear().apply();
+            }
+        }
+
+        // Only called in background, the UI thread never waits for the disk.
+        void waitUntilLoaded() {
+            if (mLoaded.getCount() == 0) return;
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    mLoaded.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
     }
 }
@@ -20,6 +20,35 @@ class XWalkInternalResources {
         "org.xwalk.core.internal.R"
     };
     private final static String GENERATED_RESOURCE_CLASS = "org.xwalk.core.R";
+    // Generated by build/android/generate_resource_map.py and only packaged
+    // into the xwalk core library project.
+    private final static String GENERATED_RESOURCE_MAP_CLASS =
+            "org.xwalk.core.internal.XWalkInternalResourcesMap";
+
+    // Apply the remapping generated at build time, which is a list of plain
+    // field assignments instead of thousands of reflective calls.
+    // Return false if it's missing or doesn't match org.xwalk.core.R.
+    private static boolean doResetIdsFromMap(Context context) {
+        ClassLoader classLoader = context.getClassLoader();
+        try {
+            Class<?> mapClazz = classLoader.loadClass(GENERATED_RESOURCE_MAP_CLASS);
+            ((Runnable) mapClazz.newInstance()).run();
+            return true;
+        } catch (ClassNotFoundException e) {
+            // Either not used as library project, the ids are then final and
+            // reflection leaves them alone, or packaged without the map.
+            Log.i(TAG, GENERATED_RESOURCE_MAP_CLASS + " is not found.");
+        } catch (InstantiationException e) {
+            Log.w(TAG, GENERATED_RESOURCE_MAP_CLASS + " can't be instantiated.");
+        } catch (IllegalAccessException e) {
+            Log.w(TAG, GENERATED_RESOURCE_MAP_CLASS + " is not accessable.");
+        } catch (LinkageError e) {
+            // Some resources are missing from org.xwalk.core.R, e.g. the
+            // library jar and resources come from different builds.
+            Log.w(TAG, "Resource map mismatch, fall back to reflection: " + e);
+        }
+        return false;
+    }
 
     // Doing org.chromium.content.R.<class>.<name> = org.xwalk.core.R.<class>.<name>
     // Use reflection to iterate over the target class is to avoid hardcode.
@@ -44,8 +73,13 @@ class XWalkInternalResources {
                         // It's final means we are probably not used as library project.
                         if (Modifier.isFinal(field.getModifiers())) continue;
                         try {
-                            int value = generatedInnerClazz.getField(field.getName()).getInt(null);
-                            field.setInt(null, value);
+                            Field generatedField = generatedInnerClazz.getField(field.getName());
+                            if (field.getType() == int[].class) {
+                                // The styleables, like the generated map does.
+                                field.set(null, generatedField.get(null));
+                            } else {
+                                field.setInt(null, generatedField.getInt(null));
+                            }
                         } catch (IllegalAccessException e) {
                             Log.w(TAG, generatedInnerClazz.getName() + "." +
                                     field.getName() + " is not accessable.");
@@ -66,7 +100,7 @@ class XWalkInternalResources {
 
     static void resetIds(Context context) {
         if (!loaded) {
-            doResetIds(context);
+            if (!doResetIdsFromMap(context)) doResetIds(context);
             loaded = true;
         }
     }
@@ -23,9 +23,12 @@ import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.Shader.TileMode;
 import android.hardware.SensorManager;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 import android.util.TypedValue;
 import android.view.Display;
 import android.view.Gravity;
@@ -58,6 +61,17 @@ public class XWalkLaunchScreenManager
     private final static String BORDER_MODE_STRETCH = "stretch";
     private final static String BORDER_MODE_ROUND = "round";
 
+    // The sections of a 9-piece image.
+    private final static int TOP_LEFT = 0;
+    private final static int TOP = 1;
+    private final static int TOP_RIGHT = 2;
+    private final static int LEFT = 3;
+    private final static int MIDDLE = 4;
+    private final static int RIGHT = 5;
+    private final static int BOTTOM_LEFT = 6;
+    private final static int BOTTOM = 7;
+    private final static int BOTTOM_RIGHT = 8;
+
     private XWalkViewInternal mXWalkView;
     private Activity mActivity;
     private Context mLibContext;
@@ -69,6 +83,10 @@ public class XWalkLaunchScreenManager
     private boolean mCustomHideLaunchScreen;
     private int mCurrentOrientation;
     private OrientationEventListener mOrientationListener;
+    private String mImageBorderList;
+    // The layout of each orientation once built, null when there is no foreground image.
+    private final SparseArray<RelativeLayout> mLayoutCache = new SparseArray<RelativeLayout>();
+    private final SparseBooleanArray mPreparingOrientations = new SparseBooleanArray();
 
     private enum ReadyWhenType {
         FIRST_PAINT,
@@ -84,6 +102,23 @@ public class XWalkLaunchScreenManager
         NONE
     }
 
+    /**
+     * The foreground image of an orientation, decoded and cut into the
+     * sections of its image_border off the UI thread.
+     */
+    private static class LaunchScreenImage {
+        // The image to center when there is no border.
+        Bitmap image;
+        // The 9 pieces otherwise, null when empty.
+        final Bitmap[] sections = new Bitmap[9];
+        int topBorder;
+        int rightBorder;
+        int leftBorder;
+        int bottomBorder;
+        BorderModeType horizontalMode;
+        BorderModeType verticalMode;
+    }
+
     public XWalkLaunchScreenManager(Context context, XWalkViewInternal xwView) {
         mXWalkView = xwView;
         mLibContext = context;
@@ -94,6 +129,7 @@ public class XWalkLaunchScreenManager
     public void displayLaunchScreen(String readyWhen, final String imageBorderList) {
         if (mXWalkView == null) return;
         setReadyWhen(readyWhen);
+        mImageBorderList = imageBorderList;
 
         Runnable runnable = new Runnable() {
            public void run() {
@@ -126,12 +162,10 @@ public class XWalkLaunchScreenManager
                 mLaunchScreenDialog.setOnDismissListener(XWalkLaunchScreenManager.this);
                 // Set background
                 mLaunchScreenDialog.getWindow().setBackgroundDrawable(bgDrawable);
-                // Set foreground image
-                RelativeLayout root = getLaunchScreenLayout(imageBorderList);
-                // The root layout can be null when there is no 'image' provided in the manifest.
-                // We can just display the background instead of no launch screen dialog displayed.
-                if (root != null) mLaunchScreenDialog.setContentView(root);
+                // Show the background at once, the foreground image is set when it's ready.
+                // It may never be, when there is no 'image' provided in the manifest.
                 mLaunchScreenDialog.show();
+                showLaunchScreenLayout(getScreenOrientation());
 
                 // Change the layout depends on the orientation change.
                 mOrientationListener = new OrientationEventListener(mActivity,
@@ -140,11 +174,9 @@ public class XWalkLaunchScreenManager
                         if (mLaunchScreenDialog == null || !mLaunchScreenDialog.isShowing()) {
                             return;
                         }
-		        int orientation = getScreenOrientation();
+                        int orientation = getScreenOrientation();
                         if (orientation != mCurrentOrientation) {
-                            RelativeLayout root = getLaunchScreenLayout(imageBorderList);
-                            if (root == null) return;
-                            mLaunchScreenDialog.setContentView(root);
+                            showLaunchScreenLayout(orientation);
                         }
                     }
                 };
@@ -171,6 +203,8 @@ public class XWalkLaunchScreenManager
     public void onDismiss(DialogInterface dialog) {
         mOrientationListener.disable();
         mOrientationListener = null;
+        // Release the bitmaps, the launch screen is never shown again.
+        mLayoutCache.clear();
     }
 
     @Override
@@ -198,44 +232,98 @@ public class XWalkLaunchScreenManager
         return orientation;
     }
 
-    private RelativeLayout getLaunchScreenLayout(String imageBorderList) {
+    /**
+     * Set the layout of an orientation as the content of the dialog. The layout
+     * is built once per orientation: the first time, its image is prepared off
+     * the UI thread and the layout is set when ready.
+     */
+    private void showLaunchScreenLayout(int orientation) {
+        int index = mLayoutCache.indexOfKey(orientation);
+        if (index >= 0) {
+            RelativeLayout root = mLayoutCache.valueAt(index);
+            // Keep the current content when there is no foreground image.
+            if (root == null) return;
+            mLaunchScreenDialog.setContentView(root);
+            mCurrentOrientation = orientation;
+            return;
+        }
+        if (mPreparingOrientations.get(orientation)) return;
+        mPreparingOrientations.put(orientation, true);
+
+        final int preparedOrientation = orientation;
+        final String imageBorder = getImageBorder(mImageBorderList, orientation);
+        final Point size = getLaunchScreenSize();
+        new AsyncTask<Void, Void, LaunchScreenImage>() {
+            @Override
+            protected LaunchScreenImage doInBackground(Void... params) {
+                return prepareLaunchScreenImage(imageBorder, size);
+            }
+
+            @Override
+            protected void onPostExecute(LaunchScreenImage image) {
+                mPreparingOrientations.delete(preparedOrientation);
+                // Hidden in the meantime.
+                if (mLaunchScreenDialog == null) return;
+                mLayoutCache.put(preparedOrientation,
+                        image == null ? null : buildLaunchScreenLayout(image));
+                if (getScreenOrientation() == preparedOrientation) {
+                    showLaunchScreenLayout(preparedOrientation);
+                }
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private String getImageBorder(String imageBorderList, int orientation) {
         // Parse the borders depends on orientation.
         // imageBorderList format:"[default];[landscape];[portrait]"
         String[] borders = imageBorderList.split(";");
         // When there is no borders defined, display with no borders.
-        if (borders.length < 1) return parseImageBorder("");
-        int orientation = getScreenOrientation();
-        mCurrentOrientation = orientation;
+        if (borders.length < 1) return "";
         if (borders.length >= 2 && orientation == Configuration.ORIENTATION_LANDSCAPE) {
             if (borders[1].equals("empty")) {
                 // Has launch_screen.landscape configured, but no image_border set.
                 // Display the iamge with no borders.
-                return parseImageBorder("");
+                return "";
             } else if (borders[1].isEmpty()) {
                 // No launch_screen.landscape configured.
                 // Use launch_screen.default.
-                return parseImageBorder(borders[0]);
+                return borders[0];
             } else {
-                return parseImageBorder(borders[1]);
+                return borders[1];
             }
         } else if (borders.length == 3 && orientation == Configuration.ORIENTATION_PORTRAIT) {
             if (borders[2].equals("empty")) {
                 // Has launch_screen.portrait configured, but no image_border set.
                 // Display the iamge with no borders.
-                return parseImageBorder("");
+                return "";
             } else if (borders[2].isEmpty()) {
                 // No launch_screen.portrait configured.
                 // Use launch_screen.default.
-                return parseImageBorder(borders[0]);
+                return borders[0];
             } else {
-                return parseImageBorder(borders[2]);
+                return borders[2];
             }
         }
 
-        return parseImageBorder(borders[0]);
+        return borders[0];
     }
 
-    private int getSuitableSize(int maxSize, int divider) {
+    // The size available to the launch screen.
+    private Point getLaunchScreenSize() {
+        // Get Screen width and height.
+        Display display = mActivity.getWindowManager().getDefaultDisplay();
+        Point size = new Point();
+        display.getSize(size);
+
+        // For non fullscreen, the height should substract status bar height
+        if ((mActivity.getWindow().getAttributes().flags &
+             WindowManager.LayoutParams.FLAG_FULLSCREEN) == 0) {
+            size.y -= getStatusBarHeight();
+        }
+        return size;
+    }
+
+    private static int getSuitableSize(int maxSize, int divider) {
         int finalSize = divider;
         float minMod = divider;
         for (; divider > 1; divider--) {
@@ -265,9 +353,9 @@ public class XWalkLaunchScreenManager
      * @param mode The border type for this section.
      * @param maxWidth When mode == ROUND, this will be used.
      * @param maxHeight When mode == ROUND, this will be used.
-     * @return The ImageView for this section.
+     * @return The bitmap for this section, already scaled when mode == ROUND.
      */
-    private ImageView getSubImageView(Bitmap img, int x, int y, int width, int height,
+    private static Bitmap getSubImage(Bitmap img, int x, int y, int width, int height,
                                       BorderModeType mode, int maxWidth, int maxHeight) {
         if (img == null) return null;
 
@@ -279,8 +367,6 @@ public class XWalkLaunchScreenManager
         if (!imgRect.contains(subRect)) return null;
 
         Bitmap subImage = Bitmap.createBitmap(img, x, y, width, height);
-        ImageView subImageView = new ImageView(mActivity);
-        BitmapDrawable drawable;
         if (mode == BorderModeType.ROUND) {
             int originW = subImage.getWidth();
             int originH = subImage.getHeight();
@@ -290,12 +376,18 @@ public class XWalkLaunchScreenManager
             if (maxWidth > 0) newW = getSuitableSize(maxWidth, originW);
             if (maxHeight > 0) newH = getSuitableSize(maxHeight, originH);
             // recreate the new scaled bitmap.
-            Bitmap resizedBitmap = Bitmap.createScaledBitmap(subImage, newW, newH, true);
-            // Treat as repeat mode.
-            subImage = resizedBitmap;
-            mode = BorderModeType.REPEAT;
+            subImage = Bitmap.createScaledBitmap(subImage, newW, newH, true);
         }
-        if (mode == BorderModeType.REPEAT) {
+        return subImage;
+    }
+
+    private ImageView getSubImageView(Bitmap subImage, BorderModeType mode) {
+        if (subImage == null) return null;
+
+        ImageView subImageView = new ImageView(mActivity);
+        BitmapDrawable drawable;
+        // The ROUND sections were scaled, they are repeated.
+        if (mode == BorderModeType.REPEAT || mode == BorderModeType.ROUND) {
             drawable = new BitmapDrawable(mActivity.getResources(), subImage);
             drawable.setTileModeXY(TileMode.REPEAT, TileMode.REPEAT);
             subImageView.setImageDrawable(drawable);
@@ -320,7 +412,14 @@ public class XWalkLaunchScreenManager
         return 25;
     }
 
-    private RelativeLayout parseImageBorder(String imageBorder) {
+    /**
+     * Decode the foreground image and cut it as the image_border spec defines.
+     * Called off the UI thread, it creates no view.
+     * @param imageBorder The image_border of the current orientation.
+     * @param size The size available to the launch screen.
+     * @return null if there is no foreground image.
+     */
+    private LaunchScreenImage prepareLaunchScreenImage(String imageBorder, Point size) {
         int topBorder = 0;
         int rightBorder = 0;
         int leftBorder = 0;
@@ -391,9 +490,70 @@ public class XWalkLaunchScreenManager
         int imgResId = mActivity.getResources().getIdentifier(
                        "launchscreen_img", "drawable", mActivity.getPackageName());
         if (imgResId == 0) return null;
+
+        LaunchScreenImage image = new LaunchScreenImage();
+        // If no border specified, the foreground image is centered horizontally and
+        // vertically, and shrinked to fit: decode it no larger than the screen.
+        if (borders.size() == 0) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeResource(mActivity.getResources(), imgResId, options);
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = getSampleSize(options.outWidth, options.outHeight, size);
+            image.image = BitmapFactory.decodeResource(
+                    mActivity.getResources(), imgResId, options);
+            return image.image == null ? null : image;
+        }
+
+        // The borders are in pixels of the image, it's decoded at full size.
         Bitmap img = BitmapFactory.decodeResource(mActivity.getResources(), imgResId);
         if (img == null) return null;
 
+        image.topBorder = topBorder;
+        image.rightBorder = rightBorder;
+        image.leftBorder = leftBorder;
+        image.bottomBorder = bottomBorder;
+        image.horizontalMode = horizontalMode;
+        image.verticalMode = verticalMode;
+
+        // Cut the 9 pieces as spec defined.
+        int middleWidth = img.getWidth() - leftBorder - rightBorder;
+        int middleHeight = img.getHeight() - topBorder - bottomBorder;
+        int rightX = img.getWidth() - rightBorder;
+        int bottomY = img.getHeight() - bottomBorder;
+        int repeatWidth = size.x - leftBorder - rightBorder;
+        int repeatHeight = size.y - topBorder - bottomBorder;
+        image.sections[TOP_LEFT] = getSubImage(img, 0, 0, leftBorder, topBorder,
+                BorderModeType.NONE, 0, 0);
+        image.sections[TOP] = getSubImage(img, leftBorder, 0, middleWidth, topBorder,
+                horizontalMode, repeatWidth, 0);
+        image.sections[TOP_RIGHT] = getSubImage(img, rightX, 0, rightBorder, topBorder,
+                BorderModeType.NONE, 0, 0);
+        image.sections[LEFT] = getSubImage(img, 0, topBorder, leftBorder, middleHeight,
+                verticalMode, 0, repeatHeight);
+        image.sections[MIDDLE] = getSubImage(img, leftBorder, topBorder, middleWidth,
+                middleHeight, BorderModeType.NONE, 0, 0);
+        image.sections[RIGHT] = getSubImage(img, rightX, topBorder, rightBorder, middleHeight,
+                verticalMode, 0, repeatHeight);
+        image.sections[BOTTOM_LEFT] = getSubImage(img, 0, bottomY, leftBorder, bottomBorder,
+                BorderModeType.NONE, 0, 0);
+        image.sections[BOTTOM] = getSubImage(img, leftBorder, bottomY, middleWidth,
+                bottomBorder, horizontalMode, repeatWidth, 0);
+        image.sections[BOTTOM_RIGHT] = getSubImage(img, rightX, bottomY, rightBorder,
+                bottomBorder, BorderModeType.NONE, 0, 0);
+        return image;
+    }
+
+    // The largest power of 2 keeping the decoded image at least as large as the screen.
+    private static int getSampleSize(int width, int height, Point size) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= size.x && height / (sampleSize * 2) >= size.y) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private RelativeLayout buildLaunchScreenLayout(LaunchScreenImage image) {
         RelativeLayout root = new RelativeLayout(mActivity);
         root.setLayoutParams(new RelativeLayout.LayoutParams(
                 ViewGroup.LayoutParams.MATCH_PARENT,
@@ -402,9 +562,9 @@ public class XWalkLaunchScreenManager
         ImageView subImageView;
 
         // If no border specified, display the foreground image centered horizontally and vertically.
-        if (borders.size() == 0) {
+        if (image.image != null) {
             subImageView = new ImageView(mActivity);
-            subImageView.setImageBitmap(img);
+            subImageView.setImageBitmap(image.image);
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.WRAP_CONTENT,
                     RelativeLayout.LayoutParams.WRAP_CONTENT);
@@ -415,19 +575,8 @@ public class XWalkLaunchScreenManager
 
         // Create the 9-piece layout as spec defined.
 
-        // Get Screen width and height.
-        Display display = mActivity.getWindowManager().getDefaultDisplay();
-        Point size = new Point();
-        display.getSize(size);
-
-        // For non fullscreen, the height should substract status bar height
-        if ((mActivity.getWindow().getAttributes().flags &
-             WindowManager.LayoutParams.FLAG_FULLSCREEN) == 0) {
-            size.y -= getStatusBarHeight();
-        }
-
         // Image section-1 top left
-        subImageView = getSubImageView(img, 0, 0, leftBorder, topBorder, BorderModeType.NONE, 0, 0);
+        subImageView = getSubImageView(image.sections[TOP_LEFT], BorderModeType.NONE);
         if (subImageView != null) {
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.WRAP_CONTENT,
@@ -438,22 +587,20 @@ public class XWalkLaunchScreenManager
         }
 
         // Image section-2 top
-        subImageView = getSubImageView(img, leftBorder, 0, img.getWidth() - leftBorder
-                - rightBorder, topBorder, horizontalMode, size.x - leftBorder - rightBorder, 0);
+        subImageView = getSubImageView(image.sections[TOP], image.horizontalMode);
         if (subImageView != null) {
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.MATCH_PARENT,
                     RelativeLayout.LayoutParams.WRAP_CONTENT);
             params.addRule(RelativeLayout.ALIGN_PARENT_TOP, RelativeLayout.TRUE);
             params.addRule(RelativeLayout.CENTER_HORIZONTAL, RelativeLayout.TRUE);
-            params.leftMargin = leftBorder;
-            params.rightMargin = rightBorder;
+            params.leftMargin = image.leftBorder;
+            params.rightMargin = image.rightBorder;
             root.addView(subImageView, params);
         }
 
         // Image section-3 top right
-        subImageView = getSubImageView(img, img.getWidth() - rightBorder, 0,
-                rightBorder, topBorder, BorderModeType.NONE, 0, 0);
+        subImageView = getSubImageView(image.sections[TOP_RIGHT], BorderModeType.NONE);
         if (subImageView != null) {
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.WRAP_CONTENT,
@@ -464,52 +611,47 @@ public class XWalkLaunchScreenManager
         }
 
         // Image section-4 left
-        subImageView = getSubImageView(img, 0, topBorder, leftBorder, img.getHeight()
-                - topBorder - bottomBorder, verticalMode, 0, size.y - topBorder - bottomBorder);
+        subImageView = getSubImageView(image.sections[LEFT], image.verticalMode);
         if (subImageView != null) {
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.WRAP_CONTENT,
                     RelativeLayout.LayoutParams.MATCH_PARENT);
             params.addRule(RelativeLayout.ALIGN_PARENT_LEFT, RelativeLayout.TRUE);
             params.addRule(RelativeLayout.CENTER_IN_PARENT, RelativeLayout.TRUE);
-            params.topMargin = topBorder;
-            params.bottomMargin = bottomBorder;
+            params.topMargin = image.topBorder;
+            params.bottomMargin = image.bottomBorder;
             root.addView(subImageView, params);
         }
 
         // Image section-5 middle
-        subImageView = getSubImageView(img, leftBorder, topBorder, img.getWidth() - leftBorder - rightBorder,
-                img.getHeight() - topBorder - bottomBorder, BorderModeType.NONE, 0, 0);
+        subImageView = getSubImageView(image.sections[MIDDLE], BorderModeType.NONE);
         if (subImageView != null) {
             subImageView.setScaleType(ScaleType.FIT_XY);
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.MATCH_PARENT,
                     RelativeLayout.LayoutParams.MATCH_PARENT);
-            params.leftMargin = leftBorder;
-            params.topMargin = topBorder;
-            params.rightMargin = rightBorder;
-            params.bottomMargin = bottomBorder;
+            params.leftMargin = image.leftBorder;
+            params.topMargin = image.topBorder;
+            params.rightMargin = image.rightBorder;
+            params.bottomMargin = image.bottomBorder;
             root.addView(subImageView, params);
         }
 
         // Image section-6 right
-        subImageView = getSubImageView(img, img.getWidth() - rightBorder, topBorder, rightBorder,
-                img.getHeight() - topBorder - bottomBorder, verticalMode, 0,
-                size.y - topBorder - bottomBorder);
+        subImageView = getSubImageView(image.sections[RIGHT], image.verticalMode);
         if (subImageView != null) {
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.WRAP_CONTENT,
                     RelativeLayout.LayoutParams.MATCH_PARENT);
             params.addRule(RelativeLayout.CENTER_IN_PARENT, RelativeLayout.TRUE);
             params.addRule(RelativeLayout.ALIGN_PARENT_RIGHT, RelativeLayout.TRUE);
-            params.topMargin = topBorder;
-            params.bottomMargin = bottomBorder;
+            params.topMargin = image.topBorder;
+            params.bottomMargin = image.bottomBorder;
             root.addView(subImageView, params);
         }
 
         // Image section-7 bottom left
-        subImageView = getSubImageView(img, 0, img.getHeight() - bottomBorder,
-                leftBorder, bottomBorder, BorderModeType.NONE, 0, 0);
+        subImageView = getSubImageView(image.sections[BOTTOM_LEFT], BorderModeType.NONE);
         if (subImageView != null) {
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.WRAP_CONTENT,
@@ -520,24 +662,20 @@ public class XWalkLaunchScreenManager
         }
 
         // Image section-8 bottom
-        subImageView = getSubImageView(img, leftBorder, img.getHeight() - bottomBorder,
-                img.getWidth() - leftBorder - rightBorder, bottomBorder, horizontalMode,
-                size.x - leftBorder - rightBorder, 0);
+        subImageView = getSubImageView(image.sections[BOTTOM], image.horizontalMode);
         if (subImageView != null) {
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.MATCH_PARENT,
                     RelativeLayout.LayoutParams.WRAP_CONTENT);
             params.addRule(RelativeLayout.CENTER_HORIZONTAL, RelativeLayout.TRUE);
             params.addRule(RelativeLayout.ALIGN_PARENT_BOTTOM, RelativeLayout.TRUE);
-            params.leftMargin = leftBorder;
-            params.rightMargin = rightBorder;
+            params.leftMargin = image.leftBorder;
+            params.rightMargin = image.rightBorder;
             root.addView(subImageView, params);
         }
 
         // Image section-9 bottom right
-        subImageView = getSubImageView(img, img.getWidth() - rightBorder,
-                img.getHeight() - bottomBorder, rightBorder, bottomBorder,
-	        BorderModeType.NONE, 0, 0);
+        subImageView = getSubImageView(image.sections[BOTTOM_RIGHT], BorderModeType.NONE);
         if (subImageView != null) {
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.WRAP_CONTENT,
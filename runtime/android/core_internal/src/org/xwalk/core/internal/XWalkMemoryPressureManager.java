@@ -0,0 +1,126 @@
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+/**
+ * Process wide coordinator reacting to ComponentCallbacks2.onTrimMemory.
+ *
+ * Subsystems register their droppable caches together with a retain
+ * priority. On each trim level the caches are released in the order of
+ * their priority, the cheapest to rebuild first, and the amount of freed
+ * memory is reported.
+ *
+ * The caches are weakly referenced, so a subsystem which is collected
+ * without unregistering isn't leaked. It has to keep a reference to its
+ * cache as long as it's registered.
+ */
+public class XWalkMemoryPressureManager implements ComponentCallbacks2 {
+    private static final String TAG = "XWalkMemoryPressureManager";
+
+    // Released as soon as the system or the UI asks for memory.
+    public static final int RETAIN_LOW = 0;
+    // Released when memory is getting low or the app is in background.
+    public static final int RETAIN_NORMAL = 1;
+    // Only released when the process is about to be killed.
+    public static final int RETAIN_HIGH = 2;
+
+    public interface ReleasableCache {
+        /**
+         * Drop what could be rebuilt later.
+         * Called on the UI thread.
+         * @param level the level passed to onTrimMemory.
+         * @return the approximate count of bytes freed, 0 if unknown.
+         */
+        long release(int level);
+    }
+
+    private static final class Entry {
+        final WeakReference<ReleasableCache> mCache;
+        final int mPriority;
+
+        Entry(ReleasableCache cache, int priority) {
+            mCache = new WeakReference<ReleasableCache>(cache);
+            mPriority = priority;
+        }
+    }
+
+    private static XWalkMemoryPressureManager sInstance;
+
+    // Sorted by priority, registration order is kept within a priority.
+    private final ArrayList<Entry> mEntries = new ArrayList<Entry>();
+
+    private XWalkMemoryPressureManager() {
+    }
+
+    public static synchronized void register(Context context, ReleasableCache cache, int priority) {
+        if (sInstance == null) {
+            sInstance = new XWalkMemoryPressureManager();
+            context.getApplicationContext().registerComponentCallbacks(sInstance);
+        }
+        sInstance.add(cache, priority);
+    }
+
+    public static synchronized void unregister(ReleasableCache cache) {
+        if (sInstance == null) return;
+        sInstance.remove(cache);
+    }
+
+    private synchronized void add(ReleasableCache cache, int priority) {
+        int index = mEntries.size();
+        while (index > 0 && mEntries.get(index - 1).mPriority > priority) index--;
+        mEntries.add(index, new Entry(cache, priority));
+    }
+
+    private synchronized void remove(ReleasableCache cache) {
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            ReleasableCache registered = mEntries.get(i).mCache.get();
+            // Drop the collected ones on the way.
+            if (registered == cache || registered == null) mEntries.remove(i);
+        }
+    }
+
+    private static int getMaxReleasedPriority(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) return RETAIN_HIGH;
+        if (level >= TRIM_MEMORY_BACKGROUND) return RETAIN_NORMAL;
+        if (level >= TRIM_MEMORY_UI_HIDDEN) return RETAIN_LOW;
+        if (level >= TRIM_MEMORY_RUNNING_CRITICAL) return RETAIN_HIGH;
+        if (level >= TRIM_MEMORY_RUNNING_LOW) return RETAIN_NORMAL;
+        return RETAIN_LOW;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        int maxPriority = getMaxReleasedPriority(level);
+        ArrayList<Entry> entries;
+        synchronized (this) {
+            entries = new ArrayList<Entry>(mEntries);
+        }
+
+        long freed = 0;
+        for (Entry entry : entries) {
+            if (entry.mPriority > maxPriority) break;
+            ReleasableCache cache = entry.mCache.get();
+            if (cache != null) freed += cache.release(level);
+        }
+        Log.i(TAG, "onTrimMemory(" + level + ") released " + freed + " bytes.");
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
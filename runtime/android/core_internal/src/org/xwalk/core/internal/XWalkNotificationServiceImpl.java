@@ -4,7 +4,7 @@
 
 package org.xwalk.core.internal;
 
-import java.util.HashMap;
+import java.lang.ref.WeakReference;
 
 import android.app.Notification;
 import android.app.NotificationManager;
@@ -14,10 +14,16 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.graphics.Bitmap;
+import android.os.AsyncTask;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.AndroidRuntimeException;
 import android.util.Log;
+import android.util.LruCache;
+import android.util.SparseArray;
 
 import org.xwalk.core.internal.XWalkContentsClientBridge;
 import org.xwalk.core.internal.XWalkNotificationService;
@@ -33,15 +39,51 @@ public class XWalkNotificationServiceImpl implements XWalkNotificationService {
     private static final String XWALK_ACTION_CLOSE_NOTIFICATION_SUFFIX = ".notification.close";
     private static final String XWALK_INTENT_EXTRA_KEY_NOTIFICATION_ID = "xwalk.NOTIFICATION_ID";
     private static final String XWALK_INTENT_EXTRA_KEY_DELEGATE = "xwalk.DELEGATE";
-    private static final String XWALK_INTENT_CATEGORY_NOTIFICATION_PREFIX = "notification_";
+
+    // An update is sent at once, the following ones within this window are
+    // sent together at its end.
+    private static final long UPDATE_COALESCING_WINDOW = 100;
+    private static final int ICON_CACHE_SIZE = 8;
+
+    private static class ScaledIcon {
+        // Not kept alive by the cache.
+        final WeakReference<Bitmap> mSource;
+        final Bitmap mScaled;
+
+        ScaledIcon(Bitmap source, Bitmap scaled) {
+            mSource = new WeakReference<Bitmap>(source);
+            mScaled = scaled;
+        }
+    }
+
+    // Scaled icons by source bitmap, its generation and the target size, so
+    // that a repeated update of the same icon isn't scaled again. A hit is
+    // confirmed against the source, identity hashes can be reused once it's
+    // collected.
+    private static final LruCache<String, ScaledIcon> sIconCache =
+            new LruCache<String, ScaledIcon>(ICON_CACHE_SIZE);
 
     private Context mContext;
     private XWalkContentsClientBridge mBridge;
     private XWalkViewInternal mView;
     private NotificationManager mNotificationManager;
+    // Registered once, for all the notifications, and routed by id.
     private BroadcastReceiver mNotificationCloseReceiver;
-    private IntentFilter mNotificationCloseIntentFilter;
-    private HashMap<Integer, Notification.Builder> mExistNotificationIds;
+    private SparseArray<Notification.Builder> mExistNotificationIds;
+    // The notifications waiting for the next flush, and the delegates to
+    // tell they are shown then.
+    private final SparseArray<Notification> mPendingNotifications =
+            new SparseArray<Notification>();
+    private final SparseArray<Long> mPendingShownDelegates = new SparseArray<Long>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private boolean mFlushScheduled = false;
+    private long mLastFlushTime = 0;
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushNotifications();
+        }
+    };
 
     public XWalkNotificationServiceImpl(Context context, XWalkViewInternal view) {
         mContext = context;
@@ -50,7 +92,7 @@ public class XWalkNotificationServiceImpl implements XWalkNotificationService {
                 (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
         // Cancel all exist notifications at startup time. To avoid receiving legacy pendingIntents.
         mNotificationManager.cancelAll();
-        mExistNotificationIds = new HashMap<Integer, Notification.Builder>();
+        mExistNotificationIds = new SparseArray<Notification.Builder>();
     }
 
     @Override
@@ -58,34 +100,23 @@ public class XWalkNotificationServiceImpl implements XWalkNotificationService {
         mBridge = bridge;
     }
 
-    private static String getCategoryFromNotificationId(int id) {
-        return XWALK_INTENT_CATEGORY_NOTIFICATION_PREFIX + id;
-    }
-
-    private void notificationChanged() {
-        unregisterReceiver();
-        if (mExistNotificationIds.isEmpty()) {
-            Log.i(TAG, "notifications are all cleared," +
-                    "unregister broadcast receiver for close pending intent");
-        } else {
-            registerReceiver();
-        }
-    }
-
     private void registerReceiver() {
+        if (mNotificationCloseReceiver != null) return;
+
         mNotificationCloseReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
+                // Other views of the application get the same broadcasts,
+                // only handle ours.
+                int notificationId = intent.getIntExtra(XWALK_INTENT_EXTRA_KEY_NOTIFICATION_ID, -1);
+                if (mExistNotificationIds.get(notificationId) == null) return;
                 mView.onNewIntent(intent);
             }
         };
-        mNotificationCloseIntentFilter = new IntentFilter(
+        IntentFilter filter = new IntentFilter(
                 mView.getActivity().getPackageName() + XWALK_ACTION_CLOSE_NOTIFICATION_SUFFIX);
-        for(Integer id : mExistNotificationIds.keySet()) {
-            mNotificationCloseIntentFilter.addCategory(getCategoryFromNotificationId(id));
-        }
         try {
-            mView.getActivity().registerReceiver(mNotificationCloseReceiver, mNotificationCloseIntentFilter);
+            mView.getActivity().registerReceiver(mNotificationCloseReceiver, filter);
         } catch (AndroidRuntimeException e) {
             //FIXME(wang16): The exception will happen when there are multiple xwalkviews in one activity.
             //               Remove it after notification service supports multi-views.
@@ -103,6 +134,10 @@ public class XWalkNotificationServiceImpl implements XWalkNotificationService {
 
     @Override
     public void shutdown() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        mFlushScheduled = false;
+        mPendingNotifications.clear();
+        mPendingShownDelegates.clear();
         unregisterReceiver();
         mBridge = null;
     }
@@ -126,60 +161,80 @@ public class XWalkNotificationServiceImpl implements XWalkNotificationService {
     }
 
     @Override
-    @SuppressWarnings("deprecation")
-    public void updateNotificationIcon(int notificationId, Bitmap icon) {
-        Notification.Builder builder = mExistNotificationIds.get(notificationId);
-        if (builder != null) {
-            int originalWidth = icon.getWidth();
-            int originalHeight = icon.getHeight();
-            if (originalWidth == 0 || originalHeight == 0)
-                return;
-            int targetWidth = mContext.getResources().getDimensionPixelSize(
-                    android.R.dimen.notification_large_icon_width);
-            int targetHeight = mContext.getResources().getDimensionPixelSize(
-                    android.R.dimen.notification_large_icon_height);
-            if (originalWidth > targetWidth && originalHeight > targetHeight) {
-                if (originalWidth * targetHeight > originalHeight * targetWidth) {
-                    targetHeight = originalHeight * targetWidth / originalWidth;
-                } else {
-                    targetWidth = originalWidth * targetHeight / originalHeight;
-                }
+    public void updateNotificationIcon(final int notificationId, final Bitmap icon) {
+        final Notification.Builder builder = mExistNotificationIds.get(notificationId);
+        if (builder == null) return;
+        if (icon.getWidth() == 0 || icon.getHeight() == 0) return;
+
+        final int targetWidth = mContext.getResources().getDimensionPixelSize(
+                android.R.dimen.notification_large_icon_width);
+        final int targetHeight = mContext.getResources().getDimensionPixelSize(
+                android.R.dimen.notification_large_icon_height);
+        // Scale in background, the UI thread only updates the notification.
+        new AsyncTask<Void, Void, Bitmap>() {
+            @Override
+            protected Bitmap doInBackground(Void... params) {
+                return scaleIcon(icon, targetWidth, targetHeight);
             }
-            builder.setLargeIcon(
-                    Bitmap.createScaledBitmap(icon, targetWidth, targetHeight, true));
-            Notification notification;
-            if (VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN) {
-                notification = builder.build();
+
+            @Override
+            protected void onPostExecute(Bitmap scaledIcon) {
+                // The notification may have been closed or replaced meanwhile.
+                if (mExistNotificationIds.get(notificationId) != builder) return;
+                builder.setLargeIcon(scaledIcon);
+                queueNotification(notificationId, build(builder));
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private static Bitmap scaleIcon(Bitmap icon, int targetWidth, int targetHeight) {
+        int originalWidth = icon.getWidth();
+        int originalHeight = icon.getHeight();
+        String key = System.identityHashCode(icon) + ":" + icon.getGenerationId() +
+                ">" + targetWidth + "x" + targetHeight;
+        ScaledIcon cached = sIconCache.get(key);
+        if (cached != null && cached.mSource.get() == icon) return cached.mScaled;
+
+        if (originalWidth > targetWidth && originalHeight > targetHeight) {
+            if (originalWidth * targetHeight > originalHeight * targetWidth) {
+                targetHeight = originalHeight * targetWidth / originalWidth;
             } else {
-                notification = builder.getNotification();
+                targetWidth = originalWidth * targetHeight / originalHeight;
             }
-            doShowNotification(notificationId, notification);
-            mExistNotificationIds.put(notificationId, builder);
         }
+        Bitmap scaled = Bitmap.createScaledBitmap(icon, targetWidth, targetHeight, true);
+        sIconCache.put(key, new ScaledIcon(icon, scaled));
+        return scaled;
     }
 
-    @Override
     @SuppressWarnings("deprecation")
+    private static Notification build(Notification.Builder builder) {
+        if (VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN) {
+            return builder.build();
+        } else {
+            return builder.getNotification();
+        }
+    }
+
+    @Override
     public void showNotification(String title, String message,
             int notificationId, long delegate) {
         Context activity = mView.getActivity();
-        String category = getCategoryFromNotificationId(notificationId);
         Intent clickIntent = new Intent(activity, activity.getClass());
         clickIntent.setAction(activity.getPackageName() + XWALK_ACTION_CLICK_NOTIFICATION_SUFFIX);
         clickIntent.putExtra(XWALK_INTENT_EXTRA_KEY_NOTIFICATION_ID, notificationId);
         clickIntent.putExtra(XWALK_INTENT_EXTRA_KEY_DELEGATE, delegate);
         clickIntent.setFlags(
                 Intent.FLAG_ACTIVITY_LAUNCHED_FROM_HISTORY | Intent.FLAG_ACTIVITY_SINGLE_TOP);
-        clickIntent.addCategory(category);
+        // The request code tells the pending intents of each notification apart.
         PendingIntent pendingClickIntent = PendingIntent.getActivity(activity,
-                0, clickIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+                notificationId, clickIntent, PendingIntent.FLAG_UPDATE_CURRENT);
         Intent closeIntent =
                 new Intent(activity.getPackageName() + XWALK_ACTION_CLOSE_NOTIFICATION_SUFFIX);
         closeIntent.putExtra(XWALK_INTENT_EXTRA_KEY_NOTIFICATION_ID, notificationId);
         closeIntent.putExtra(XWALK_INTENT_EXTRA_KEY_DELEGATE, delegate);
-        closeIntent.addCategory(category);
         PendingIntent pendingCloseIntent = PendingIntent.getBroadcast(activity,
-                0, closeIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+                notificationId, closeIntent, PendingIntent.FLAG_UPDATE_CURRENT);
         Notification.Builder builder = new Notification.Builder(mContext.getApplicationContext())
                 .setContentIntent(pendingClickIntent)
                 .setDeleteIntent(pendingCloseIntent);
@@ -189,38 +244,67 @@ public class XWalkNotificationServiceImpl implements XWalkNotificationService {
                          .setContentTitle(title)
                          .setSmallIcon(iconRes)
                          .setAutoCancel(true);
-        Notification notification;
-        if (VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN) {
-            notification = builder.build();
-        } else {
-            notification = builder.getNotification();
-        }
-        doShowNotification(notificationId, notification);
         mExistNotificationIds.put(notificationId, builder);
-        notificationChanged();
-        onNotificationShown(notificationId, delegate);
+        registerReceiver();
+        mPendingShownDelegates.put(notificationId, delegate);
+        queueNotification(notificationId, build(builder));
     }
 
     @Override
     public void cancelNotification(int notificationId, long delegate) {
-        mNotificationManager.cancel(notificationId);
+        mPendingNotifications.remove(notificationId);
+        Long shownDelegate = mPendingShownDelegates.get(notificationId);
+        if (shownDelegate != null) {
+            // It was never sent, there is nothing to cancel. Still tell the
+            // page it was shown before it's closed.
+            mPendingShownDelegates.remove(notificationId);
+            onNotificationShown(notificationId, shownDelegate);
+        } else {
+            mNotificationManager.cancel(notificationId);
+        }
         onNotificationClose(notificationId, false, delegate);
     }
 
+    private void queueNotification(int notificationId, Notification notification) {
+        // Only the latest state of a notification is sent.
+        mPendingNotifications.put(notificationId, notification);
+        if (mFlushScheduled) return;
+        long delay = mLastFlushTime + UPDATE_COALESCING_WINDOW - SystemClock.uptimeMillis();
+        if (delay <= 0) {
+            flushNotifications();
+        } else {
+            mFlushScheduled = true;
+            mHandler.postDelayed(mFlushRunnable, delay);
+        }
+    }
+
+    private void flushNotifications() {
+        mFlushScheduled = false;
+        mLastFlushTime = SystemClock.uptimeMillis();
+        for (int i = 0; i < mPendingNotifications.size(); i++) {
+            doShowNotification(mPendingNotifications.keyAt(i), mPendingNotifications.valueAt(i));
+        }
+        mPendingNotifications.clear();
+
+        for (int i = 0; i < mPendingShownDelegates.size(); i++) {
+            onNotificationShown(mPendingShownDelegates.keyAt(i), mPendingShownDelegates.valueAt(i));
+        }
+        mPendingShownDelegates.clear();
+    }
+
     public void doShowNotification(int id, Notification notification) {
         mNotificationManager.notify(id, notification);
     }
 
     public void onNotificationShown(int notificationId, long delegate) {
-        if (mExistNotificationIds.containsKey(notificationId) && mBridge != null) {
+        if (mExistNotificationIds.get(notificationId) != null && mBridge != null) {
             mBridge.notificationDisplayed(delegate);
         }
     }
 
     public void onNotificationClick(int notificationId, long delegate) {
-        if (mExistNotificationIds.containsKey(notificationId)) {
+        if (mExistNotificationIds.get(notificationId) != null) {
             mExistNotificationIds.remove(notificationId);
-            notificationChanged();
             if (mBridge != null) {
                 mBridge.notificationClicked(notificationId, delegate);
             }
@@ -229,9 +313,8 @@ public class XWalkNotificationServiceImpl implements XWalkNotificationService {
 
     public void onNotificationClose(
             int notificationId, boolean byUser, long delegate) {
-        if (mExistNotificationIds.containsKey(notificationId)) {
+        if (mExistNotificationIds.get(notificationId) != null) {
             mExistNotificationIds.remove(notificationId);
-            notificationChanged();
             if (mBridge != null) {
                 mBridge.notificationClosed(notificationId, byUser, delegate);
             }
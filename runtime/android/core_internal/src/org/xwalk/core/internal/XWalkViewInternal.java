@@ -5,6 +5,7 @@
 package org.xwalk.core.internal;
 
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.app.AlertDialog;
 import android.app.ApplicationErrorReport;
 import android.content.Context;
@@ -24,6 +25,8 @@ import android.widget.FrameLayout;
 import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.chromium.base.ActivityState;
 import org.chromium.base.ApplicationStatus;
@@ -158,6 +161,37 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
     private Context mContext;
     private XWalkExtensionManager mExtensionManager;
     private boolean mIsHidden;
+    private XWalkMemoryPressureManager.ReleasableCache mMemoryPressureCache;
+    // The version is the same for all the contents, kept to answer for discarded views.
+    private static String sXWalkVersion;
+
+    // Set when managed by a XWalkViewManagerInternal, which may discard the
+    // content of this view and revive it later. The clients, javascript
+    // interfaces and settings are kept here to be applied on the new content.
+    XWalkViewManagerInternal mViewManager;
+    private boolean mIsDiscarded;
+    private XWalkSettings mDiscardedSettings;
+    private String mDiscardedUrl;
+    private String mDiscardedTitle;
+    private String mDiscardedOriginalUrl;
+    private XWalkUIClientInternal mUIClient;
+    private XWalkResourceClientInternal mResourceClient;
+    private XWalkClient mXWalkClient;
+    private XWalkWebChromeClient mXWalkWebChromeClient;
+    private DownloadListener mDownloadListener;
+    private XWalkNavigationHandler mNavigationHandler;
+    private XWalkNotificationService mNotificationService;
+    private final LinkedHashMap<String, Object> mJavascriptInterfaces =
+            new LinkedHashMap<String, Object>();
+
+    // The hidden content loading the url passed to prerender().
+    private static final int MAX_CONCURRENT_PRERENDERS = 2;
+    private static final long PRERENDER_TIMEOUT_MS = 60 * 1000;
+    private static int sPrerenderCount = 0;
+    private XWalkContent mPrerenderContent;
+    private String mPrerenderUrl;
+    private Runnable mPrerenderTimeout;
+    private XWalkMemoryPressureManager.ReleasableCache mPrerenderMemoryCache;
 
     /**
      * Normal reload mode as default.
@@ -317,21 +351,25 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
                         FrameLayout.LayoutParams.MATCH_PARENT,
                         FrameLayout.LayoutParams.MATCH_PARENT));
 
+        if (mUIClient != null) {
+            // The content is revived, keep what was set on the discarded one.
+            applyClients(mContent);
+        } else {
+            setDefaultClients(mContent);
+        }
 
-        // Set default XWalkClientImpl.
-        setXWalkClient(new XWalkClient(this));
-        // Set default XWalkWebChromeClient and DownloadListener. The default actions
-        // are provided via the following clients if special actions are not needed.
-        setXWalkWebChromeClient(new XWalkWebChromeClient(this));
-
-        // Set with internal implementation. Could be overwritten by embedders'
-        // setting.
-        setUIClient(new XWalkUIClientInternal(this));
-        setResourceClient(new XWalkResourceClientInternal(this));
+        mMemoryPressureCache = new XWalkMemoryPressureManager.ReleasableCache() {
+            @Override
+            public long release(int level) {
+                if (mContent == null) return 0;
+                return mContent.trimMemory(level);
+            }
+        };
+        XWalkMemoryPressureManager.register(context, mMemoryPressureCache,
+                XWalkMemoryPressureManager.RETAIN_NORMAL);
 
-        setDownloadListener(new XWalkDownloadListenerImpl(context));
-        setNavigationHandler(new XWalkNavigationHandlerImpl(context));
-        setNotificationService(new XWalkNotificationServiceImpl(context, this));
+        // The extensions survive when the content is discarded and revived.
+        if (mExtensionManager != null) return;
 
         // Enable xwalk extension mechanism and start load extensions here.
         // Note that it has to be after above initialization.
@@ -368,8 +406,17 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public void load(String url, String content) {
+        reviveIfDiscarded();
         if (mContent == null) return;
         checkThreadSafety();
+        if (mPrerenderContent != null) {
+            if ((content == null || content.isEmpty()) && mPrerenderUrl.equals(url)) {
+                activatePrerender();
+                return;
+            }
+            // The prediction was wrong.
+            cancelPrerender();
+        }
         mContent.loadUrl(url, content);
     }
 
@@ -386,8 +433,10 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public void loadAppFromManifest(String url, String content) {
+        reviveIfDiscarded();
         if (mContent == null) return;
         checkThreadSafety();
+        cancelPrerender();
         mContent.loadAppFromManifest(url, content);
     }
 
@@ -397,6 +446,7 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public void reload(int mode) {
+        reviveIfDiscarded();
         if (mContent == null) return;
         checkThreadSafety();
         mContent.reload(mode);
@@ -412,6 +462,141 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
         mContent.stopLoading();
     }
 
+    /**
+     * Hint that the given url is likely to be loaded soon, so that the
+     * DNS resolution and the TCP/TLS connection to its host are done ahead.
+     * Only 'http:' and 'https:' urls are supported.
+     * @param url the url likely to be loaded.
+     * @since 3.0
+     */
+    public void preconnect(String url) {
+        if (mContent == null) return;
+        checkThreadSafety();
+        mContent.preconnect(url);
+    }
+
+    /**
+     * Load the given url into a hidden content, which replaces the displayed
+     * one when {@link #load} is called with the same url. Only one page is
+     * prerendered per view, and the count of prerendered pages in the process
+     * is limited. A prerender is cancelled when another url is loaded, when
+     * it's not used in time or when the system is low on memory.
+     * Note the page load callbacks of a prerendered page happen before it's
+     * displayed.
+     * @param url the url likely to be loaded.
+     * @return false if the page can't be prerendered.
+     * @since 3.0
+     */
+    public boolean prerender(String url) {
+        if (mContent == null || url == null || url.isEmpty()) return false;
+        checkThreadSafety();
+        if (url.equals(mPrerenderUrl)) return true;
+        cancelPrerender();
+        if (sPrerenderCount >= MAX_CONCURRENT_PRERENDERS || isLowOnMemory()) return false;
+
+        XWalkContent content = new XWalkContent(mContext, null, this);
+        // Keep the embedder's clients away until the page is displayed.
+        content.setXWalkClient(new XWalkClient(this));
+        content.setXWalkWebChromeClient(new XWalkWebChromeClient(this));
+        content.setUIClient(new XWalkUIClientInternal(this));
+        content.setResourceClient(new XWalkResourceClientInternal(this));
+        content.setNavigationHandler(new XWalkNavigationHandlerImpl(mContext));
+        for (Map.Entry<String, Object> entry : mJavascriptInterfaces.entrySet()) {
+            content.addJavascriptInterface(entry.getValue(), entry.getKey());
+        }
+        content.onPause();
+        content.loadUrl(url, null);
+
+        mPrerenderContent = content;
+        mPrerenderUrl = url;
+        sPrerenderCount++;
+        mPrerenderTimeout = new Runnable() {
+            @Override
+            public void run() {
+                cancelPrerender();
+            }
+        };
+        postDelayed(mPrerenderTimeout, PRERENDER_TIMEOUT_MS);
+        mPrerenderMemoryCache = new XWalkMemoryPressureManager.ReleasableCache() {
+            @Override
+            public long release(int level) {
+                cancelPrerender();
+                return 0;
+            }
+        };
+        XWalkMemoryPressureManager.register(mContext, mPrerenderMemoryCache,
+                XWalkMemoryPressureManager.RETAIN_LOW);
+        return true;
+    }
+
+    /**
+     * Cancel the page prerendered by {@link #prerender}, if any.
+     * @since 3.0
+     */
+    public void cancelPrerender() {
+        XWalkContent content = releasePrerender();
+        if (content != null) content.destroy();
+    }
+
+    /**
+     * Get the url passed to the pending {@link #prerender}, or null if there
+     * is none.
+     * @hide
+     */
+    public String getPrerenderUrl() {
+        return mPrerenderUrl;
+    }
+
+    /**
+     * Cancel the download of an 'app:', 'file:' or 'content:' url, which
+     * deletes its partial data. Downloads of 'http:' and 'https:' urls are
+     * handed to the system DownloadManager and can't be cancelled here.
+     * @param url the url being downloaded.
+     * @return false if the url is not being downloaded.
+     * @since 3.0
+     */
+    public boolean cancelDownload(String url) {
+        checkThreadSafety();
+        return XWalkDownloadListenerImpl.cancelDownload(url);
+    }
+
+    private XWalkContent releasePrerender() {
+        XWalkContent content = mPrerenderContent;
+        if (content == null) return null;
+        mPrerenderContent = null;
+        mPrerenderUrl = null;
+        sPrerenderCount--;
+        removeCallbacks(mPrerenderTimeout);
+        mPrerenderTimeout = null;
+        XWalkMemoryPressureManager.unregister(mPrerenderMemoryCache);
+        mPrerenderMemoryCache = null;
+        return content;
+    }
+
+    private void activatePrerender() {
+        XWalkContent prerendered = releasePrerender();
+        XWalkSettings settings = mContent.getSettings();
+        removeView(mContent);
+        mContent.destroy();
+
+        mContent = prerendered;
+        addView(mContent,
+                new FrameLayout.LayoutParams(
+                        FrameLayout.LayoutParams.MATCH_PARENT,
+                        FrameLayout.LayoutParams.MATCH_PARENT));
+        mContent.adoptSettings(settings);
+        applyClients(mContent);
+        if (!mIsHidden) mContent.onResume();
+    }
+
+    private boolean isLowOnMemory() {
+        ActivityManager activityManager =
+                (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+        return memoryInfo.lowMemory;
+    }
+
     /**
      * Get the url of current web page/app. This may be different from what's passed
      * by caller.
@@ -419,7 +604,7 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public String getUrl() {
-        if (mContent == null) return null;
+        if (mContent == null) return mIsDiscarded ? mDiscardedUrl : null;
         checkThreadSafety();
         return mContent.getUrl();
     }
@@ -431,7 +616,7 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public String getTitle() {
-        if (mContent == null) return null;
+        if (mContent == null) return mIsDiscarded ? mDiscardedTitle : null;
         checkThreadSafety();
         return mContent.getTitle();
     }
@@ -442,7 +627,7 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public String getOriginalUrl() {
-        if (mContent == null) return null;
+        if (mContent == null) return mIsDiscarded ? mDiscardedOriginalUrl : null;
         checkThreadSafety();
         return mContent.getOriginalUrl();
     }
@@ -454,6 +639,7 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public XWalkNavigationHistoryInternal getNavigationHistory() {
+        reviveIfDiscarded();
         if (mContent == null) return null;
         checkThreadSafety();
         return mContent.getNavigationHistory();
@@ -468,8 +654,10 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public void addJavascriptInterface(Object object, String name) {
-        if (mContent == null) return;
         checkThreadSafety();
+        // Kept to be injected again when a discarded content is revived.
+        mJavascriptInterfaces.put(name, object);
+        if (mContent == null) return;
         mContent.addJavascriptInterface(object, name);
     }
 
@@ -480,6 +668,7 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public void evaluateJavascript(String script, ValueCallback<String> callback) {
+        reviveIfDiscarded();
         if (mContent == null) return;
         checkThreadSafety();
         mContent.evaluateJavascript(script, callback);
@@ -492,6 +681,7 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public void clearCache(boolean includeDiskFiles) {
+        reviveIfDiscarded();
         if (mContent == null) return;
         checkThreadSafety();
         mContent.clearCache(includeDiskFiles);
@@ -531,9 +721,10 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public void pauseTimers() {
-        if (mContent == null) return;
+        // The timers are global, a discarded view can pause them too.
+        if (mContent == null && !mIsDiscarded) return;
         checkThreadSafety();
-        mContent.pauseTimers();
+        XWalkContent.pauseTimers();
     }
 
     /**
@@ -546,9 +737,9 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public void resumeTimers() {
-        if (mContent == null) return;
+        if (mContent == null && !mIsDiscarded) return;
         checkThreadSafety();
-        mContent.resumeTimers();
+        XWalkContent.resumeTimers();
     }
 
     /**
@@ -572,6 +763,7 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public void onShow() {
+        reviveIfDiscarded();
         if (mContent == null || !mIsHidden ) return;
         mExtensionManager.onResume();
         mContent.onResume();
@@ -597,8 +789,10 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (mExtensionManager != null) {
+            mExtensionManager.onActivityResult(requestCode, resultCode, data);
+        }
         if (mContent == null) return;
-        mExtensionManager.onActivityResult(requestCode, resultCode, data);
         mContent.onActivityResult(requestCode, resultCode, data);
     }
 
@@ -622,6 +816,7 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public boolean saveState(Bundle outState) {
+        reviveIfDiscarded();
         if (mContent == null) return false;
         mContent.saveState(outState);
         return true;
@@ -634,6 +829,7 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public boolean restoreState(Bundle inState) {
+        reviveIfDiscarded();
         if (mContent == null) return false;
         if (mContent.restoreState(inState) != null) return true;
         return false;
@@ -656,8 +852,10 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      */
     // TODO(yongsheng): make it static?
     public String getXWalkVersion() {
-        if (mContent == null) return null;
-        return mContent.getXWalkVersion();
+        if (mContent == null) return sXWalkVersion;
+        String version = mContent.getXWalkVersion();
+        if (version != null && !version.isEmpty()) sXWalkVersion = version;
+        return version;
     }
 
     /**
@@ -667,8 +865,9 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public void setUIClient(XWalkUIClientInternal client) {
-        if (mContent == null) return;
         checkThreadSafety();
+        mUIClient = client;
+        if (mContent == null) return;
         mContent.setUIClient(client);
     }
 
@@ -679,8 +878,9 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @since 1.0
      */
     public void setResourceClient(XWalkResourceClientInternal client) {
-        if (mContent == null) return;
         checkThreadSafety();
+        mResourceClient = client;
+        if (mContent == null) return;
         mContent.setResourceClient(client);
     }
 
@@ -689,7 +889,8 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @hide
      */
     public XWalkSettings getSettings() {
-        if (mContent == null) return null;
+        // The settings of a discarded view are applied to its revived content.
+        if (mContent == null) return mDiscardedSettings;
         checkThreadSafety();
         return mContent.getSettings();
     }
@@ -701,6 +902,7 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @hide
      */
     public void setNetworkAvailable(boolean networkUp) {
+        reviveIfDiscarded();
         if (mContent == null) return;
         checkThreadSafety();
         mContent.setNetworkAvailable(networkUp);
@@ -715,6 +917,7 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @hide
      */
     public String enableRemoteDebugging(int allowedUid) {
+        reviveIfDiscarded();
         if (mContent == null) return null;
         checkThreadSafety();
         return mContent.enableRemoteDebugging(allowedUid);
@@ -725,45 +928,160 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @hide
      */
     public int getContentID() {
+        reviveIfDiscarded();
         if (mContent == null) return -1;
         return mContent.getRoutingID();
     }
 
     boolean canGoBack() {
+        reviveIfDiscarded();
         if (mContent == null) return false;
         checkThreadSafety();
         return mContent.canGoBack();
     }
 
     void goBack() {
+        reviveIfDiscarded();
         if (mContent == null) return;
         checkThreadSafety();
         mContent.goBack();
     }
 
     boolean canGoForward() {
+        reviveIfDiscarded();
         if (mContent == null) return false;
         checkThreadSafety();
         return mContent.canGoForward();
     }
 
     void goForward() {
+        reviveIfDiscarded();
         if (mContent == null) return;
         checkThreadSafety();
         mContent.goForward();
     }
 
     void clearHistory() {
+        reviveIfDiscarded();
         if (mContent == null) return;
         checkThreadSafety();
         mContent.clearHistory();
     }
 
     void destroy() {
+        if (mViewManager != null) mViewManager.remove(this);
+        cancelPrerender();
+        // Torn down even when the content is discarded: the extensions and the
+        // memory pressure registration outlive it.
+        if (mMemoryPressureCache != null) {
+            XWalkMemoryPressureManager.unregister(mMemoryPressureCache);
+            mMemoryPressureCache = null;
+        }
+        if (mExtensionManager != null) {
+            mExtensionManager.onDestroy();
+            mExtensionManager = null;
+        }
+        mIsDiscarded = false;
+        mDiscardedSettings = null;
         if (mContent == null) return;
-        mExtensionManager.onDestroy();
-        mContent.destroy();
         disableRemoteDebugging();
+        mContent.destroy();
+    }
+
+    private void setDefaultClients(XWalkContent content) {
+        // Set default XWalkClientImpl.
+        content.setXWalkClient(mXWalkClient = new XWalkClient(this));
+        // Set default XWalkWebChromeClient and DownloadListener. The default actions
+        // are provided via the following clients if special actions are not needed.
+        content.setXWalkWebChromeClient(mXWalkWebChromeClient = new XWalkWebChromeClient(this));
+
+        // Set with internal implementation. Could be overwritten by embedders'
+        // setting.
+        content.setUIClient(mUIClient = new XWalkUIClientInternal(this));
+        content.setResourceClient(mResourceClient = new XWalkResourceClientInternal(this));
+
+        content.setDownloadListener(mDownloadListener = new XWalkDownloadListenerImpl(mContext));
+        content.setNavigationHandler(mNavigationHandler = new XWalkNavigationHandlerImpl(mContext));
+        content.setNotificationService(
+                mNotificationService = new XWalkNotificationServiceImpl(mContext, this));
+    }
+
+    // Apply the clients and javascript interfaces set on this view to a new content.
+    private void applyClients(XWalkContent content) {
+        content.setXWalkClient(mXWalkClient);
+        content.setXWalkWebChromeClient(mXWalkWebChromeClient);
+        content.setUIClient(mUIClient);
+        content.setResourceClient(mResourceClient);
+        content.setDownloadListener(mDownloadListener);
+        content.setNavigationHandler(mNavigationHandler);
+        content.setNotificationService(mNotificationService);
+        for (Map.Entry<String, Object> entry : mJavascriptInterfaces.entrySet()) {
+            content.addJavascriptInterface(entry.getValue(), entry.getKey());
+        }
+    }
+
+    boolean isDiscarded() {
+        return mIsDiscarded;
+    }
+
+    boolean isContentHidden() {
+        return mContent == null || mIsHidden || mContent.isRendererHidden();
+    }
+
+    // The navigation state to revive the content from, null if unavailable.
+    byte[] getContentState() {
+        if (mContent == null || mIsDiscarded) return null;
+        checkThreadSafety();
+        return mContent.getState();
+    }
+
+    // Destroy the content and its native web contents, keeping everything
+    // needed to revive it later but its navigation state, which the caller
+    // must have saved with getContentState().
+    void discardContent() {
+        if (mContent == null || mIsDiscarded) return;
+        checkThreadSafety();
+        cancelPrerender();
+        mDiscardedSettings = mContent.getSettings();
+        mDiscardedUrl = mContent.getUrl();
+        mDiscardedTitle = mContent.getTitle();
+        mDiscardedOriginalUrl = mContent.getOriginalUrl();
+        if (sXWalkVersion == null) getXWalkVersion();
+
+        XWalkMemoryPressureManager.unregister(mMemoryPressureCache);
+        mMemoryPressureCache = null;
+        removeView(mContent);
+        mContent.disableRemoteDebugging();
+        mContent.destroy();
+        mContent = null;
+        mIsDiscarded = true;
+    }
+
+    // Create a new content with the clients, javascript interfaces and settings
+    // of the discarded one, then restore the navigation state.
+    void reviveContent(byte[] state) {
+        if (!mIsDiscarded) return;
+        checkThreadSafety();
+        mIsDiscarded = false;
+
+        boolean wasHidden = mIsHidden;
+
+        initXWalkContent(mContext, null);
+        if (wasHidden) {
+            mIsHidden = true;
+            mContent.onPause();
+        }
+        mContent.adoptSettings(mDiscardedSettings);
+        mDiscardedSettings = null;
+        mDiscardedUrl = null;
+        mDiscardedTitle = null;
+        mDiscardedOriginalUrl = null;
+
+        if (state != null) mContent.setState(state);
+    }
+
+    private void reviveIfDiscarded() {
+        if (mIsDiscarded && mViewManager != null) mViewManager.revive(this);
     }
 
     // Enables remote debugging and returns the URL at which the dev tools server is listening
@@ -795,6 +1113,7 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
     }
 
     void navigateTo(int offset) {
+        reviveIfDiscarded();
         if (mContent == null) return;
         mContent.navigateTo(offset);
     }
@@ -808,8 +1127,9 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @hide
      */
     public void setXWalkClient(XWalkClient client) {
-        if (mContent == null) return;
         checkThreadSafety();
+        mXWalkClient = client;
+        if (mContent == null) return;
         mContent.setXWalkClient(client);
     }
 
@@ -817,8 +1137,9 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @hide
      */
     public void setXWalkWebChromeClient(XWalkWebChromeClient client) {
-        if (mContent == null) return;
         checkThreadSafety();
+        mXWalkWebChromeClient = client;
+        if (mContent == null) return;
         mContent.setXWalkWebChromeClient(client);
     }
 
@@ -826,8 +1147,9 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @hide
      */
     public void setDownloadListener(DownloadListener listener) {
-        if (mContent == null) return;
         checkThreadSafety();
+        mDownloadListener = listener;
+        if (mContent == null) return;
         mContent.setDownloadListener(listener);
     }
 
@@ -835,8 +1157,9 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @hide
      */
     public void setNavigationHandler(XWalkNavigationHandler handler) {
-        if (mContent == null) return;
         checkThreadSafety();
+        mNavigationHandler = handler;
+        if (mContent == null) return;
         mContent.setNavigationHandler(handler);
     }
 
@@ -844,8 +1167,9 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * @hide
      */
     public void setNotificationService(XWalkNotificationService service) {
-        if (mContent == null) return;
         checkThreadSafety();
+        mNotificationService = service;
+        if (mContent == null) return;
         mContent.setNotificationService(service);
     }
 
@@ -0,0 +1,291 @@
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * XWalkViewManagerInternal bounds the number of XWalkViewInternal instances
+ * holding a live web contents.
+ *
+ * <p>When more than the given count of managed views are alive, the least
+ * recently used hidden ones are discarded: their navigation state is
+ * compressed and spilled to the application cache directory, then their
+ * web contents are destroyed. A discarded view is transparently revived
+ * and restored when it's shown, loaded or navigated again, or when its page
+ * is accessed, like by evaluateJavascript(). Its url, title and settings are
+ * answered without reviving it, and the clients and javascript interfaces
+ * set meanwhile are applied to the revived content. A view whose state
+ * can't be saved is kept alive.</p>
+ *
+ * <p>The state files are named after the process, and the ones left by
+ * previous processes are deleted when the first manager is constructed.</p>
+ *
+ * <p>All methods must be called on the UI thread.</p>
+ */
+public class XWalkViewManagerInternal {
+    private static final String TAG = "XWalkViewManagerInternal";
+    private static final String STATE_DIRECTORY = "xwalk_discarded_views";
+    private static final int BUFFER_SIZE = 8192;
+
+    private static boolean sStaleStatesPurged = false;
+
+    private final File mStateDir;
+    private final int mMaxLiveViews;
+    // The most recently used view is at the end.
+    private final ArrayList<XWalkViewInternal> mViews = new ArrayList<XWalkViewInternal>();
+    // Compressed states of discarded views, kept until they are on disk.
+    private final HashMap<XWalkViewInternal, byte[]> mPendingStates =
+            new HashMap<XWalkViewInternal, byte[]>();
+    private final HashMap<XWalkViewInternal, File> mStateFiles =
+            new HashMap<XWalkViewInternal, File>();
+    private int mNextFileId = 0;
+
+    /**
+     * Constructs a manager keeping at most maxLiveViews views alive.
+     * @param context the context to get the cache directory.
+     * @param maxLiveViews the count of views allowed to hold a web contents.
+     */
+    public XWalkViewManagerInternal(Context context, int maxLiveViews) {
+        if (maxLiveViews < 1) throw new IllegalArgumentException("maxLiveViews must be positive");
+        mMaxLiveViews = maxLiveViews;
+        mStateDir = new File(context.getApplicationContext().getCacheDir(), STATE_DIRECTORY);
+        purgeStaleStates(mStateDir);
+    }
+
+    private static String getStateFilePrefix() {
+        return "view_" + Process.myPid() + "_";
+    }
+
+    // The views discarded by a previous process can't be revived anymore.
+    private static void purgeStaleStates(final File stateDir) {
+        if (sStaleStatesPurged) return;
+        sStaleStatesPurged = true;
+        final String prefix = getStateFilePrefix();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = stateDir.listFiles();
+                if (files == null) return;
+                for (File file : files) {
+                    if (!file.getName().startsWith(prefix)) file.delete();
+                }
+            }
+        });
+    }
+
+    /**
+     * Start managing a view. It becomes the most recently used one.
+     * @param view the view to manage.
+     */
+    public void add(XWalkViewInternal view) {
+        if (view.mViewManager == this) {
+            touch(view);
+            return;
+        }
+        if (view.mViewManager != null) view.mViewManager.remove(view);
+        view.mViewManager = this;
+        mViews.add(view);
+        trim();
+    }
+
+    /**
+     * Stop managing a view. A discarded view stays discarded.
+     * @param view the view to forget.
+     */
+    public void remove(XWalkViewInternal view) {
+        if (view.mViewManager != this) return;
+        view.mViewManager = null;
+        mViews.remove(view);
+        mPendingStates.remove(view);
+        File file = mStateFiles.remove(view);
+        if (file != null) deleteInBackground(file);
+    }
+
+    /**
+     * Mark a view as the most recently used one, reviving it if needed.
+     * Embedders should call it when a view is about to be displayed.
+     * @param view the view used.
+     */
+    public void touch(XWalkViewInternal view) {
+        if (view.mViewManager != this) return;
+        if (view.isDiscarded()) {
+            revive(view);
+            return;
+        }
+        mViews.remove(view);
+        mViews.add(view);
+        trim();
+    }
+
+    /**
+     * @return the count of managed views holding a web contents.
+     */
+    public int getLiveViewCount() {
+        int count = 0;
+        for (XWalkViewInternal view : mViews) {
+            if (!view.isDiscarded()) count++;
+        }
+        return count;
+    }
+
+    // Called by XWalkViewInternal before a discarded view is used.
+    void revive(XWalkViewInternal view) {
+        if (!view.isDiscarded()) return;
+        byte[] state = mPendingStates.remove(view);
+        File file = mStateFiles.remove(view);
+        if (state == null && file != null) state = readFile(file);
+        if (file != null) deleteInBackground(file);
+
+        view.reviveContent(state == null ? null : decompress(state));
+        mViews.remove(view);
+        mViews.add(view);
+        trim();
+    }
+
+    private void trim() {
+        int live = getLiveViewCount();
+        // Never discard the most recently used view, nor the visible ones.
+        for (int i = 0; i < mViews.size() - 1 && live > mMaxLiveViews; i++) {
+            XWalkViewInternal view = mViews.get(i);
+            if (view.isDiscarded() || !view.isContentHidden()) continue;
+            if (discard(view)) live--;
+        }
+    }
+
+    // Returns false if the view was kept alive, its state couldn't be saved.
+    private boolean discard(final XWalkViewInternal view) {
+        byte[] state = view.getContentState();
+        if (state == null) return false;
+        final byte[] compressed = compress(state);
+        if (compressed == null) return false;
+        view.discardContent();
+        mPendingStates.put(view, compressed);
+
+        final File file = new File(mStateDir, getStateFilePrefix() +
+                System.identityHashCode(this) + "_" + (mNextFileId++) + ".state");
+        new AsyncTask<Void, Void, Boolean>() {
+            @Override
+            protected Boolean doInBackground(Void... params) {
+                return writeFile(file, compressed);
+            }
+
+            @Override
+            protected void onPostExecute(Boolean written) {
+                // The view may have been revived or removed meanwhile.
+                if (mPendingStates.get(view) != compressed) {
+                    if (written) file.delete();
+                    return;
+                }
+                if (written) {
+                    mPendingStates.remove(view);
+                    mStateFiles.put(view, file);
+                }
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        return true;
+    }
+
+    private static byte[] compress(byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2);
+        GZIPOutputStream output = null;
+        try {
+            output = new GZIPOutputStream(bytes);
+            output.write(data);
+            output.finish();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to compress the view state: " + e);
+            return null;
+        } finally {
+            closeQuietly(output);
+        }
+    }
+
+    private static byte[] decompress(byte[] data) {
+        GZIPInputStream input = null;
+        try {
+            input = new GZIPInputStream(new ByteArrayInputStream(data));
+            return readFully(input);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to decompress the view state: " + e);
+            return null;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    private boolean writeFile(File file, byte[] data) {
+        if (!mStateDir.isDirectory() && !mStateDir.mkdirs()) return false;
+        FileOutputStream output = null;
+        try {
+            output = new FileOutputStream(file);
+            output.write(data);
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + file + ": " + e);
+            return false;
+        } finally {
+            closeQuietly(output);
+        }
+    }
+
+    private static byte[] readFile(File file) {
+        FileInputStream input = null;
+        try {
+            input = new FileInputStream(file);
+            return readFully(input);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read " + file + ": " + e);
+            return null;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length;
+        while ((length = input.read(buffer)) != -1) {
+            output.write(buffer, 0, length);
+        }
+        return output.toByteArray();
+    }
+
+    private static void deleteInBackground(final File file) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                file.delete();
+            }
+        });
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close stream: " + e);
+        }
+    }
+}
@@ -34,6 +34,11 @@ class XWalkCoreExtensionBridge extends XWalkExtensionAndroid implements XWalkExt
         return mExtension.onSyncMessage(instanceID, message);
     }
 
+    @Override
+    public void onInstanceDestroyed(int instanceID) {
+        mExtension.onInstanceDestroyed(instanceID);
+    }
+
     public void onDestroy() {
         mExtension.onDestroy();
         destroyExtension();
@@ -123,6 +123,14 @@ public abstract class XWalkExtension {
         mExtensionContext.broadcastMessage(this, message);
     }
 
+    /**
+     * Called when an extension instance is destroyed, e.g. when its page
+     * navigated away. What was kept for it should be released.
+     * @param instanceID the ID of the destroyed extension instance.
+     */
+    public void onInstanceDestroyed(int instanceID) {
+    }
+
     /**
      * Called when this app is onResume.
      */
@@ -0,0 +1,74 @@
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.extension;
+
+import android.util.Log;
+
+import java.util.HashMap;
+
+import org.json.JSONException;
+
+/**
+ * Routes the JSON messages of an extension to a handler per "cmd" value.
+ *
+ * Extensions build one router in their constructor and register all their
+ * commands there, then forward onMessage() to dispatch(). A message is
+ * scanned once for its command, and its payload is only parsed if the
+ * handler reads it, see XWalkExtensionMessage.
+ */
+public class XWalkExtensionCommandRouter {
+    private static final String TAG = "XWalkExtensionCommandRouter";
+
+    /**
+     * Handles one command. Runs on the thread calling dispatch().
+     */
+    public interface Command {
+        void run(int instanceID, XWalkExtensionMessage message) throws JSONException;
+    }
+
+    private final String mName;
+    private final HashMap<String, Command> mCommands = new HashMap<String, Command>();
+
+    /**
+     * @param name the name used in log messages, usually the extension's.
+     */
+    public XWalkExtensionCommandRouter(String name) {
+        mName = name;
+    }
+
+    public XWalkExtensionCommandRouter register(String cmd, Command command) {
+        mCommands.put(cmd, command);
+        return this;
+    }
+
+    /**
+     * Run the handler of a message.
+     * @param instanceID the id of the instance which sent the message.
+     * @param message the raw message.
+     * @return false if the message was not handled.
+     */
+    public boolean dispatch(int instanceID, String message) {
+        XWalkExtensionMessage peeked = XWalkExtensionMessage.peek(message);
+        if (peeked == null) {
+            Log.e(TAG, mName + ": invalid message received: " + message);
+            return false;
+        }
+        return dispatch(instanceID, peeked);
+    }
+
+    public boolean dispatch(int instanceID, XWalkExtensionMessage message) {
+        Command command = mCommands.get(message.getCommand());
+        if (command == null) {
+            Log.e(TAG, mName + ": unexpected command received: " + message.getCommand());
+            return false;
+        }
+        try {
+            command.run(instanceID, message);
+        } catch (JSONException e) {
+            Log.e(TAG, mName + ": failed to handle " + message.getCommand() + ": " + e.toString());
+        }
+        return true;
+    }
+}
@@ -0,0 +1,129 @@
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.extension;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A JSON message received by an extension.
+ *
+ * The "cmd" and "_promise_id" fields are read with a streaming reader. It
+ * stops at the first other field after "cmd", so the payload isn't scanned
+ * when the routing fields come first. A "_promise_id" which comes later is
+ * only looked for when a handler asks for it: it's read from the parsed
+ * payload if there is one already, otherwise the other values are skipped
+ * over without building them. The payload is only parsed into a
+ * JSONObject the first time a handler asks for it, and that object is then
+ * shared by all later accesses.
+ */
+public final class XWalkExtensionMessage {
+    private static final String TAG = "XWalkExtensionMessage";
+
+    public static final String CMD = "cmd";
+    public static final String PROMISE_ID = "_promise_id";
+
+    private final String mMessage;
+    private String mCommand;
+    private String mPromiseId;
+    // Whether all the fields were scanned for the routing ones.
+    private boolean mFullyScanned = false;
+    private JSONObject mJson;
+
+    private XWalkExtensionMessage(String message) {
+        mMessage = message;
+    }
+
+    /**
+     * Read the routing fields of a message.
+     * @param message the raw message from JavaScript.
+     * @return the message, or null if it's not a JSON object with a "cmd".
+     */
+    public static XWalkExtensionMessage peek(String message) {
+        if (message == null || message.isEmpty()) return null;
+
+        XWalkExtensionMessage result = new XWalkExtensionMessage(message);
+        if (!result.scan(true)) return null;
+        return result.mCommand == null ? null : result;
+    }
+
+    /**
+     * Look for the routing fields.
+     * @param leadingOnly whether to stop at the first other field after "cmd".
+     * @return false if the message is malformed.
+     */
+    private boolean scan(boolean leadingOnly) {
+        JsonReader reader = new JsonReader(new StringReader(mMessage));
+        try {
+            reader.beginObject();
+            while (reader.hasNext() && (mCommand == null || mPromiseId == null)) {
+                String name = reader.nextName();
+                if (CMD.equals(name) && reader.peek() == JsonToken.STRING) {
+                    mCommand = reader.nextString();
+                } else if (PROMISE_ID.equals(name) && reader.peek() != JsonToken.NULL) {
+                    // Promise ids are numbers on some APIs, strings on others.
+                    mPromiseId = reader.nextString();
+                } else if (leadingOnly && mCommand != null) {
+                    return true;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            mFullyScanned = true;
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Malformed message: " + e.toString());
+            return false;
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Malformed message: " + e.toString());
+            return false;
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Nothing to release for a string.
+            }
+        }
+    }
+
+    public String getCommand() {
+        return mCommand;
+    }
+
+    /**
+     * @return the promise id as a string, or null if there's none.
+     */
+    public String getPromiseId() {
+        if (mPromiseId == null && !mFullyScanned) {
+            // It wasn't among the leading fields.
+            if (mJson != null) {
+                if (!mJson.isNull(PROMISE_ID)) mPromiseId = mJson.optString(PROMISE_ID, null);
+            } else {
+                scan(false);
+            }
+            mFullyScanned = true;
+        }
+        return mPromiseId;
+    }
+
+    public String getRawMessage() {
+        return mMessage;
+    }
+
+    /**
+     * @return the whole message, parsed on first call.
+     */
+    public JSONObject getJson() throws JSONException {
+        if (mJson == null) mJson = new JSONObject(mMessage);
+        return mJson;
+    }
+}
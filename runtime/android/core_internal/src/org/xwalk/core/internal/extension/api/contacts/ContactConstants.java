@@ -34,6 +34,10 @@ public class ContactConstants {
     public static final String CUSTOM_MIMETYPE_GENDER =
             "vnd.android.cursor.item/contact_custom_gender";
 
+    // Bulk operations are applied by batches of about this many operations,
+    // each being its own provider transaction.
+    public static final int MAX_OPERATIONS_PER_BATCH = 100;
+
     // This map is for fields in ContactFindOptions dictionary.
     // e.g. When to find "givenName=John", we actually need to find "John" in "givenNames".
     public static final Map<String, String> findFieldMap = createStringMap(new String[]{
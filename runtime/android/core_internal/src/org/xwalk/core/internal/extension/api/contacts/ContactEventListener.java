@@ -4,90 +4,250 @@
 
 package org.xwalk.core.internal.extension.api.contacts;
 
+import android.annotation.TargetApi;
 import android.content.ContentResolver;
 import android.database.ContentObserver;
 import android.database.Cursor;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.provider.ContactsContract;
+import android.provider.ContactsContract.DeletedContacts;
 import android.provider.ContactsContract.RawContacts;
 import android.util.Log;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
  * This class observes changes of the contacts data table and fire events when necessary.
+ *
+ * On JELLY_BEAN_MR2 and later, only the contacts updated or deleted since the
+ * last notification are queried, using CONTACT_LAST_UPDATED_TIMESTAMP and the
+ * deleted contacts table. On older releases, the raw contact versions are read
+ * with a minimal projection and folded into a per contact version index which
+ * is diffed against the previous one in a single pass.
+ *
+ * Sync adapters tend to notify changes in bursts, so notifications are
+ * coalesced: the diff runs once per coalescing window on a background
+ * thread and a single merged contactschange event is broadcast.
  */
 public class ContactEventListener extends ContentObserver {
     private static final String TAG = "ContactsEventListener";
 
+    private static final boolean USE_TIMESTAMPS =
+            VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN_MR2;
+
+    private static final String[] CONTACT_PROJECTION = new String[]{
+            ContactsContract.Contacts._ID,
+            ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP};
+
+    private static final long DEFAULT_COALESCING_WINDOW_MS = 500;
+    private static final long MAX_COALESCING_WINDOW_MS = 10000;
+    // The provider notifies the changes of a bulk operation asynchronously,
+    // some of them after it returns. Its event waits until no change was
+    // notified for this long, and at most MAX_COALESCING_WINDOW_MS.
+    private static final long BATCH_QUIET_PERIOD_MS = 500;
+
     private final Contacts mContacts;
     private final ContentResolver mResolver;
+    // Events are broadcast through it, the diff runs on mWorker.
+    private final Handler mHandler;
+    private final HandlerThread mWorkerThread;
+    private final Handler mWorker;
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mFlushScheduled = false;
+            notifyChanges();
+        }
+    };
 
+    private final Runnable mBatchSettledRunnable = new Runnable() {
+        @Override
+        public void run() {
+            onBatchSettled();
+        }
+    };
+
+    private volatile long mCoalescingWindow = DEFAULT_COALESCING_WINDOW_MS;
+
+    // The fields below are only accessed on the worker thread.
     private boolean mIsListening = false;
-    private HashMap<String, String> mRawID2ContactIDMaps;
-    private HashMap<String, String> mRawID2VersionMaps;
-    private HashSet<String> mContactIDs;
+    private boolean mFlushScheduled = false;
+    // Count of bulk operations in progress, changes are reported when the last one ends.
+    private int mBatchDepth = 0;
+    private boolean mChangedInBatch = false;
+    // When the last bulk operation ended, or 0 if the changes it caused are
+    // not awaited anymore.
+    private long mBatchEndTime = 0;
+    // Known contact ids, mapped to a digest of their raw contact versions
+    // when timestamps are not available.
+    private LongIntMap mContactVersions;
+    private long mLastUpdatedTimestamp;
+    private long mLastDeletedTimestamp;
 
     public ContactEventListener(Handler handler, Contacts instance, ContentResolver resolver) {
-        super(handler);
+        this(handler, startWorkerThread(), instance, resolver);
+    }
+
+    private ContactEventListener(Handler handler, HandlerThread workerThread,
+            Contacts instance, ContentResolver resolver) {
+        // Change notifications are delivered on the worker thread.
+        super(new Handler(workerThread.getLooper()));
         mContacts = instance;
         mResolver = resolver;
+        mHandler = handler;
+        mWorkerThread = workerThread;
+        mWorker = new Handler(workerThread.getLooper());
+    }
+
+    private static HandlerThread startWorkerThread() {
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        return thread;
     }
 
     @Override
     public void onChange(boolean selfChange) {
         super.onChange(selfChange);
+        mContacts.onContactsChanged();
         if (!mIsListening) return;
-        notifyChanges(false);
+        if (mBatchDepth > 0) {
+            mChangedInBatch = true;
+            return;
+        }
+        if (mBatchEndTime > 0) {
+            mChangedInBatch = true;
+            scheduleBatchSettled();
+            return;
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Hold the change events until the matching endBatch(), and until the
+     * changes it caused are all notified. Then they are reported in a single
+     * event.
+     */
+    protected void beginBatch() {
+        mWorker.post(new Runnable() {
+            @Override
+            public void run() {
+                mWorker.removeCallbacks(mBatchSettledRunnable);
+                mBatchEndTime = 0;
+                mBatchDepth++;
+            }
+        });
+    }
+
+    protected void endBatch() {
+        mWorker.post(new Runnable() {
+            @Override
+            public void run() {
+                if (--mBatchDepth > 0) return;
+                mBatchEndTime = SystemClock.uptimeMillis();
+                scheduleBatchSettled();
+            }
+        });
+    }
+
+    // Wait for another quiet period, unless the changes were awaited too long.
+    private void scheduleBatchSettled() {
+        mWorker.removeCallbacks(mBatchSettledRunnable);
+        long elapsed = SystemClock.uptimeMillis() - mBatchEndTime;
+        long delay = Math.min(BATCH_QUIET_PERIOD_MS, MAX_COALESCING_WINDOW_MS - elapsed);
+        mWorker.postDelayed(mBatchSettledRunnable, Math.max(0, delay));
+    }
+
+    private void onBatchSettled() {
+        mBatchEndTime = 0;
+        if (!mChangedInBatch) return;
+        mChangedInBatch = false;
+        mWorker.removeCallbacks(mFlushRunnable);
+        mFlushScheduled = false;
+        if (mIsListening) notifyChanges();
+    }
+
+    /**
+     * Set how long change notifications are accumulated before one event is fired.
+     * @param windowMs the coalescing window in milliseconds, 0 to fire as soon as possible.
+     */
+    protected void setCoalescingWindow(long windowMs) {
+        mCoalescingWindow = Math.max(0, Math.min(windowMs, MAX_COALESCING_WINDOW_MS));
     }
 
     protected void startListening() {
-        if (mIsListening) return;
-        mIsListening = true;
-        mContactIDs = getAllContactIDs();
-        readAllRawContactInfo();
+        mWorker.post(new Runnable() {
+            @Override
+            public void run() {
+                doStartListening();
+            }
+        });
     }
 
     protected void onResume() {
-        if (!mIsListening) return;
-        notifyChanges(true);
+        mWorker.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mIsListening) return;
+                scheduleFlush();
+            }
+        });
     }
 
-    private void notifyChanges(boolean bResume) {
-        try {
-            JSONObject jsonOutput = new JSONObject();
-            HashSet<String> contactIDs = getAllContactIDs();
+    protected void onDestroy() {
+        mWorker.removeCallbacksAndMessages(null);
+        mWorkerThread.quit();
+    }
 
-            if (bResume || contactIDs.size() > mContactIDs.size()) {
-                // Calculate the added ids.
-                HashSet<String> addedIDs = getDiffSet(contactIDs, mContactIDs);
-                if (!bResume || addedIDs.size() > 0) {
-                    jsonOutput.put("added", convertSet2JSONArray(addedIDs));
-                }
-            } else if (bResume || contactIDs.size() < mContactIDs.size()) {
-                // Calculate the removed ids.
-                HashSet<String> removedIDs = getDiffSet(mContactIDs, contactIDs);
-                if (!bResume || contactIDs.size() < 0) {
-                    jsonOutput.put("removed", convertSet2JSONArray(removedIDs));
-                }
-            } else {
-                // Calculate the modified ids.
-                HashSet<String> commonIDs = bResume ? getIntersectSet(mContactIDs, contactIDs) : contactIDs;
-                HashSet<String> modifiedIDs = compareAllRawContactInfo(commonIDs);
-                if (modifiedIDs.size() != 0) {
-                    jsonOutput.put("modified", convertSet2JSONArray(modifiedIDs));
-                }
-            }
+    private void scheduleFlush() {
+        if (mFlushScheduled) return;
+        mFlushScheduled = true;
+        mWorker.postDelayed(mFlushRunnable, mCoalescingWindow);
+    }
+
+    private void doStartListening() {
+        if (mIsListening) return;
+        mIsListening = true;
+        if (USE_TIMESTAMPS) {
+            mLastDeletedTimestamp = System.currentTimeMillis();
+            mContactVersions = readAllContactIDs();
+        } else {
+            mContactVersions = readContactVersions();
+        }
+    }
 
+    private void notifyChanges() {
+        if (mContactVersions == null) {
+            // Reading failed before, e.g. the permission was missing.
+            mIsListening = false;
+            doStartListening();
+            return;
+        }
+
+        JSONArray added = new JSONArray();
+        JSONArray modified = new JSONArray();
+        JSONArray removed = new JSONArray();
+        if (USE_TIMESTAMPS) {
+            if (!readUpdatedContacts(added, modified)) return;
+            if (!readDeletedContacts(removed)) return;
+        } else {
+            LongIntMap versions = readContactVersions();
+            if (versions == null) return;
+            diffContactVersions(mContactVersions, versions, added, modified, removed);
+            mContactVersions = versions;
+        }
+
+        try {
+            JSONObject jsonOutput = new JSONObject();
+            if (added.length() > 0) jsonOutput.put("added", added);
+            if (modified.length() > 0) jsonOutput.put("modified", modified);
+            if (removed.length() > 0) jsonOutput.put("removed", removed);
             notifyContactChanged(jsonOutput);
-            mContactIDs = contactIDs;
-            readAllRawContactInfo();
         } catch (JSONException e) {
             Log.e(TAG, "notifyChanges: " + e.toString());
         }
@@ -99,106 +259,144 @@ public class ContactEventListener extends ContentObserver {
             JSONObject jsonOutput = new JSONObject();
             jsonOutput.put("reply", "contactschange");
             jsonOutput.put("data", outObject);
-            mContacts.broadcastMessage(jsonOutput.toString());
+            final String message = jsonOutput.toString();
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mContacts.broadcastMessage(message);
+                }
+            });
         } catch (JSONException e) {
             Log.e(TAG, "notifyContactChanged: " + e.toString());
         }
     }
 
-    private JSONArray convertSet2JSONArray(HashSet<String> set) {
-        JSONArray jsonArray = new JSONArray();
-        Iterator<String> iterator = set.iterator();
-        while (iterator.hasNext()) {
-            jsonArray.put(iterator.next());
-        }
-        return jsonArray;
-    }
-
-    private HashSet<String> getAllContactIDs() {
+    @TargetApi(VERSION_CODES.JELLY_BEAN_MR2)
+    private LongIntMap readAllContactIDs() {
         Cursor c = null;
         try {
-            c = mResolver.query(ContactsContract.Contacts.CONTENT_URI, null, null, null, null);
-            HashSet<String> contactIDs = new HashSet<String>();
+            c = mResolver.query(ContactsContract.Contacts.CONTENT_URI,
+                    CONTACT_PROJECTION,
+                    null, null, ContactsContract.Contacts._ID);
+            LongIntMap contactIDs = new LongIntMap(c.getCount());
             while (c.moveToNext()) {
-                String contactID = c.getString(c.getColumnIndex(ContactsContract.Contacts._ID));
-                contactIDs.add(contactID);
+                contactIDs.put(c.getLong(0), 0);
+                mLastUpdatedTimestamp = Math.max(mLastUpdatedTimestamp, c.getLong(1));
             }
             return contactIDs;
         } catch (SecurityException e) {
-            Log.e(TAG, "getAllContactIDs: " + e.toString());
+            Log.e(TAG, "readAllContactIDs: " + e.toString());
             return null;
         } finally {
             if (c != null) c.close();
         }
     }
 
-    private HashSet<String> getIntersectSet(HashSet<String> setA, HashSet<String> setB) {
-        HashSet<String> resultSet = new HashSet<String>();
-        resultSet.addAll(setA);
-        resultSet.retainAll(setB);
-        return resultSet;
-    }
-
-    private HashSet<String> getDiffSet(HashSet<String> setA, HashSet<String> setB) {
-        HashSet<String> resultSet = new HashSet<String>();
-        resultSet.addAll(setA);
-        resultSet.removeAll(setB);
-        return resultSet;
+    @TargetApi(VERSION_CODES.JELLY_BEAN_MR2)
+    private boolean readUpdatedContacts(JSONArray added, JSONArray modified) {
+        Cursor c = null;
+        try {
+            c = mResolver.query(ContactsContract.Contacts.CONTENT_URI,
+                    CONTACT_PROJECTION,
+                    ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP + " > ?",
+                    new String[]{String.valueOf(mLastUpdatedTimestamp)}, null);
+            while (c.moveToNext()) {
+                long contactID = c.getLong(0);
+                if (mContactVersions.containsKey(contactID)) {
+                    modified.put(String.valueOf(contactID));
+                } else {
+                    mContactVersions.put(contactID, 0);
+                    added.put(String.valueOf(contactID));
+                }
+                mLastUpdatedTimestamp = Math.max(mLastUpdatedTimestamp, c.getLong(1));
+            }
+            return true;
+        } catch (SecurityException e) {
+            Log.e(TAG, "readUpdatedContacts: " + e.toString());
+            return false;
+        } finally {
+            if (c != null) c.close();
+        }
     }
 
-    private void readAllRawContactInfo() {
+    @TargetApi(VERSION_CODES.JELLY_BEAN_MR2)
+    private boolean readDeletedContacts(JSONArray removed) {
         Cursor c = null;
         try {
-            c = mResolver.query(RawContacts.CONTENT_URI, null, null, null, null);
-            mRawID2ContactIDMaps = new HashMap<String, String>();
-            mRawID2VersionMaps = new HashMap<String, String>();
+            c = mResolver.query(DeletedContacts.CONTENT_URI,
+                    new String[]{DeletedContacts.CONTACT_ID,
+                                 DeletedContacts.CONTACT_DELETED_TIMESTAMP},
+                    DeletedContacts.CONTACT_DELETED_TIMESTAMP + " > ?",
+                    new String[]{String.valueOf(mLastDeletedTimestamp)}, null);
             while (c.moveToNext()) {
-                String contactID = c.getString(c.getColumnIndex(RawContacts.CONTACT_ID));
-                String rawContactID = c.getString(c.getColumnIndex(RawContacts._ID));
-                String version = c.getString(c.getColumnIndex(RawContacts.VERSION));
-                mRawID2ContactIDMaps.put(rawContactID, contactID);
-                mRawID2VersionMaps.put(rawContactID, version);
+                long contactID = c.getLong(0);
+                if (mContactVersions.remove(contactID)) {
+                    removed.put(String.valueOf(contactID));
+                }
+                mLastDeletedTimestamp = Math.max(mLastDeletedTimestamp, c.getLong(1));
             }
+            return true;
         } catch (SecurityException e) {
-            Log.e(TAG, "readAllRawContactInfo: " + e.toString());
+            Log.e(TAG, "readDeletedContacts: " + e.toString());
+            return false;
         } finally {
             if (c != null) c.close();
         }
     }
 
-    private HashSet<String> compareAllRawContactInfo(HashSet<String> commonSet) {
-        HashSet<String> contactIDs = null;
-        HashMap<String, String> compareMaps = null;
+    /**
+     * Read the versions of all raw contacts, sorted by contact, and fold
+     * them into one digest per contact. Any raw contact added, removed or
+     * modified changes the digest of its contact.
+     */
+    private LongIntMap readContactVersions() {
         Cursor c = null;
         try {
-            c = mResolver.query(RawContacts.CONTENT_URI, null, null, null, null);
-            contactIDs = new HashSet<String>();
-            compareMaps = new HashMap<String, String>();
+            c = mResolver.query(RawContacts.CONTENT_URI,
+                    new String[]{RawContacts.CONTACT_ID, RawContacts._ID, RawContacts.VERSION},
+                    RawContacts.DELETED + " = 0 AND " + RawContacts.CONTACT_ID + " IS NOT NULL",
+                    null, RawContacts.CONTACT_ID + ", " + RawContacts._ID);
+            LongIntMap versions = new LongIntMap(c.getCount());
+            long contactID = -1;
+            int digest = 0;
             while (c.moveToNext()) {
-                String rawContactID = c.getString(c.getColumnIndex(RawContacts._ID));
-                String version = c.getString(c.getColumnIndex(RawContacts.VERSION));
-                compareMaps.put(rawContactID, version);
+                long id = c.getLong(0);
+                if (id != contactID) {
+                    if (contactID != -1) versions.put(contactID, digest);
+                    contactID = id;
+                    digest = 17;
+                }
+                long rawContactID = c.getLong(1);
+                digest = 31 * digest + (int) (rawContactID ^ (rawContactID >>> 32));
+                digest = 31 * digest + c.getInt(2);
             }
+            if (contactID != -1) versions.put(contactID, digest);
+            return versions;
         } catch (SecurityException e) {
-            Log.e(TAG, "compareAllRawContactInfo: " + e.toString());
+            Log.e(TAG, "readContactVersions: " + e.toString());
             return null;
         } finally {
             if (c != null) c.close();
         }
+    }
 
-        Iterator<String> iterator = compareMaps.keySet().iterator();
-        while (iterator.hasNext()) {
-            String rawContactID = iterator.next();
-            String newVersion = compareMaps.get(rawContactID);
-            String oldVersion = mRawID2VersionMaps.get(rawContactID);
-            if (oldVersion == null || !newVersion.equals(oldVersion)) {
-                String contactID = mRawID2ContactIDMaps.get(rawContactID);
-                if (contactID != null && commonSet.contains(contactID)) {
-                    contactIDs.add(contactID);
+    private static void diffContactVersions(LongIntMap oldVersions, LongIntMap newVersions,
+            JSONArray added, JSONArray modified, JSONArray removed) {
+        int i = 0;
+        int j = 0;
+        while (i < oldVersions.size() || j < newVersions.size()) {
+            if (j == newVersions.size() ||
+                    (i < oldVersions.size() && oldVersions.keyAt(i) < newVersions.keyAt(j))) {
+                removed.put(String.valueOf(oldVersions.keyAt(i++)));
+            } else if (i == oldVersions.size() || newVersions.keyAt(j) < oldVersions.keyAt(i)) {
+                added.put(String.valueOf(newVersions.keyAt(j++)));
+            } else {
+                if (oldVersions.valueAt(i) != newVersions.valueAt(j)) {
+                    modified.put(String.valueOf(newVersions.keyAt(j)));
                 }
+                i++;
+                j++;
             }
         }
-
-        return contactIDs;
     }
 }
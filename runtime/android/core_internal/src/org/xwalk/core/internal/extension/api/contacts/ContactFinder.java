@@ -4,10 +4,13 @@
 
 package org.xwalk.core.internal.extension.api.contacts;
 
+import android.annotation.TargetApi;
 import android.content.ContentResolver;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
+import android.provider.ContactsContract;
 import android.provider.ContactsContract.Data;
 import android.provider.ContactsContract.CommonDataKinds.Email;
 import android.provider.ContactsContract.CommonDataKinds.Event;
@@ -17,7 +20,6 @@ import android.provider.ContactsContract.CommonDataKinds.Nickname;
 import android.provider.ContactsContract.CommonDataKinds.Note;
 import android.provider.ContactsContract.CommonDataKinds.Organization;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
-import android.provider.ContactsContract.CommonDataKinds.Photo;
 import android.provider.ContactsContract.CommonDataKinds.StructuredName;
 import android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
 import android.provider.ContactsContract.CommonDataKinds.Website;
@@ -25,8 +27,9 @@ import android.util.Log;
 import android.util.Pair;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,11 +42,23 @@ import org.json.JSONObject;
  * This class searches contacts by given options.
  */
 public class ContactFinder {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
     private ContactUtils mUtils;
+    private Map<String, String> mGroupTitles;
+    private final ContactQueryCache mCache;
     private static final String TAG = "ContactFinder";
 
     public ContactFinder(ContentResolver resolver) {
+        this(resolver, null);
+    }
+
+    /**
+     * @param cache the results of previous calls to reuse, may be null.
+     */
+    public ContactFinder(ContentResolver resolver, ContactQueryCache cache) {
         mUtils = new ContactUtils(resolver);
+        mCache = cache;
     }
 
     public static class FindOption {
@@ -177,25 +192,168 @@ public class ContactFinder {
         return array;
     }
 
-    private Set<String> getContactIds(FindOption findOption) {
-        Set<String> ids = null;
+    /**
+     * The ordered ids of the contacts matching a find() call, and the
+     * position of the next page to read. Only ids are kept so that the
+     * memory used by a pending search doesn't depend on the contact details.
+     */
+    public static class FindCursor {
+        private long[] mIds = new long[16];
+        private int mSize;
+        private int mPosition;
+        private boolean mDisplayPhotos;
+
+        // A copy positioned at the first page.
+        FindCursor copy() {
+            FindCursor cursor = new FindCursor();
+            cursor.mIds = Arrays.copyOf(mIds, mSize);
+            cursor.mSize = mSize;
+            cursor.mDisplayPhotos = mDisplayPhotos;
+            return cursor;
+        }
+
+        private void add(long id) {
+            if (mSize == mIds.length) mIds = Arrays.copyOf(mIds, Math.max(16, mSize * 2));
+            mIds[mSize++] = id;
+        }
+
+        private void reverse() {
+            for (int i = 0, j = mSize - 1; i < j; i++, j--) {
+                long id = mIds[i];
+                mIds[i] = mIds[j];
+                mIds[j] = id;
+            }
+        }
+
+        public boolean hasMore() {
+            return mPosition < mSize;
+        }
+    }
+
+    // Columns read to build the contacts, the StructuredName, Phone, etc.
+    // column names are all aliases of the generic data columns. DATA15 only
+    // holds the photo blobs, photos are returned as URLs, see ContactPhotos.
+    private static final String[] DATA_PROJECTION = new String[] {
+        Data.CONTACT_ID, Data.MIMETYPE, Data.IS_SUPER_PRIMARY,
+        Data.DATA1, Data.DATA2, Data.DATA3, Data.DATA4, Data.DATA5,
+        Data.DATA6, Data.DATA7, Data.DATA8, Data.DATA9, Data.DATA10,
+        Data.DATA11, Data.DATA12, Data.DATA13, Data.DATA14
+    };
+
+    /**
+     * Read the ids of the contacts having a row matched by findOption,
+     * sorted by id. At most limit ids are read if the result isn't sorted
+     * afterwards.
+     */
+    private LongIntMap getMatchedContactIds(FindOption findOption, long limit) {
         Cursor c = null;
         try {
-            c = mUtils.mResolver.query(Data.CONTENT_URI, null, findOption.mWhere,
-                                       findOption.mWhereArgs, findOption.mSortOrder);
-            ids = new HashSet<String>();
-            while (c.moveToNext()) {
-                ids.add(String.valueOf(c.getLong(c.getColumnIndex(Data.CONTACT_ID))));
+            c = mUtils.mResolver.query(Data.CONTENT_URI, new String[]{Data.CONTACT_ID},
+                                       findOption.mWhere, findOption.mWhereArgs,
+                                       Data.CONTACT_ID);
+            if (c == null) return null;
+            LongIntMap ids = new LongIntMap();
+            while (ids.size() < limit && c.moveToNext()) {
+                ids.put(c.getLong(0), 0);
             }
             return ids;
         } catch (SecurityException e) {
-            Log.e(TAG, "getContactIds: " + e.toString());
+            Log.e(TAG, "getMatchedContactIds: " + e.toString());
             return null;
         } finally {
             if (c != null) c.close();
         }
     }
 
+    /**
+     * Read all contact ids in ascending order and add the ones not in
+     * excluded to the cursor, until it holds limit ids. The limit is
+     * pushed to the provider when nothing is excluded.
+     */
+    private boolean addAllContactIds(FindCursor cursor, LongIntMap excluded, long limit) {
+        Uri uri = ContactsContract.Contacts.CONTENT_URI;
+        if (excluded == null && limit != Long.MAX_VALUE) {
+            uri = uri.buildUpon().appendQueryParameter(
+                    ContactsContract.LIMIT_PARAM_KEY, String.valueOf(limit)).build();
+        }
+        Cursor c = null;
+        try {
+            c = mUtils.mResolver.query(uri, new String[]{ContactsContract.Contacts._ID},
+                                       null, null, ContactsContract.Contacts._ID);
+            if (c == null) return false;
+            while (cursor.mSize < limit && c.moveToNext()) {
+                long id = c.getLong(0);
+                if (excluded == null || !excluded.containsKey(id)) cursor.add(id);
+            }
+            return true;
+        } catch (SecurityException e) {
+            Log.e(TAG, "addAllContactIds: " + e.toString());
+            return false;
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+
+    /**
+     * Add the contacts having a row of sortByMimeType to the cursor, in the
+     * given order. Only the ids in matched are kept, unless it's null.
+     *
+     * The query is restricted to the matched ids, and limited to the rows
+     * of limit contacts. A contact may have several rows of the mimetype, so
+     * when the limited rows hold fewer contacts, it's run again with twice
+     * the limit.
+     * @return the added ids, or null on failure.
+     */
+    private LongIntMap addSortedContactIds(FindCursor cursor, LongIntMap matched,
+            String sortOrder, String sortByMimeType, long limit) {
+        if (matched != null && matched.size() == 0) return new LongIntMap();
+        StringBuilder where = new StringBuilder(Data.MIMETYPE + " = ?");
+        String[] whereArgs = new String[]{sortByMimeType};
+        if (matched != null) {
+            // Ids are numbers, they can be inlined.
+            where.append(" AND " + Data.CONTACT_ID + " IN (");
+            for (int i = 0; i < matched.size(); i++) {
+                if (i > 0) where.append(',');
+                where.append(matched.keyAt(i));
+            }
+            where.append(')');
+        }
+
+        int start = cursor.mSize;
+        long rowLimit = limit;
+        while (true) {
+            Uri uri = Data.CONTENT_URI;
+            if (rowLimit != Long.MAX_VALUE) {
+                uri = uri.buildUpon().appendQueryParameter(
+                        ContactsContract.LIMIT_PARAM_KEY, String.valueOf(rowLimit)).build();
+            }
+            Cursor c = null;
+            try {
+                c = mUtils.mResolver.query(uri, new String[]{Data.CONTACT_ID},
+                                           where.toString(), whereArgs, sortOrder);
+                if (c == null) return null;
+                cursor.mSize = start;
+                LongIntMap added = new LongIntMap();
+                int rows = 0;
+                while (cursor.mSize < limit && c.moveToNext()) {
+                    rows++;
+                    long id = c.getLong(0);
+                    if (matched != null && !matched.containsKey(id)) continue;
+                    if (added.containsKey(id)) continue;
+                    added.put(id, 0);
+                    cursor.add(id);
+                }
+                if (cursor.mSize >= limit || rows < rowLimit) return added;
+            } catch (SecurityException e) {
+                Log.e(TAG, "addSortedContactIds: " + e.toString());
+                return null;
+            } finally {
+                if (c != null) c.close();
+            }
+            rowLimit = (rowLimit > Long.MAX_VALUE / 2) ? Long.MAX_VALUE : rowLimit * 2;
+        }
+    }
+
     /**
      * Generate a string to be used as sort order by SQL clause
      * @param sortBy e.g. "givenNames", "phoneNumbers"
@@ -221,109 +379,142 @@ public class ContactFinder {
         return (order != "") ? order.substring(0, order.length()-1) : null;
     }
 
-    //TODO(hdq): Currently this function doesn't support multi-column sorting.
-    private JSONArray getContacts(
-            Set<String> contactIds, String sortOrder, String sortByMimeType, Long resultsLimit) {
-        // Get all records of given contactIds.
-        // For example, sort by ascending:
-        // -----------------------------
-        // id  data           mimetype
-        // -----------------------------
-        // 60  +34600000000   phone_v2
-        // 59  +34698765432   phone_v2
-        // 59  David1 Smith   name
-        // 60  David2 Smith   name
-        String where = null;
-        String[] whereArgs = null;
-        if (contactIds.size() != 0) {
-            where = Data.CONTACT_ID + " in (" + ContactUtils.makeQuestionMarkList(contactIds) + ")";
-            whereArgs = contactIds.toArray(new String[contactIds.size()]);
+    private void readRow(ContactData d, Cursor c) {
+        String mime = c.getString(c.getColumnIndex(Data.MIMETYPE));
+        if (mime.equals(StructuredName.CONTENT_ITEM_TYPE)) {
+            d.oName = addString(d.oName, c, "displayName", StructuredName.DISPLAY_NAME);
+            d.oName = addArrayTop(d.oName, c, "honorificPrefixes", StructuredName.PREFIX);
+            d.oName = addArrayTop(d.oName, c, "givenNames", StructuredName.GIVEN_NAME);
+            d.oName = addArrayTop(d.oName, c, "additionalNames", StructuredName.MIDDLE_NAME);
+            d.oName = addArrayTop(d.oName, c, "familyNames", StructuredName.FAMILY_NAME);
+            d.oName = addArrayTop(d.oName, c, "honorificSuffixes", StructuredName.SUFFIX);
+        } else if (mime.equals(Nickname.CONTENT_ITEM_TYPE)) {
+            d.oName = addArrayTop(d.oName, c, "nicknames", Nickname.NAME);
+        } else if (mime.equals(Email.CONTENT_ITEM_TYPE)) {
+            d.aEmails = addTypeArray(d.aEmails, c, Email.DATA,
+                                     ContactConstants.emailTypeMap,
+                                     ContactConstants.emailTypeValuesMap);
+        } else if (mime.equals(Website.CONTENT_ITEM_TYPE)) {
+            d.aUrls = addTypeArray(d.aUrls, c, Website.DATA,
+                                   ContactConstants.websiteTypeMap,
+                                   ContactConstants.websiteTypeValuesMap);
+        } else if (mime.equals(GroupMembership.CONTENT_ITEM_TYPE)) {
+            String title = getGroupTitle(
+                    c.getString(c.getColumnIndex(GroupMembership.GROUP_ROW_ID)));
+            if (title != null) {
+                if (d.aCategories == null) d.aCategories = new JSONArray();
+                d.aCategories.put(title);
+            }
+        } else if (mime.equals(StructuredPostal.CONTENT_ITEM_TYPE)) {
+            d.aAddresses = addTypeArray(d.aAddresses, c, StructuredPostal.DATA,
+                                        ContactConstants.addressTypeMap,
+                                        ContactConstants.addressTypeValuesMap);
+        } else if (mime.equals(Phone.CONTENT_ITEM_TYPE)) {
+            d.aNumbers = addTypeArray(d.aNumbers, c, Phone.DATA,
+                                      ContactConstants.phoneTypeMap,
+                                      ContactConstants.phoneTypeValuesMap);
+        } else if (mime.equals(Organization.CONTENT_ITEM_TYPE)) {
+            d.aOrganizations = addString(d.aOrganizations, c, Organization.COMPANY);
+        } else if (mime.equals(Organization.CONTENT_ITEM_TYPE)) {
+            d.aJobTitles = addString(d.aJobTitles, c, Organization.TITLE);
+        } else if (mime.equals(Event.CONTENT_ITEM_TYPE)) {
+            int type = Integer.valueOf(c.getString(c.getColumnIndex(Event.TYPE)));
+            if (type == Event.TYPE_BIRTHDAY) {
+                d.birthday = c.getString(c.getColumnIndex(Event.START_DATE));
+            } else if (type == Event.TYPE_ANNIVERSARY) {
+                d.anniversary = c.getString(c.getColumnIndex(Event.START_DATE));
+            }
+        } else if (mime.equals(Note.CONTENT_ITEM_TYPE)) {
+            d.aNotes = addString(d.aNotes, c, Note.NOTE);
+        } else if (mime.equals(Im.CONTENT_ITEM_TYPE)) {
+            d.aImpp = addTypeArray(d.aImpp, c, Im.DATA, ContactConstants.imTypeMap,
+                                   ContactConstants.imTypeValuesMap);
+        } else if (mime.equals(ContactConstants.CUSTOM_MIMETYPE_GENDER)) {
+            d.gender = c.getString(c.getColumnIndex(Data.DATA1));
+        }
+    }
+
+    // Visible groups are read once per finder instead of once per membership row.
+    private String getGroupTitle(String groupId) {
+        if (mGroupTitles == null) mGroupTitles = mUtils.getGroupTitles();
+        return mGroupTitles.get(groupId);
+    }
+
+    // Read the photo handles, and the last update time where available.
+    @TargetApi(VERSION_CODES.JELLY_BEAN_MR2)
+    private void readContactColumns(Map<Long, ContactData> dataMap, boolean displayPhotos,
+            String where, String[] whereArgs) {
+        final boolean hasLastUpdated = VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN_MR2;
+        String[] projection = new String[hasLastUpdated ? 4 : 3];
+        projection[0] = ContactsContract.Contacts._ID;
+        projection[1] = ContactsContract.Contacts.PHOTO_ID;
+        projection[2] = ContactsContract.Contacts.PHOTO_FILE_ID;
+        if (hasLastUpdated) {
+            projection[3] = ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP;
         }
         Cursor c = null;
-        Map<Long, ContactData> dataMap = null;
         try {
-            c = mUtils.mResolver.query(Data.CONTENT_URI, null, where, whereArgs, sortOrder);
-            dataMap = new LinkedHashMap<Long, ContactData>();
-
-            // Read contact IDs to build the array by sortOrder.
-            if (sortOrder != null) {
-                while (c.moveToNext()) {
-                    // We should only check for mimetype of sorting field.
-                    // As e.g. above, sort by phone number: [60, 59], by name: [59, 60]
-                    String mime = c.getString(c.getColumnIndex(Data.MIMETYPE));
-                    if (!mime.equals(sortByMimeType)) continue;
-                    long id = c.getLong(c.getColumnIndex(Data.CONTACT_ID));
-                    if (!dataMap.containsKey(id)) dataMap.put(id, new ContactData());
+            c = mUtils.mResolver.query(ContactsContract.Contacts.CONTENT_URI,
+                                       projection, where, whereArgs, null);
+            while (c.moveToNext()) {
+                long id = c.getLong(0);
+                ContactData d = dataMap.get(id);
+                if (d == null) continue;
+                if (displayPhotos && !c.isNull(2)) {
+                    d.aPhotos = new JSONArray().put(ContactPhotos.getDisplayPhotoUrl(id));
+                } else if (!c.isNull(1) && c.getLong(1) != 0) {
+                    d.aPhotos = new JSONArray().put(ContactPhotos.getThumbnailUrl(id));
                 }
-                c.moveToFirst();
+                if (hasLastUpdated) d.lastUpdated = mUtils.timeConvertToJS(c.getLong(3));
             }
+        } catch (SecurityException e) {
+            Log.e(TAG, "readContactColumns: " + e.toString());
+        } finally {
+            if (c != null) c.close();
+        }
+    }
 
-            // Read details of each contacts
+    /**
+     * Build the details of the next pageSize contacts of a cursor.
+     * Only the data rows of these contacts are read.
+     */
+    public JSONArray nextPage(FindCursor cursor, int pageSize) {
+        int from = cursor.mPosition;
+        int to = (int) Math.min((long) from + Math.max(pageSize, 1), cursor.mSize);
+        cursor.mPosition = to;
+        if (from >= to) return new JSONArray();
+
+        final int generation = (mCache == null) ? 0 : mCache.getGeneration();
+        JSONObject[] contacts = new JSONObject[to - from];
+        Set<String> idStrings = new HashSet<String>();
+        for (int i = from; i < to; i++) {
+            if (mCache != null) {
+                contacts[i - from] = mCache.getContact(cursor.mIds[i], cursor.mDisplayPhotos);
+            }
+            if (contacts[i - from] == null) idStrings.add(String.valueOf(cursor.mIds[i]));
+        }
+        if (idStrings.isEmpty()) return toJSONArray(contacts);
+
+        String[] whereArgs = idStrings.toArray(new String[idStrings.size()]);
+        String inList = " in (" + ContactUtils.makeQuestionMarkList(idStrings) + ")";
+
+        Map<Long, ContactData> dataMap = new HashMap<Long, ContactData>();
+        Cursor c = null;
+        try {
+            c = mUtils.mResolver.query(Data.CONTENT_URI, DATA_PROJECTION,
+                                       Data.CONTACT_ID + inList, whereArgs, null);
             while (c.moveToNext()) {
-                long id = c.getLong(c.getColumnIndex(Data.CONTACT_ID));
-                if (!dataMap.containsKey(id)) dataMap.put(id, new ContactData());
+                long id = c.getLong(0);
                 ContactData d = dataMap.get(id);
-                if (d.lastUpdated == null && VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN_MR2) {
-                    d.lastUpdated = mUtils.getLastUpdated(id);
-                }
-                String mime = c.getString(c.getColumnIndex(Data.MIMETYPE));
-                if (mime.equals(StructuredName.CONTENT_ITEM_TYPE)) {
-                    d.oName = addString(d.oName, c, "displayName", StructuredName.DISPLAY_NAME);
-                    d.oName = addArrayTop(d.oName, c, "honorificPrefixes", StructuredName.PREFIX);
-                    d.oName = addArrayTop(d.oName, c, "givenNames", StructuredName.GIVEN_NAME);
-                    d.oName = addArrayTop(d.oName, c, "additionalNames", StructuredName.MIDDLE_NAME);
-                    d.oName = addArrayTop(d.oName, c, "familyNames", StructuredName.FAMILY_NAME);
-                    d.oName = addArrayTop(d.oName, c, "honorificSuffixes", StructuredName.SUFFIX);
-                } else if (mime.equals(Nickname.CONTENT_ITEM_TYPE)) {
-                    d.oName = addArrayTop(d.oName, c, "nicknames", Nickname.NAME);
-                } else if (mime.equals(Email.CONTENT_ITEM_TYPE)) {
-                    d.aEmails = addTypeArray(d.aEmails, c, Email.DATA,
-                                             ContactConstants.emailTypeMap,
-                                             ContactConstants.emailTypeValuesMap);
-                } else if (mime.equals(Photo.CONTENT_ITEM_TYPE)) {
-                    d.aPhotos = addString(d.aPhotos, c, Photo.PHOTO);
-                } else if (mime.equals(Website.CONTENT_ITEM_TYPE)) {
-                    d.aUrls = addTypeArray(d.aUrls, c, Website.DATA,
-                                           ContactConstants.websiteTypeMap,
-                                           ContactConstants.websiteTypeValuesMap);
-                } else if (mime.equals(GroupMembership.CONTENT_ITEM_TYPE)) {
-                    String title = mUtils.getGroupTitle(
-                            c.getString(c.getColumnIndex(GroupMembership.GROUP_ROW_ID)));
-                    if (title != null) {
-                        if (d.aCategories == null) d.aCategories = new JSONArray();
-                        d.aCategories.put(title);
-                    }
-                } else if (mime.equals(StructuredPostal.CONTENT_ITEM_TYPE)) {
-                    d.aAddresses = addTypeArray(d.aAddresses, c, StructuredPostal.DATA,
-                                                ContactConstants.addressTypeMap,
-                                                ContactConstants.addressTypeValuesMap);
-                } else if (mime.equals(Phone.CONTENT_ITEM_TYPE)) {
-                    d.aNumbers = addTypeArray(d.aNumbers, c, Phone.DATA,
-                                              ContactConstants.phoneTypeMap,
-                                              ContactConstants.phoneTypeValuesMap);
-                } else if (mime.equals(Organization.CONTENT_ITEM_TYPE)) {
-                    d.aOrganizations = addString(d.aOrganizations, c, Organization.COMPANY);
-                } else if (mime.equals(Organization.CONTENT_ITEM_TYPE)) {
-                    d.aJobTitles = addString(d.aJobTitles, c, Organization.TITLE);
-                } else if (mime.equals(Event.CONTENT_ITEM_TYPE)) {
-                    int type = Integer.valueOf(c.getString(c.getColumnIndex(Event.TYPE)));
-                    if (type == Event.TYPE_BIRTHDAY) {
-                        d.birthday = c.getString(c.getColumnIndex(Event.START_DATE));
-                    } else if (type == Event.TYPE_ANNIVERSARY) {
-                        d.anniversary = c.getString(c.getColumnIndex(Event.START_DATE));
-                    }
-                } else if (mime.equals(Note.CONTENT_ITEM_TYPE)) {
-                    d.aNotes = addString(d.aNotes, c, Note.NOTE);
-                } else if (mime.equals(Im.CONTENT_ITEM_TYPE)) {
-                    d.aImpp = addTypeArray(d.aImpp, c, Im.DATA, ContactConstants.imTypeMap,
-                                           ContactConstants.imTypeValuesMap);
-                } else if (mime.equals(ContactConstants.CUSTOM_MIMETYPE_GENDER)) {
-                    d.gender = c.getString(c.getColumnIndex(Data.DATA1));
+                if (d == null) {
+                    d = new ContactData();
+                    dataMap.put(id, d);
                 }
+                readRow(d, c);
             }
         } catch (Exception e) {
             if (e instanceof NumberFormatException || e instanceof SecurityException) {
-                Log.e(TAG, "getContacts: " + e.toString());
+                Log.e(TAG, "nextPage: " + e.toString());
                 return new JSONArray();
             } else {
                 throw new RuntimeException(e);
@@ -332,14 +523,27 @@ public class ContactFinder {
             if (c != null) c.close();
         }
 
-        int i = 0;
-        JSONArray returnArray = new JSONArray();
-        for (Map.Entry<Long, ContactData> entry : dataMap.entrySet()) {
-            if (resultsLimit != null && ++i > resultsLimit) break;
-            JSONObject o = entry.getValue().ensurePut(entry.getKey());
-            returnArray.put(o);
+        readContactColumns(dataMap, cursor.mDisplayPhotos,
+                           ContactsContract.Contacts._ID + inList, whereArgs);
+
+        for (int i = from; i < to; i++) {
+            ContactData d = dataMap.get(cursor.mIds[i]);
+            if (contacts[i - from] != null || d == null) continue;
+            contacts[i - from] = d.ensurePut(cursor.mIds[i]);
+            if (mCache != null) {
+                mCache.putContact(cursor.mIds[i], cursor.mDisplayPhotos,
+                                  contacts[i - from], generation);
+            }
         }
-        return returnArray;
+        return toJSONArray(contacts);
+    }
+
+    private static JSONArray toJSONArray(JSONObject[] contacts) {
+        JSONArray array = new JSONArray();
+        for (JSONObject contact : contacts) {
+            if (contact != null) array.put(contact);
+        }
+        return array;
     }
 
     private FindOption createFindIDOption(String findString) {
@@ -382,16 +586,82 @@ public class ContactFinder {
         }
     }
 
-    public JSONArray find(String findString) {
-        Set<String> ids = getContactIds(createFindIDOption(findString));
-        if (ids == null) return new JSONArray();
+    /**
+     * Resolve the ids of the contacts matching the options, in the
+     * requested order and up to resultsLimit. The details are read page by
+     * page with nextPage().
+     * @return the cursor, or null if the contacts can't be read.
+     */
+    public FindCursor openCursor(String findString) {
+        if (mCache == null) return resolveCursor(findString);
+        String key = ContactQueryCache.getKey(findString);
+        FindCursor cursor = mCache.getCursor(key);
+        if (cursor != null) return cursor;
+        int generation = mCache.getGeneration();
+        cursor = resolveCursor(findString);
+        if (cursor != null) mCache.putCursor(key, cursor, generation);
+        return cursor;
+    }
+
+    private FindCursor resolveCursor(String findString) {
+        FindOption findOption = createFindIDOption(findString);
+        if (findOption == null) return null;
         ContactJson findJson = new ContactJson(findString);
         List<String> sortBy = findJson.getStringArray("sortBy");
         String order = getSortOrder(sortBy, findJson.getString("sortOrder"));
         String orderMimeType = (order == null) ? null :
                 ContactConstants.contactDataMap.get(sortBy.get(0)).second;
         String resultsLimit = findJson.getString("resultsLimit");
-        Long resultsLimitLong = (resultsLimit == null) ? null : Long.valueOf(resultsLimit);
-        return getContacts(ids, order, orderMimeType, resultsLimitLong);
+        long limit = (resultsLimit == null) ? Long.MAX_VALUE : Long.valueOf(resultsLimit);
+
+        FindCursor cursor = new FindCursor();
+        cursor.mDisplayPhotos = ContactPhotos.SIZE_DISPLAY.equals(findJson.getString("photoSize"));
+        LongIntMap matched = null;
+        if (findOption.mWhere != null) {
+            // The matched set is sorted afterwards, so it can't be truncated.
+            matched = getMatchedContactIds(findOption, order == null ? limit : Long.MAX_VALUE);
+            if (matched == null) return null;
+        }
+
+        if (order == null) {
+            if (matched == null) return addAllContactIds(cursor, null, limit) ? cursor : null;
+            for (int i = 0; i < matched.size(); i++) cursor.add(matched.keyAt(i));
+            return cursor;
+        }
+
+        if (orderMimeType == null) {
+            // Sorted by id.
+            if (matched == null) {
+                if (!addAllContactIds(cursor, null, Long.MAX_VALUE)) return null;
+            } else {
+                for (int i = 0; i < matched.size(); i++) cursor.add(matched.keyAt(i));
+            }
+            if (order.endsWith(" DESC")) cursor.reverse();
+            cursor.mSize = (int) Math.min(cursor.mSize, limit);
+            return cursor;
+        }
+
+        LongIntMap sorted = addSortedContactIds(cursor, matched, order, orderMimeType, limit);
+        if (sorted == null) return null;
+        // Contacts without the sorting field follow, by id.
+        if (matched == null) {
+            if (!addAllContactIds(cursor, sorted, limit)) return null;
+        } else {
+            for (int i = 0; i < matched.size() && cursor.mSize < limit; i++) {
+                if (!sorted.containsKey(matched.keyAt(i))) cursor.add(matched.keyAt(i));
+            }
+        }
+        return cursor;
+    }
+
+    public JSONArray find(String findString) {
+        FindCursor cursor = openCursor(findString);
+        JSONArray results = new JSONArray();
+        if (cursor == null) return results;
+        while (cursor.hasMore()) {
+            JSONArray page = nextPage(cursor, DEFAULT_PAGE_SIZE);
+            for (int i = 0; i < page.length(); i++) results.put(page.opt(i));
+        }
+        return results;
     }
 }
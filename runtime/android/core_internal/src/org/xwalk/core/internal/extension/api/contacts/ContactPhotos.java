@@ -0,0 +1,47 @@
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.extension.api.contacts;
+
+import android.content.ContentUris;
+import android.net.Uri;
+import android.provider.ContactsContract;
+
+/**
+ * Contact photos are not inlined in find() results. Each photo is exposed as
+ * a content:// URL of the contacts provider instead, which the page loads
+ * like any other image through the content scheme of the resource loader,
+ * only when it displays it.
+ *
+ * Two sizes are available: the thumbnail, stored pre-scaled by the provider,
+ * and the display size photo when the contact has one.
+ */
+public class ContactPhotos {
+    public static final String SIZE_THUMBNAIL = "thumbnail";
+    public static final String SIZE_DISPLAY = "display";
+
+    private static final String PHOTO_URL_PREFIX =
+            ContactsContract.Contacts.CONTENT_URI.toString() + "/";
+
+    public static String getThumbnailUrl(long contactId) {
+        return getPhotoUri(contactId, ContactsContract.Contacts.Photo.CONTENT_DIRECTORY).toString();
+    }
+
+    public static String getDisplayPhotoUrl(long contactId) {
+        return getPhotoUri(contactId, ContactsContract.Contacts.Photo.DISPLAY_PHOTO).toString();
+    }
+
+    /**
+     * @return whether value is a photo URL returned by find(), as opposed to
+     *         photo data given by the page.
+     */
+    public static boolean isPhotoUrl(String value) {
+        return value != null && value.startsWith(PHOTO_URL_PREFIX);
+    }
+
+    private static Uri getPhotoUri(long contactId, String directory) {
+        Uri contactUri = ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, contactId);
+        return Uri.withAppendedPath(contactUri, directory);
+    }
+}
@@ -0,0 +1,131 @@
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.extension.api.contacts;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Caches the results of recent find() calls: the ordered contact ids per
+ * normalized find options, and the built contacts by id.
+ *
+ * The whole cache is dropped as soon as the contacts provider notifies a
+ * change, so a repeated query on an unchanged address book doesn't hit the
+ * provider. Results computed while a change happened are not stored, as
+ * they may predate it.
+ */
+public class ContactQueryCache {
+    private static final String TAG = "ContactQueryCache";
+    private static final int MAX_QUERIES = 16;
+    private static final int MAX_CONTACTS = 500;
+
+    @SuppressWarnings("serial")
+    private final LinkedHashMap<String, ContactFinder.FindCursor> mQueries =
+            new LinkedHashMap<String, ContactFinder.FindCursor>(MAX_QUERIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, ContactFinder.FindCursor> eldest) {
+                    return size() > MAX_QUERIES;
+                }
+            };
+    // Keyed by contact id and photo size, see getContactKey().
+    private final LruCache<Long, JSONObject> mContacts =
+            new LruCache<Long, JSONObject>(MAX_CONTACTS);
+    private int mGeneration = 0;
+
+    /**
+     * @return a value to pass to the put methods, so that results read
+     *         across an invalidation are dropped.
+     */
+    public synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    public synchronized void invalidate() {
+        mGeneration++;
+        mQueries.clear();
+        mContacts.evictAll();
+    }
+
+    /**
+     * @return a new cursor at the first page, or null if the query isn't cached.
+     */
+    public synchronized ContactFinder.FindCursor getCursor(String key) {
+        ContactFinder.FindCursor cursor = mQueries.get(key);
+        return (cursor == null) ? null : cursor.copy();
+    }
+
+    public synchronized void putCursor(String key, ContactFinder.FindCursor cursor,
+            int generation) {
+        if (generation != mGeneration) return;
+        mQueries.put(key, cursor.copy());
+    }
+
+    public JSONObject getContact(long id, boolean displayPhotos) {
+        return mContacts.get(getContactKey(id, displayPhotos));
+    }
+
+    public synchronized void putContact(long id, boolean displayPhotos, JSONObject contact,
+            int generation) {
+        if (generation != mGeneration) return;
+        mContacts.put(getContactKey(id, displayPhotos), contact);
+    }
+
+    private static Long getContactKey(long id, boolean displayPhotos) {
+        return (id << 1) | (displayPhotos ? 1 : 0);
+    }
+
+    /**
+     * Build a key which doesn't depend on the order of the fields of the
+     * find options.
+     */
+    public static String getKey(String options) {
+        if (options == null) return "";
+        try {
+            return normalize(new JSONObject(options));
+        } catch (JSONException e) {
+            Log.e(TAG, "getKey - Failed to parse find options: " + e.toString());
+            return options;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String normalize(Object value) throws JSONException {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            List<String> names = new ArrayList<String>();
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) names.add(keys.next());
+            Collections.sort(names);
+            StringBuilder builder = new StringBuilder("{");
+            for (String name : names) {
+                builder.append(JSONObject.quote(name)).append(':')
+                       .append(normalize(object.get(name))).append(',');
+            }
+            return builder.append('}').toString();
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            StringBuilder builder = new StringBuilder("[");
+            for (int i = 0; i < array.length(); i++) {
+                builder.append(normalize(array.get(i))).append(',');
+            }
+            return builder.append(']').toString();
+        } else if (value instanceof String) {
+            return JSONObject.quote((String) value);
+        }
+        return String.valueOf(value);
+    }
+}
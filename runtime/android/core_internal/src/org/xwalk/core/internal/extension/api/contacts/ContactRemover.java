@@ -0,0 +1,97 @@
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.extension.api.contacts;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.os.RemoteException;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.RawContacts;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class removes contacts in bulk. The raw contacts are deleted by
+ * chunks, each chunk being a single delete operation in its own batch, so
+ * that the provider commits and other clients get a chance to run between
+ * two chunks.
+ */
+public class ContactRemover {
+    private static final String TAG = "ContactRemover";
+
+    private final ContentResolver mResolver;
+
+    public ContactRemover(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    /**
+     * Remove the given contacts.
+     * @return the count of raw contacts removed, or -1 if a batch failed.
+     */
+    public int removeAll(List<String> contactIds, ContactUtils.ProgressListener listener) {
+        return deleteByChunks(RawContacts.CONTACT_ID, contactIds, listener);
+    }
+
+    /**
+     * Remove all contacts.
+     * @return the count of raw contacts removed, or -1 if a batch failed.
+     */
+    public int clear(ContactUtils.ProgressListener listener) {
+        List<String> rawIds = new ArrayList<String>();
+        Cursor c = null;
+        try {
+            c = mResolver.query(RawContacts.CONTENT_URI, new String[]{RawContacts._ID},
+                                RawContacts.DELETED + " = 0", null, null);
+            while (c.moveToNext()) {
+                rawIds.add(c.getString(0));
+            }
+        } catch (SecurityException e) {
+            Log.e(TAG, "clear - failed to query: " + e.toString());
+            return -1;
+        } finally {
+            if (c != null) c.close();
+        }
+        return deleteByChunks(RawContacts._ID, rawIds, listener);
+    }
+
+    private int deleteByChunks(String column, List<String> ids,
+            ContactUtils.ProgressListener listener) {
+        final int chunkSize = ContactConstants.MAX_OPERATIONS_PER_BATCH;
+        int removed = 0;
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, ids.size());
+            Set<String> chunk = new LinkedHashSet<String>(ids.subList(from, to));
+            ArrayList<ContentProviderOperation> ops = new ArrayList<ContentProviderOperation>();
+            ops.add(ContentProviderOperation.newDelete(RawContacts.CONTENT_URI)
+                    .withSelection(column + " in (" + ContactUtils.makeQuestionMarkList(chunk) + ")",
+                                   chunk.toArray(new String[chunk.size()]))
+                    .build());
+            try {
+                ContentProviderResult[] results =
+                        mResolver.applyBatch(ContactsContract.AUTHORITY, ops);
+                if (results[0].count != null) removed += results[0].count;
+            } catch (Exception e) {
+                if (e instanceof RemoteException ||
+                    e instanceof OperationApplicationException ||
+                    e instanceof SecurityException) {
+                    Log.e(TAG, "deleteByChunks - Failed to apply batch: " + e.toString());
+                    return -1;
+                } else {
+                    throw new RuntimeException(e);
+                }
+            }
+            if (listener != null) listener.onProgress(to, ids.size());
+        }
+        return removed;
+    }
+}
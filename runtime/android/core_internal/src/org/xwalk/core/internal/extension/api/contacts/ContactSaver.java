@@ -6,8 +6,10 @@ package org.xwalk.core.internal.extension.api.contacts;
 
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderOperation.Builder;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.OperationApplicationException;
+import android.net.Uri;
 import android.os.RemoteException;
 import android.provider.ContactsContract;
 import android.provider.ContactsContract.CommonDataKinds.Event;
@@ -22,7 +24,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -42,6 +43,27 @@ public class ContactSaver {
     private String mId;
     private boolean mIsUpdate;
     private ArrayList<ContentProviderOperation> mOps;
+    // Index in mOps of the first operation of the current contact.
+    private int mFirstIndex;
+    // Index in mOps of the insertion of the new raw contact.
+    private int mRawContactIndex;
+    // The "first-last" positions of the saveAll() batches which failed.
+    private final List<String> mFailedRanges = new ArrayList<String>();
+
+    // A contact whose operations are built but not applied yet.
+    private static class PreparedContact {
+        final JSONObject mContact;
+        final String mId;
+        final boolean mIsUpdate;
+        final int mRawContactIndex;
+
+        PreparedContact(JSONObject contact, String id, boolean isUpdate, int rawContactIndex) {
+            mContact = contact;
+            mId = id;
+            mIsUpdate = isUpdate;
+            mRawContactIndex = rawContactIndex;
+        }
+    }
 
     public ContactSaver(ContentResolver resolver) {
         mUtils = new ContactUtils(resolver);
@@ -59,7 +81,7 @@ public class ContactSaver {
     // Add a new contact
     private Builder newInsertBuilder(String mimeType) {
         Builder builder = ContentProviderOperation.newInsert(Data.CONTENT_URI);
-        builder.withValueBackReference(Data.RAW_CONTACT_ID, 0);
+        builder.withValueBackReference(Data.RAW_CONTACT_ID, mRawContactIndex);
         builder.withValue(Data.MIMETYPE, mimeType);
         return builder;
     }
@@ -143,7 +165,7 @@ public class ContactSaver {
                         }
                         builder.withValue(entry.getKey(), value);
                     }
-                    mOps.add(builder.build());
+                    addOperation(builder);
                 }
             }
         } catch (JSONException e) {
@@ -160,7 +182,7 @@ public class ContactSaver {
             Builder builder = newInsertContactOrFieldBuilder(mimeType);
             if (builder == null) return;
             builder.withValue(data, entry);
-            mOps.add(builder.build());
+            addOperation(builder);
         }
     }
 
@@ -178,7 +200,7 @@ public class ContactSaver {
         Builder builder = newBuilder(mimeType);
         builder.withValue(data, dateString);
         if (type != null) builder.withValue(type, dateType);
-        mOps.add(builder.build());
+        addOperation(builder);
     }
 
     private void buildByEvent(String eventName, int eventType) {
@@ -189,6 +211,8 @@ public class ContactSaver {
         for (ContactMap contactMap : ContactConstants.contactMapList) {
             if (contactMap.mTypeMap != null) { // Field that has type.
                 buildByArray(contactMap);
+            } else if (contactMap.mName.equals("photos")) {
+                buildPhotos(contactMap);
             } else { // Field that contains no type.
                 buildByArray(contactMap, contactMap.mDataMap.get("data"),
                              mJson.getStringArray(contactMap.mName));
@@ -196,6 +220,22 @@ public class ContactSaver {
         }
     }
 
+    // A contact returned by find() holds URLs of its stored photos, they
+    // are kept as is instead of being written back as photo data.
+    private void buildPhotos(ContactMap contactMap) {
+        List<String> photos = mJson.getStringArray(contactMap.mName);
+        for (String photo : photos) {
+            if (ContactPhotos.isPhotoUrl(photo)) return;
+        }
+        buildByArray(contactMap, contactMap.mDataMap.get("data"), photos);
+    }
+
+    private void addOperation(Builder builder) {
+        // Let the provider yield its transaction between two contacts of a batch.
+        if (mOps.size() == mFirstIndex && mFirstIndex > 0) builder.withYieldAllowed(true);
+        mOps.add(builder.build());
+    }
+
     private void PutToContact(String name, String value) {
         if (name == null) return;
         try {
@@ -205,13 +245,17 @@ public class ContactSaver {
         }
     }
 
-    public JSONObject save(String saveString) {
-        mOps = new ArrayList<ContentProviderOperation>();
+    /**
+     * Build the operations saving one contact and append them to ops.
+     * @return the contact to complete once ops are applied, or null if it can't be parsed.
+     */
+    private PreparedContact prepare(String saveString, ArrayList<ContentProviderOperation> ops) {
+        mOps = ops;
         try {
             mContact = new JSONObject(saveString);
         } catch (JSONException e) {
             Log.e(TAG, "Failed to parse json data: " + e.toString());
-            return new JSONObject();
+            return null;
         }
 
         mJson = new ContactJson(mContact);
@@ -220,14 +264,14 @@ public class ContactSaver {
         mId = mJson.getString("id");
         mIsUpdate = mUtils.hasID(mId);
 
-        Set<String> oldRawIds = null;
+        mFirstIndex = mOps.size();
         if (!mIsUpdate) { // Create a null record for inserting later
-            oldRawIds = mUtils.getCurrentRawIds();
             mId = null;
+            mRawContactIndex = mOps.size();
             builder = ContentProviderOperation.newInsert(ContactsContract.RawContacts.CONTENT_URI);
             builder.withValue(ContactsContract.RawContacts.ACCOUNT_TYPE, null);
             builder.withValue(ContactsContract.RawContacts.ACCOUNT_NAME, null);
-            mOps.add(builder.build());
+            addOperation(builder);
         }
 
         // W3C                  Android
@@ -250,13 +294,13 @@ public class ContactSaver {
             builder.withValue(StructuredName.MIDDLE_NAME, nameJson.getFirstValue("additionalNames"));
             builder.withValue(StructuredName.PREFIX, nameJson.getFirstValue("honorificPrefixes"));
             builder.withValue(StructuredName.SUFFIX, nameJson.getFirstValue("honorificSuffixes"));
-            mOps.add(builder.build());
+            addOperation(builder);
 
             // Nickname belongs to another mimetype, so we need another builder for it.
             if (name.has("nicknames")) {
                 builder = newBuilder(Nickname.CONTENT_ITEM_TYPE);
                 builder.withValue(Nickname.NAME, nameJson.getFirstValue("nicknames"));
-                mOps.add(builder.build());
+                addOperation(builder);
             }
         }
 
@@ -273,7 +317,7 @@ public class ContactSaver {
             if (Arrays.asList("male", "female", "other", "none", "unknown").contains(gender)) {
                 builder = newBuilder(ContactConstants.CUSTOM_MIMETYPE_GENDER);
                 builder.withValue(Data.DATA1, gender);
-                mOps.add(builder.build());
+                addOperation(builder);
             }
         }
 
@@ -282,36 +326,95 @@ public class ContactSaver {
 
         buildByContactMapList();
 
-        // Perform the operation batch
+        return new PreparedContact(mContact, mId, mIsUpdate, mRawContactIndex);
+    }
+
+    /**
+     * Fill in the id and lastUpdated of a saved contact.
+     * @param results the results of the batch holding the contact operations.
+     */
+    private JSONObject complete(PreparedContact prepared, ContentProviderResult[] results) {
+        mContact = prepared.mContact;
+        mId = prepared.mId;
+        if (!prepared.mIsUpdate) {
+            // The new raw contact is the first operation of the contact.
+            Uri rawContactUri = results[prepared.mRawContactIndex].uri;
+            mId = (rawContactUri == null) ? null :
+                    mUtils.getId(rawContactUri.getLastPathSegment());
+            if (mId == null) {
+                Log.e(TAG, "Failed to get the id of the new contact " + rawContactUri);
+                return mContact;
+            }
+            PutToContact("id", mId);
+        }
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.JELLY_BEAN_MR2 ) {
+            PutToContact("lastUpdated", String.valueOf(mUtils.getLastUpdated(Long.valueOf(mId))));
+        }
+        return mContact;
+    }
+
+    private ContentProviderResult[] apply(ArrayList<ContentProviderOperation> ops) {
         try {
-            mUtils.mResolver.applyBatch(ContactsContract.AUTHORITY, mOps);
+            return mUtils.mResolver.applyBatch(ContactsContract.AUTHORITY, ops);
         } catch (Exception e) {
             if (e instanceof RemoteException ||
                 e instanceof OperationApplicationException ||
                 e instanceof SecurityException) {
                 Log.e(TAG, "Failed to apply batch: " + e.toString());
-                return new JSONObject();
+                return null;
             } else {
                 throw new RuntimeException(e);
             }
         }
+    }
 
-        // If it is a new contact, need to get and return its auto-generated id.
-        if (!mIsUpdate) {
-            Set<String> newRawIds = mUtils.getCurrentRawIds();
-            if (newRawIds == null) return new JSONObject();
-            newRawIds.removeAll(oldRawIds);
-            if (newRawIds.size() != 1) {
-                Log.e(TAG, "Something wrong after batch applied, "
-                        + "new raw ids are: " + newRawIds.toString());
-                return mContact;
+    public JSONObject save(String saveString) {
+        ArrayList<ContentProviderOperation> ops = new ArrayList<ContentProviderOperation>();
+        PreparedContact prepared = prepare(saveString, ops);
+        if (prepared == null) return new JSONObject();
+        ContentProviderResult[] results = apply(ops);
+        if (results == null) return new JSONObject();
+        return complete(prepared, results);
+    }
+
+    /**
+     * Save many contacts, applying their operations by batches of about
+     * ContactConstants.MAX_OPERATIONS_PER_BATCH.
+     * @return the saved contacts, or empty objects for the ones which failed.
+     *         The batches which failed are then listed by getFailedRanges().
+     */
+    public JSONArray saveAll(JSONArray contacts, ContactUtils.ProgressListener listener) {
+        mFailedRanges.clear();
+        JSONArray saved = new JSONArray();
+        ArrayList<ContentProviderOperation> ops = new ArrayList<ContentProviderOperation>();
+        // Null for the contacts which couldn't be parsed, to keep the positions.
+        List<PreparedContact> batch = new ArrayList<PreparedContact>();
+        for (int i = 0; i < contacts.length(); i++) {
+            String contact = contacts.optString(i, null);
+            batch.add(contact == null ? null : prepare(contact, ops));
+            boolean last = (i == contacts.length() - 1);
+            if (!last && ops.size() < ContactConstants.MAX_OPERATIONS_PER_BATCH) continue;
+
+            ContentProviderResult[] results = ops.isEmpty() ? null : apply(ops);
+            if (!ops.isEmpty() && results == null) {
+                mFailedRanges.add((i + 1 - batch.size()) + "-" + i);
             }
-            mId = mUtils.getId(newRawIds.iterator().next());
-            PutToContact("id", mId);
-        }
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.JELLY_BEAN_MR2 ) {
-            PutToContact("lastUpdated", String.valueOf(mUtils.getLastUpdated(Long.valueOf(mId))));
+            for (PreparedContact prepared : batch) {
+                saved.put((prepared == null || results == null) ?
+                        new JSONObject() : complete(prepared, results));
+            }
+            if (listener != null) listener.onProgress(i + 1, contacts.length());
+            ops = new ArrayList<ContentProviderOperation>();
+            batch.clear();
         }
-        return mContact;
+        return saved;
+    }
+
+    /**
+     * @return the "first-last" positions of the contacts of each batch which
+     *         failed in the last saveAll(), empty if all were applied.
+     */
+    public List<String> getFailedRanges() {
+        return mFailedRanges;
     }
 }
@@ -21,6 +21,7 @@ import android.util.Log;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -28,6 +29,14 @@ import java.util.Set;
 public class ContactUtils {
     private static final String TAG = "ContactUtils";
     public ContentResolver mResolver;
+
+    /**
+     * Notified after each batch of a bulk operation.
+     */
+    public interface ProgressListener {
+        void onProgress(int done, int total);
+    }
+
     public ContactUtils(ContentResolver resolver) {
         mResolver = resolver;
     }
@@ -247,6 +256,27 @@ public class ContactUtils {
         }
     }
 
+    /**
+     * @return the titles of the visible groups by group id.
+     */
+    public Map<String, String> getGroupTitles() {
+        final String selection = Groups.DELETED + "=? and " + Groups.GROUP_VISIBLE + "=?";
+        Map<String, String> titles = new HashMap<String, String>();
+        Cursor c = null;
+        try {
+            c = mResolver.query(Groups.CONTENT_URI, new String[]{Groups._ID, Groups.TITLE},
+                                selection, new String[]{"0", "1"}, null);
+            while (c.moveToNext()) {
+                titles.put(c.getString(0), c.getString(1));
+            }
+        } catch (SecurityException e) {
+            Log.e(TAG, "getGroupTitles: " + e.toString());
+        } finally {
+            if (c != null) c.close();
+        }
+        return titles;
+    }
+
     public String getEnsuredGroupId(String groupTitle) {
         String groupId = getGroupId(groupTitle);
         if (groupId == null) {
@@ -306,7 +336,7 @@ public class ContactUtils {
      * @param long e.g. 61
      * @return string e.g. "1969-12-31T00:01:01Z"
      */
-    private String timeConvertToJS(long seconds) {
+    String timeConvertToJS(long seconds) {
         final SimpleDateFormat df =
                 new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", java.util.Locale.getDefault());
         return df.format(new java.util.Date(seconds));
@@ -7,22 +7,26 @@ package org.xwalk.core.internal.extension.api.contacts;
 import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.OperationApplicationException;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.RemoteException;
 import android.provider.ContactsContract;
 import android.provider.ContactsContract.RawContacts;
+import android.text.TextUtils;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import org.xwalk.core.internal.extension.XWalkExtension;
+import org.xwalk.core.internal.extension.XWalkExtensionCommandRouter;
 import org.xwalk.core.internal.extension.XWalkExtensionContext;
+import org.xwalk.core.internal.extension.XWalkExtensionMessage;
 
 public class Contacts extends XWalkExtension {
     public static final String JS_API_PATH = "jsapi/contacts_api.js";
@@ -30,39 +34,123 @@ public class Contacts extends XWalkExtension {
     private static final String TAG = "Contacts";
     private static final String NAME = "xwalk.experimental.contacts";
 
+    private static final int MAX_PENDING_FINDS = 16;
+
     private final ContactEventListener mObserver;
     private final ContentResolver mResolver;
+    private final Handler mHandler;
+    // Bulk operations run one at a time on this thread.
+    private final HandlerThread mBatchThread;
+    private final Handler mBatchHandler;
+    // Paged searches waiting for findNext, by instance and continuation
+    // token, so an instance can't read or close the searches of another.
+    // The least recently used ones are dropped first.
+    private final LinkedHashMap<String, ContactFinder.FindCursor> mFindCursors =
+            new LinkedHashMap<String, ContactFinder.FindCursor>(MAX_PENDING_FINDS, 0.75f, true);
+    private int mNextFindToken = 0;
+    private final ContactQueryCache mQueryCache = new ContactQueryCache();
+    private final XWalkExtensionCommandRouter mRouter = new XWalkExtensionCommandRouter(NAME);
 
     public Contacts(String jsApiContent, XWalkExtensionContext context) {
         super(NAME, jsApiContent, context);
         mResolver = context.getContext().getContentResolver();
-        mObserver = new ContactEventListener(new Handler(), this, mResolver);
+        mHandler = new Handler();
+        mObserver = new ContactEventListener(mHandler, this, mResolver);
+        mBatchThread = new HandlerThread(TAG);
+        mBatchThread.start();
+        mBatchHandler = new Handler(mBatchThread.getLooper());
         mResolver.registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, mObserver);
+        initCommands();
     }
 
     @Override
     public void onMessage(int instanceID, String message) {
-        if (message.isEmpty()) return;
-        try {
-            JSONObject jsonInput = new JSONObject(message);
-            String cmd = jsonInput.getString("cmd");
-            if (cmd.equals("addEventListener")) {
+        mRouter.dispatch(instanceID, message);
+    }
+
+    // A command answering its promise with the returned data.
+    private abstract class Request implements XWalkExtensionCommandRouter.Command {
+        @Override
+        public void run(int instanceID, XWalkExtensionMessage message) throws JSONException {
+            // Parse first, the promise id then comes from the parsed payload.
+            JSONObject jsonInput = message.getJson();
+            JSONObject jsonOutput = new JSONObject();
+            jsonOutput.put("_promise_id", message.getPromiseId());
+            Object data = handle(instanceID, jsonInput);
+            if (data != null) jsonOutput.put("data", data);
+            postMessage(instanceID, jsonOutput.toString());
+        }
+
+        abstract Object handle(int instanceID, JSONObject jsonInput) throws JSONException;
+    }
+
+    private void initCommands() {
+        mRouter.register("addEventListener", new XWalkExtensionCommandRouter.Command() {
+            @Override
+            public void run(int instanceID, XWalkExtensionMessage message) {
                 mObserver.startListening();
-                return;
             }
-            JSONObject jsonOutput = new JSONObject();
-            jsonOutput.put("_promise_id", jsonInput.getString("_promise_id"));
-            if (cmd.equals("save")) {
-                ContactSaver saver = new ContactSaver(mResolver);
-                jsonOutput.put("data", saver.save(jsonInput.getString("contact")));
-            } else if (cmd.equals("find")) {
-                ContactFinder finder = new ContactFinder(mResolver);
+        });
+        mRouter.register("setChangeCoalescingWindow", new XWalkExtensionCommandRouter.Command() {
+            @Override
+            public void run(int instanceID, XWalkExtensionMessage message) throws JSONException {
+                mObserver.setCoalescingWindow(message.getJson().getLong("window"));
+            }
+        });
+
+        XWalkExtensionCommandRouter.Command batch = new XWalkExtensionCommandRouter.Command() {
+            @Override
+            public void run(int instanceID, XWalkExtensionMessage message) throws JSONException {
+                // Change notifications come asynchronously, don't serve stale
+                // results meanwhile.
+                mQueryCache.invalidate();
+                JSONObject jsonInput = message.getJson();
+                runBatch(instanceID, message.getCommand(), message.getPromiseId(), jsonInput);
+            }
+        };
+        mRouter.register("saveAll", batch)
+               .register("removeAll", batch)
+               .register("clear", batch);
+
+        mRouter.register("save", new Request() {
+            @Override
+            Object handle(int instanceID, JSONObject jsonInput) throws JSONException {
+                mQueryCache.invalidate();
+                return new ContactSaver(mResolver).save(jsonInput.getString("contact"));
+            }
+        });
+        mRouter.register("find", new Request() {
+            @Override
+            Object handle(int instanceID, JSONObject jsonInput) throws JSONException {
+                ContactFinder finder = new ContactFinder(mResolver, mQueryCache);
                 String options = jsonInput.has("options") ? jsonInput.getString("options") : null;
-                JSONArray results = finder.find(options);
-                jsonOutput.put("data", results);
-            } else if (cmd.equals("remove")) {
+                if (jsonInput.has("pageSize")) {
+                    return readFirstPage(instanceID, finder, finder.openCursor(options),
+                            jsonInput.getInt("pageSize"));
+                }
+                return finder.find(options);
+            }
+        });
+        mRouter.register("findNext", new Request() {
+            @Override
+            Object handle(int instanceID, JSONObject jsonInput) throws JSONException {
+                return readNextPage(
+                        instanceID, jsonInput.getString("token"), jsonInput.getInt("pageSize"));
+            }
+        });
+        mRouter.register("findClose", new Request() {
+            @Override
+            Object handle(int instanceID, JSONObject jsonInput) throws JSONException {
+                mFindCursors.remove(getFindCursorKey(instanceID, jsonInput.getString("token")));
+                return null;
+            }
+        });
+        mRouter.register("remove", new XWalkExtensionCommandRouter.Command() {
+            @Override
+            public void run(int instanceID, XWalkExtensionMessage message) throws JSONException {
+                mQueryCache.invalidate();
                 ArrayList<ContentProviderOperation> ops = new ArrayList<ContentProviderOperation>();
-                String[] args = new String[] { jsonInput.getString("contactId") };
+                String[] args = new String[] { message.getJson().getString("contactId") };
                 ops.add(ContentProviderOperation.newDelete(RawContacts.CONTENT_URI)
                         .withSelection(RawContacts.CONTACT_ID + "=?", args).build());
                 try {
@@ -77,20 +165,22 @@ public class Contacts extends XWalkExtension {
                         throw new RuntimeException(e);
                     }
                 }
-            } else if (cmd.equals("clear")) {
-                handleClear();
-            } else {
-                Log.e(TAG, "Unexpected message received: " + message);
-                return;
+                JSONObject jsonOutput = new JSONObject();
+                jsonOutput.put("_promise_id", message.getPromiseId());
+                postMessage(instanceID, jsonOutput.toString());
             }
-            this.postMessage(instanceID, jsonOutput.toString());
-        } catch (JSONException e) {
-            Log.e(TAG, e.toString());
-        }
+        });
+    }
+
+    // Called by the observer, possibly on its own thread.
+    void onContactsChanged() {
+        mQueryCache.invalidate();
     }
 
     @Override
     public void onResume() {
+        // Changes made while paused were not observed.
+        mQueryCache.invalidate();
         mObserver.onResume();
         mResolver.registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, mObserver);
     }
@@ -103,22 +193,142 @@ public class Contacts extends XWalkExtension {
     @Override
     public void onDestroy() {
         mResolver.unregisterContentObserver(mObserver);
+        mObserver.onDestroy();
+        mBatchThread.quit();
+        mFindCursors.clear();
+        mQueryCache.invalidate();
     }
 
-    // Remove all contacts.
-    private void handleClear() {
-        Cursor c = null;
-        try {
-            c = mResolver.query(ContactsContract.Contacts.CONTENT_URI, null, null, null, null);
-            while (c.moveToNext()) {
-                String key = c.getString(c.getColumnIndex(ContactsContract.Contacts.LOOKUP_KEY));
-                Uri uri = Uri.withAppendedPath(ContactsContract.Contacts.CONTENT_LOOKUP_URI, key);
-                mResolver.delete(uri, null, null);
+    private static String getFindCursorKey(int instanceID, String token) {
+        return instanceID + ":" + token;
+    }
+
+    private JSONObject readFirstPage(int instanceID, ContactFinder finder,
+            ContactFinder.FindCursor cursor, int pageSize) throws JSONException {
+        if (cursor == null) {
+            return readPage(instanceID, finder, new ContactFinder.FindCursor(), null, 0);
+        }
+        String token = String.valueOf(mNextFindToken++);
+        return readPage(instanceID, finder, cursor, token, pageSize);
+    }
+
+    private JSONObject readNextPage(int instanceID, String token, int pageSize)
+            throws JSONException {
+        ContactFinder.FindCursor cursor = mFindCursors.remove(getFindCursorKey(instanceID, token));
+        if (cursor == null) {
+            JSONObject error = new JSONObject();
+            error.put("error", "Invalid or expired continuation token: " + token);
+            return error;
+        }
+        return readPage(
+                instanceID, new ContactFinder(mResolver, mQueryCache), cursor, token, pageSize);
+    }
+
+    // Read one page and keep the cursor under token if there are more.
+    private JSONObject readPage(int instanceID, ContactFinder finder,
+            ContactFinder.FindCursor cursor, String token, int pageSize) throws JSONException {
+        JSONObject page = new JSONObject();
+        page.put("contacts", finder.nextPage(cursor, pageSize));
+        if (cursor.hasMore()) {
+            mFindCursors.put(getFindCursorKey(instanceID, token), cursor);
+            if (mFindCursors.size() > MAX_PENDING_FINDS) {
+                mFindCursors.remove(mFindCursors.keySet().iterator().next());
+            }
+            page.put("next", token);
+        }
+        return page;
+    }
+
+    // Run a bulk operation in background. Progress is reported after each
+    // batch and the listener fires a single change event at the end.
+    private void runBatch(final int instanceID, final String cmd, final String promiseId,
+            final JSONObject jsonInput) {
+        final ContactUtils.ProgressListener listener = new ContactUtils.ProgressListener() {
+            @Override
+            public void onProgress(int done, int total) {
+                try {
+                    JSONObject progress = new JSONObject();
+                    progress.put("done", done);
+                    progress.put("total", total);
+                    JSONObject jsonOutput = new JSONObject();
+                    jsonOutput.put("_promise_id", promiseId);
+                    jsonOutput.put("reply", "progress");
+                    jsonOutput.put("data", progress);
+                    postMessageOnHandler(instanceID, jsonOutput.toString());
+                } catch (JSONException e) {
+                    Log.e(TAG, e.toString());
+                }
+            }
+        };
+
+        mBatchHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mObserver.beginBatch();
+                try {
+                    JSONObject jsonOutput = new JSONObject();
+                    jsonOutput.put("_promise_id", promiseId);
+                    if (cmd.equals("saveAll")) {
+                        ContactSaver saver = new ContactSaver(mResolver);
+                        JSONArray saved =
+                                saver.saveAll(jsonInput.getJSONArray("contacts"), listener);
+                        List<String> failed = saver.getFailedRanges();
+                        if (failed.isEmpty()) {
+                            jsonOutput.put("data", saved);
+                        } else {
+                            jsonOutput.put("data", newError("Failed to save contacts " +
+                                    TextUtils.join(", ", failed)));
+                        }
+                    } else {
+                        ContactRemover remover = new ContactRemover(mResolver);
+                        int removed = cmd.equals("clear") ? remover.clear(listener) :
+                                remover.removeAll(new ContactJson(jsonInput).getStringArray(
+                                        "contactIds"), listener);
+                        if (removed < 0) {
+                            jsonOutput.put("data", newError("Failed to remove contacts"));
+                        } else {
+                            jsonOutput.put("data", removed);
+                        }
+                    }
+                    postMessageOnHandler(instanceID, jsonOutput.toString());
+                } catch (JSONException e) {
+                    Log.e(TAG, e.toString());
+                    postErrorOnHandler(instanceID, promiseId, "Invalid " + cmd + " request");
+                } catch (RuntimeException e) {
+                    // Unexpected failures of the provider, don't leave the
+                    // promise pending nor kill the process.
+                    Log.e(TAG, "Failed to run " + cmd + ": " + e.toString());
+                    postErrorOnHandler(instanceID, promiseId, "Failed to run " + cmd);
+                } finally {
+                    mObserver.endBatch();
+                }
             }
-        } catch (SecurityException e) {
-            Log.e(TAG, "handleClear - failed to query: " + e.toString());
-        } finally {
-            if (c != null) c.close();
+        });
+    }
+
+    private static JSONObject newError(String message) throws JSONException {
+        JSONObject error = new JSONObject();
+        error.put("error", message);
+        return error;
+    }
+
+    private void postErrorOnHandler(int instanceID, String promiseId, String message) {
+        try {
+            JSONObject jsonOutput = new JSONObject();
+            jsonOutput.put("_promise_id", promiseId);
+            jsonOutput.put("data", newError(message));
+            postMessageOnHandler(instanceID, jsonOutput.toString());
+        } catch (JSONException e) {
+            Log.e(TAG, e.toString());
         }
     }
+
+    private void postMessageOnHandler(final int instanceID, final String message) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                postMessage(instanceID, message);
+            }
+        });
+    }
 }
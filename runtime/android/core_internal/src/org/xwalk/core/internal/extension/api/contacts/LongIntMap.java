@@ -0,0 +1,94 @@
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.extension.api.contacts;
+
+import java.util.Arrays;
+
+/**
+ * A compact map from long keys to int values kept sorted by key.
+ *
+ * Keys are stored in a primitive array so that indexing the whole address
+ * book neither boxes nor allocates per entry. Appending keys in ascending
+ * order, as they come from a cursor sorted by id, is amortized O(1).
+ */
+final class LongIntMap {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] mKeys;
+    private int[] mValues;
+    private int mSize;
+
+    LongIntMap() {
+        this(INITIAL_CAPACITY);
+    }
+
+    LongIntMap(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mKeys = new long[capacity];
+        mValues = new int[capacity];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    long keyAt(int index) {
+        return mKeys[index];
+    }
+
+    int valueAt(int index) {
+        return mValues[index];
+    }
+
+    /**
+     * @return the index of key, or a negative value (~insertion point) if it's absent.
+     */
+    int indexOfKey(long key) {
+        return Arrays.binarySearch(mKeys, 0, mSize, key);
+    }
+
+    boolean containsKey(long key) {
+        return indexOfKey(key) >= 0;
+    }
+
+    void put(long key, int value) {
+        if (mSize == 0 || key > mKeys[mSize - 1]) {
+            ensureCapacity(mSize + 1);
+            mKeys[mSize] = key;
+            mValues[mSize] = value;
+            mSize++;
+            return;
+        }
+
+        int index = indexOfKey(key);
+        if (index >= 0) {
+            mValues[index] = value;
+            return;
+        }
+        index = ~index;
+        ensureCapacity(mSize + 1);
+        System.arraycopy(mKeys, index, mKeys, index + 1, mSize - index);
+        System.arraycopy(mValues, index, mValues, index + 1, mSize - index);
+        mKeys[index] = key;
+        mValues[index] = value;
+        mSize++;
+    }
+
+    boolean remove(long key) {
+        int index = indexOfKey(key);
+        if (index < 0) return false;
+        System.arraycopy(mKeys, index + 1, mKeys, index, mSize - index - 1);
+        System.arraycopy(mValues, index + 1, mValues, index, mSize - index - 1);
+        mSize--;
+        return true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mKeys.length) return;
+        int newCapacity = Math.max(capacity, mKeys.length * 2);
+        mKeys = Arrays.copyOf(mKeys, newCapacity);
+        mValues = Arrays.copyOf(mValues, newCapacity);
+    }
+}
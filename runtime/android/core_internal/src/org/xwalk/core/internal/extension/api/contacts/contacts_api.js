@@ -3,6 +3,7 @@
 // found in the LICENSE file.
 
 var _promises = {};
+var _progressCallbacks = {};
 var _next_promise_id = 0;
 var _listeners = [];
 
@@ -58,6 +59,15 @@ extension.setMessageListener(function(json) {
     return;
   }
 
+  if (msg.reply == 'progress') {
+    var onprogress = _progressCallbacks[msg._promise_id];
+    if (typeof onprogress === 'function') {
+      onprogress(_createConstClone(msg.data));
+    }
+    return;
+  }
+
+  delete _progressCallbacks[msg._promise_id];
   if (msg.data && msg.data.error) {
     _promises[msg._promise_id].reject(msg.data.error);
   } else {
@@ -74,10 +84,49 @@ exports.save = function(contact) {
   return _postMessage(msg);
 }
 
+// Contacts are transferred by pages of this size, see findPage().
+var _FIND_PAGE_SIZE = 50;
+
 exports.find = function(options) {
+  var p = new Promise();
+  var results = [];
+
+  var onPage = function(page) {
+    results.push.apply(results, page.contacts);
+    if (page.next) {
+      exports.findNext(page.next).then(onPage, function(e) { p.reject(e); });
+    } else {
+      p.fulfill(results);
+    }
+  };
+
+  exports.findPage(options).then(onPage, function(e) { p.reject(e); });
+  return p;
+};
+
+// Resolves with { contacts: [...], next: token }. When |next| is set, the
+// following contacts are read by findNext(next) and the search must be
+// released by findClose(next) if they are not needed.
+exports.findPage = function(options, pageSize) {
   var msg = {};
   msg['cmd'] = 'find';
   msg['options'] = options;
+  msg['pageSize'] = pageSize || _FIND_PAGE_SIZE;
+  return _postMessage(msg);
+};
+
+exports.findNext = function(token, pageSize) {
+  var msg = {};
+  msg['cmd'] = 'findNext';
+  msg['token'] = token;
+  msg['pageSize'] = pageSize || _FIND_PAGE_SIZE;
+  return _postMessage(msg);
+};
+
+exports.findClose = function(token) {
+  var msg = {};
+  msg['cmd'] = 'findClose';
+  msg['token'] = token;
   return _postMessage(msg);
 };
 
@@ -88,10 +137,35 @@ exports.remove = function(contactId) {
   return _postMessage(msg);
 };
 
-exports.clear = function() {
+// Bulk operations are applied by batches. |onprogress| is optionally called
+// with { done: n, total: m } after each batch, and a single contactschange
+// event is fired when the whole operation is over.
+var _postBulkMessage = function(msg, onprogress) {
+  var p = _postMessage(msg);
+  if (typeof onprogress === 'function') {
+    _progressCallbacks[msg._promise_id] = onprogress;
+  }
+  return p;
+};
+
+exports.saveAll = function(contacts, onprogress) {
+  var msg = {};
+  msg['cmd'] = 'saveAll';
+  msg['contacts'] = contacts;
+  return _postBulkMessage(msg, onprogress);
+};
+
+exports.removeAll = function(contactIds, onprogress) {
+  var msg = {};
+  msg['cmd'] = 'removeAll';
+  msg['contactIds'] = contactIds;
+  return _postBulkMessage(msg, onprogress);
+};
+
+exports.clear = function(onprogress) {
   var msg = {};
   msg['cmd'] = 'clear';
-  return _postMessage(msg);
+  return _postBulkMessage(msg, onprogress);
 }
 
 function _addListener(isOnChange, callback) {
@@ -134,6 +208,17 @@ exports.addEventListener = function(eventName, callback) {
   return _addListener(false, callback);
 }
 
+// Change notifications arriving within |window| milliseconds are merged
+// into a single contactschange event.
+exports.setChangeCoalescingWindow = function(window) {
+  if (typeof window !== 'number' || window < 0) {
+    console.log('Invalid parameters of window: ' + window);
+    return;
+  }
+  var msg = { 'cmd': 'setChangeCoalescingWindow', 'window': window };
+  extension.postMessage(JSON.stringify(msg));
+}
+
 Object.defineProperty(exports, 'oncontactschange', {
   set: function(callback) {
     _addListener(true, callback);
@@ -0,0 +1,263 @@
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.extension.api.device_capabilities;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Samples the CPU time counters of /proc/stat in background, only while
+ * somebody is interested in the load.
+ *
+ * The counters of the last RING_SIZE samples are kept in a ring buffer of
+ * preallocated arrays, and /proc/stat is parsed in place from a reused byte
+ * buffer, so a sample doesn't allocate. Index 0 of the loads is the whole
+ * CPU, index n + 1 is core n.
+ *
+ * The sampler runs as long as there is a listener, or for IDLE_INTERVALS
+ * intervals after the last getLoads() call. Each start() begins a new
+ * sampling chain on a new thread, and a chain stops reposting itself once
+ * its handler isn't the current one. Once destroyed it never starts again.
+ */
+class CPULoadSampler {
+    private static final String TAG = "CPULoadSampler";
+    private static final String SYSTEM_INFO_STAT_FILE = "/proc/stat";
+
+    static final long DEFAULT_INTERVAL = 1000;
+    static final long MIN_INTERVAL = 100;
+    private static final int RING_SIZE = 4;
+    private static final int IDLE_INTERVALS = 10;
+    // The fourth counter of a cpu line is the time spent in the idle task.
+    private static final int IDLE_FIELD = 3;
+
+    interface Listener {
+        /**
+         * Called on the sampler thread after each sample.
+         */
+        void onSample(CPULoadSampler sampler);
+    }
+
+    private final int mCoreNum;
+    private final long[][] mTotals = new long[RING_SIZE][];
+    private final long[][] mIdles = new long[RING_SIZE][];
+    private int mSampleCount = 0;
+    private final double[] mLoads;
+    private final double[] mAverageLoads;
+    private byte[] mBuffer = new byte[4096];
+
+    private final Listener mListener;
+    private boolean mListening = false;
+    private long mInterval = DEFAULT_INTERVAL;
+    private long mLastReadTime = 0;
+    private boolean mDestroyed = false;
+    private HandlerThread mThread;
+    private Handler mHandler;
+
+    private class SampleRunnable implements Runnable {
+        // The handler of the chain this runnable belongs to.
+        private final Handler mChainHandler;
+
+        SampleRunnable(Handler handler) {
+            mChainHandler = handler;
+        }
+
+        @Override
+        public void run() {
+            boolean listening;
+            synchronized (CPULoadSampler.this) {
+                if (mHandler != mChainHandler) return;
+                sample();
+                listening = mListening;
+            }
+            if (listening) mListener.onSample(CPULoadSampler.this);
+            synchronized (CPULoadSampler.this) {
+                // Stopped, and maybe restarted, meanwhile.
+                if (mHandler != mChainHandler) return;
+                if (!mListening &&
+                        SystemClock.uptimeMillis() - mLastReadTime > IDLE_INTERVALS * mInterval) {
+                    stop();
+                    return;
+                }
+                mChainHandler.postDelayed(this, mInterval);
+            }
+        }
+    }
+
+    CPULoadSampler(int coreNum, Listener listener) {
+        mCoreNum = coreNum;
+        mListener = listener;
+        for (int i = 0; i < RING_SIZE; i++) {
+            mTotals[i] = new long[coreNum + 1];
+            mIdles[i] = new long[coreNum + 1];
+        }
+        mLoads = new double[coreNum + 1];
+        mAverageLoads = new double[coreNum + 1];
+    }
+
+    /**
+     * Start notifying the listener after each sample.
+     */
+    synchronized void startListening() {
+        mListening = true;
+        start();
+    }
+
+    synchronized void stopListening() {
+        mListening = false;
+    }
+
+    synchronized void setInterval(long interval) {
+        mInterval = Math.max(interval, MIN_INTERVAL);
+    }
+
+    /**
+     * Get the load over the last interval. Never blocks on the sampler: when
+     * it's not running, /proc/stat is read once, which gives the load since
+     * the previous sample or since boot.
+     * @param loads filled with the load of the CPU then each core, from 0 to 1.
+     * @param averageLoads filled with the loads over the whole ring buffer.
+     */
+    synchronized void getLoads(double[] loads, double[] averageLoads) {
+        mLastReadTime = SystemClock.uptimeMillis();
+        if (mHandler == null && !mDestroyed) {
+            sample();
+            start();
+        }
+        System.arraycopy(mLoads, 0, loads, 0, loads.length);
+        System.arraycopy(mAverageLoads, 0, averageLoads, 0, averageLoads.length);
+    }
+
+    /**
+     * Stop sampling for good. getLoads() then returns the last loads.
+     */
+    synchronized void destroy() {
+        mDestroyed = true;
+        mListening = false;
+        stop();
+    }
+
+    private void start() {
+        if (mHandler != null || mDestroyed) return;
+        mThread = new HandlerThread(TAG);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mHandler.postDelayed(new SampleRunnable(mHandler), mInterval);
+    }
+
+    private void stop() {
+        if (mHandler == null) return;
+        mHandler.removeCallbacksAndMessages(null);
+        mThread.quit();
+        mThread = null;
+        mHandler = null;
+    }
+
+    private void sample() {
+        int current = mSampleCount % RING_SIZE;
+        if (!readStat(mTotals[current], mIdles[current])) return;
+        mSampleCount++;
+
+        int previous = (mSampleCount - 2 + RING_SIZE) % RING_SIZE;
+        int oldest = (mSampleCount - Math.min(mSampleCount, RING_SIZE)) % RING_SIZE;
+        boolean first = mSampleCount == 1;
+        for (int i = 0; i <= mCoreNum; i++) {
+            // The first sample is compared to the boot time, when all counters were 0.
+            mLoads[i] = getLoad(current, first ? -1 : previous, i);
+            mAverageLoads[i] = getLoad(current, first ? -1 : oldest, i);
+        }
+    }
+
+    private double getLoad(int to, int from, int index) {
+        long total = mTotals[to][index] - (from < 0 ? 0 : mTotals[from][index]);
+        long idle = mIdles[to][index] - (from < 0 ? 0 : mIdles[from][index]);
+        if (total <= 0) return 0.0;
+        return Math.max(0.0, Math.min(1.0, (double) (total - idle) / total));
+    }
+
+    /**
+     * Parse the cpu lines of /proc/stat into totals and idles. Cores which are
+     * offline have no line, and are left to 0.
+     */
+    private boolean readStat(long[] totals, long[] idles) {
+        int length = readFile();
+        if (length < 0) return false;
+
+        Arrays.fill(totals, 0);
+        Arrays.fill(idles, 0);
+        byte[] buffer = mBuffer;
+        int pos = 0;
+        // The cpu lines come first.
+        while (pos + 3 <= length && buffer[pos] == 'c' && buffer[pos + 1] == 'p' &&
+                buffer[pos + 2] == 'u') {
+            pos += 3;
+            int index = 0;
+            if (pos < length && buffer[pos] >= '0' && buffer[pos] <= '9') {
+                int core = 0;
+                while (pos < length && buffer[pos] >= '0' && buffer[pos] <= '9') {
+                    core = core * 10 + (buffer[pos++] - '0');
+                }
+                index = core + 1;
+            }
+
+            long total = 0;
+            long idle = 0;
+            int field = 0;
+            while (pos < length && buffer[pos] != '\n') {
+                if (buffer[pos] < '0' || buffer[pos] > '9') {
+                    pos++;
+                    continue;
+                }
+                long value = 0;
+                while (pos < length && buffer[pos] >= '0' && buffer[pos] <= '9') {
+                    value = value * 10 + (buffer[pos++] - '0');
+                }
+                total += value;
+                if (field++ == IDLE_FIELD) idle = value;
+            }
+            pos++;
+
+            if (index < totals.length) {
+                totals[index] = total;
+                idles[index] = idle;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the length read into mBuffer, or -1 on error.
+     */
+    private int readFile() {
+        FileInputStream input = null;
+        try {
+            input = new FileInputStream(SYSTEM_INFO_STAT_FILE);
+            int length = 0;
+            while (true) {
+                if (length == mBuffer.length) mBuffer = Arrays.copyOf(mBuffer, length * 2);
+                int read = input.read(mBuffer, length, mBuffer.length - length);
+                if (read < 0) break;
+                length += read;
+            }
+            return length;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read " + SYSTEM_INFO_STAT_FILE + ": " + e.toString());
+            return -1;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    Log.e(TAG, e.toString());
+                }
+            }
+        }
+    }
+}
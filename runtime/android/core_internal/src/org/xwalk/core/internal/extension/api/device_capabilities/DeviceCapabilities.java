@@ -7,7 +7,9 @@ package org.xwalk.core.internal.extension.api.device_capabilities;
 import android.util.Log;
 
 import org.xwalk.core.internal.extension.XWalkExtension;
+import org.xwalk.core.internal.extension.XWalkExtensionCommandRouter;
 import org.xwalk.core.internal.extension.XWalkExtensionContext;
+import org.xwalk.core.internal.extension.XWalkExtensionMessage;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -23,6 +25,7 @@ public class DeviceCapabilities extends XWalkExtension {
     private DeviceCapabilitiesDisplay mDisplay;
     private DeviceCapabilitiesMemory mMemory;
     private DeviceCapabilitiesStorage mStorage;
+    private final XWalkExtensionCommandRouter mRouter = new XWalkExtensionCommandRouter(NAME);
 
     public DeviceCapabilities(String jsApiContent, XWalkExtensionContext context) {
         super(NAME, jsApiContent, context);
@@ -32,49 +35,75 @@ public class DeviceCapabilities extends XWalkExtension {
         mDisplay = new DeviceCapabilitiesDisplay(this, context);
         mMemory = new DeviceCapabilitiesMemory(this, context);
         mStorage = new DeviceCapabilitiesStorage(this, context);
+
+        initCommands();
     }
 
-    private void handleMessage(int instanceID, String message) {
-        try {
-            JSONObject jsonInput = new JSONObject(message);
-            String cmd = jsonInput.getString("cmd");
-
-            if (cmd.equals("addEventListener")) {
-                String eventName = jsonInput.getString("eventName");
-                handleAddEventListener(eventName);
-            } else {
-                String promiseId = jsonInput.getString("_promise_id");
-                handleGetDeviceInfo(instanceID, promiseId, cmd);
+    private void initCommands() {
+        mRouter.register("addEventListener", new XWalkExtensionCommandRouter.Command() {
+            @Override
+            public void run(int instanceID, XWalkExtensionMessage message) throws JSONException {
+                handleAddEventListener(instanceID, message.getJson());
             }
-        } catch (JSONException e) {
-            printErrorMessage(e);
-        }
+        });
+        mRouter.register("removeEventListener", new XWalkExtensionCommandRouter.Command() {
+            @Override
+            public void run(int instanceID, XWalkExtensionMessage message) throws JSONException {
+                handleRemoveEventListener(instanceID, message.getJson());
+            }
+        });
+
+        // The info requests only need the promise id, their payload is never parsed.
+        XWalkExtensionCommandRouter.Command getDeviceInfo =
+                new XWalkExtensionCommandRouter.Command() {
+            @Override
+            public void run(int instanceID, XWalkExtensionMessage message) throws JSONException {
+                handleGetDeviceInfo(instanceID, message.getPromiseId(), message.getCommand());
+            }
+        };
+        mRouter.register("getCPUInfo", getDeviceInfo)
+               .register("getCodecsInfo", getDeviceInfo)
+               .register("getDisplayInfo", getDeviceInfo)
+               .register("getMemoryInfo", getDeviceInfo)
+               .register("getStorageInfo", getDeviceInfo);
     }
 
-    private void handleGetDeviceInfo(int instanceID, String promiseId, String cmd) {
-        try {
-            JSONObject jsonOutput = new JSONObject();
-            if (cmd.equals("getCPUInfo")) {
-                jsonOutput.put("data", mCPU.getInfo());
-            } else if (cmd.equals("getCodecsInfo")) {
-                jsonOutput.put("data", mCodecs.getInfo());
-            } else if (cmd.equals("getDisplayInfo")) {
-                jsonOutput.put("data", mDisplay.getInfo());
-            } else if (cmd.equals("getMemoryInfo")) {
-                jsonOutput.put("data", mMemory.getInfo());
-            } else if (cmd.equals("getStorageInfo")) {
-                jsonOutput.put("data", mStorage.getInfo());
-            }
-            jsonOutput.put("_promise_id", promiseId);
-            this.postMessage(instanceID, jsonOutput.toString());
-        } catch (JSONException e) {
-            printErrorMessage(e);
+    private void handleGetDeviceInfo(int instanceID, String promiseId, String cmd)
+            throws JSONException {
+        // Codecs, display and storage info come from their snapshot.
+        JSONObject data;
+        if (cmd.equals("getCPUInfo")) {
+            data = mCPU.getInfo();
+        } else if (cmd.equals("getCodecsInfo")) {
+            data = mCodecs.getInfo();
+        } else if (cmd.equals("getDisplayInfo")) {
+            data = mDisplay.getInfo();
+        } else if (cmd.equals("getMemoryInfo")) {
+            data = mMemory.getInfo();
+        } else {
+            data = mStorage.getInfo();
         }
+        JSONObject jsonOutput = new JSONObject();
+        jsonOutput.put("data", data);
+        jsonOutput.put("_promise_id", promiseId);
+        this.postMessage(instanceID, jsonOutput.toString());
     }
 
-    private void handleAddEventListener(String eventName) {
+    private void handleAddEventListener(int instanceID, JSONObject jsonInput)
+            throws JSONException {
+        String eventName = jsonInput.getString("eventName");
         if (eventName.equals("storageattach") || eventName.equals("storagedetach")) {
             mStorage.registerListener();
+        } else if (eventName.equals("cpuload")) {
+            mCPU.registerListener(instanceID, jsonInput);
+        }
+    }
+
+    private void handleRemoveEventListener(int instanceID, JSONObject jsonInput)
+            throws JSONException {
+        // Only the cpuload listeners cost something while registered.
+        if (jsonInput.getString("eventName").equals("cpuload")) {
+            mCPU.unregisterListener(instanceID);
         }
     }
 
@@ -96,25 +125,31 @@ public class DeviceCapabilities extends XWalkExtension {
 
     @Override
     public void onMessage(int instanceID, String message) {
-        if (!message.isEmpty()) {
-            handleMessage(instanceID, message);
-        }
+        mRouter.dispatch(instanceID, message);
+    }
+
+    @Override
+    public void onInstanceDestroyed(int instanceID) {
+        mCPU.unregisterListener(instanceID);
     }
 
     @Override
     public void onResume() {
+        mCPU.onResume();
         mDisplay.onResume();
         mStorage.onResume();
     }
 
     @Override
     public void onPause() {
+        mCPU.onPause();
         mDisplay.onPause();
         mStorage.onPause();
     }
 
     @Override
     public void onDestroy() {
+        mCPU.onDestroy();
         mDisplay.onDestroy();
         mStorage.onDestroy();
     }
@@ -5,23 +5,40 @@
 package org.xwalk.core.internal.extension.api.device_capabilities;
 
 import android.util.Log;
+import android.util.SparseArray;
 
-import java.io.RandomAccessFile;
-import java.io.IOException;
-
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.xwalk.core.internal.extension.XWalkExtensionContext;
 
-class DeviceCapabilitiesCPU {
-    private static final String SYSTEM_INFO_STAT_FILE = "/proc/stat";
+class DeviceCapabilitiesCPU implements CPULoadSampler.Listener {
     private static final String TAG = "DeviceCapabilitiesCPU";
+    private static final double DEFAULT_THRESHOLD = 0.1;
 
     private DeviceCapabilities mDeviceCapabilities;
 
     private int mCoreNum = 0;
     private String mCPUArch = "Unknown";
-    private double mCPULoad = 0.0;
+    private final CPULoadSampler mSampler;
+
+    private static class ListenerOptions {
+        final double mThreshold;
+        // The sampling interval, or a value <= 0 for the default one.
+        final long mInterval;
+
+        ListenerOptions(double threshold, long interval) {
+            mThreshold = threshold;
+            mInterval = interval;
+        }
+    }
+
+    // The cpuload listener options of each extension instance.
+    private final SparseArray<ListenerOptions> mListeners = new SparseArray<ListenerOptions>();
+    private boolean mIsPaused = false;
+    // A cpuload event is sent when the load moved by the threshold since the last one.
+    private double mThreshold = DEFAULT_THRESHOLD;
+    private double mNotifiedLoad = -1.0;
 
     public DeviceCapabilitiesCPU(DeviceCapabilities instance,
                                  XWalkExtensionContext context) {
@@ -30,16 +47,13 @@ class DeviceCapabilitiesCPU {
         // Get arch and core number at constructor since they won't change time to time.
         mCoreNum = Runtime.getRuntime().availableProcessors();
         mCPUArch = System.getProperty("os.arch");
+        mSampler = new CPULoadSampler(mCoreNum, this);
     }
 
     public JSONObject getInfo() {
-        getCPULoad();
-
         JSONObject out = new JSONObject();
         try {
-            out.put("numOfProcessors", mCoreNum);
-            out.put("archName", mCPUArch);
-            out.put("load", mCPULoad);
+            buildInfo(out);
         } catch (JSONException e) {
             return mDeviceCapabilities.setErrorMessage(e.toString());
         }
@@ -47,49 +61,112 @@ class DeviceCapabilitiesCPU {
         return out;
     }
 
+    private void buildInfo(JSONObject out) throws JSONException {
+        double[] loads = new double[mCoreNum + 1];
+        double[] averageLoads = new double[mCoreNum + 1];
+        mSampler.getLoads(loads, averageLoads);
+
+        out.put("numOfProcessors", mCoreNum);
+        out.put("archName", mCPUArch);
+        out.put("load", loads[0]);
+        out.put("averageLoad", averageLoads[0]);
+        JSONArray coreLoads = new JSONArray();
+        for (int i = 1; i <= mCoreNum; i++) {
+            coreLoads.put(loads[i]);
+        }
+        out.put("coreLoads", coreLoads);
+    }
+
     /**
-     * The algorithm here can be found at:
-     * http://stackoverflow.com/questions/3017162/how-to-get-total-cpu-usage-in-linux-c
+     * Start sending cpuload events, or update the options of an instance
+     * which already listens.
+     * @param message holds the "listeners" of the instance, each of which may
+     *        give the "threshold" of load change to notify, and the sampling
+     *        "interval" in milliseconds.
      */
-    private boolean getCPULoad() {
-        try {
-            RandomAccessFile file = new RandomAccessFile(SYSTEM_INFO_STAT_FILE, "r");
-            String line = file.readLine();
-
-            String[] arrs = line.split("\\s+");
-            long total1 = 0;
-            for (int i = 1; i < arrs.length; ++i) {
-                total1 += Long.parseLong(arrs[i]);
-            }
-            // arrs[4] is the time spent in idle tasks.
-            long used1 = total1 - Long.parseLong(arrs[4]);
-            try {
-                Thread.sleep(1000);
-            } catch (Exception e) {
-                mCPULoad = 0.0;
-                return false;
+    public synchronized void registerListener(int instanceID, JSONObject message) {
+        double threshold = DEFAULT_THRESHOLD;
+        long interval = 0;
+        JSONArray listeners = message.optJSONArray("listeners");
+        if (listeners != null && listeners.length() > 0) {
+            threshold = Double.MAX_VALUE;
+            for (int i = 0; i < listeners.length(); i++) {
+                JSONObject options = listeners.optJSONObject(i);
+                if (options == null) options = new JSONObject();
+                threshold = Math.min(threshold,
+                        options.optDouble("threshold", DEFAULT_THRESHOLD));
+                long listenerInterval = options.optLong("interval", 0);
+                if (listenerInterval > 0 && (interval <= 0 || listenerInterval < interval)) {
+                    interval = listenerInterval;
+                }
             }
+        }
 
-            file.seek(0);
-            line = file.readLine();
-            file.close();
+        if (mListeners.size() == 0) mNotifiedLoad = -1.0;
+        mListeners.put(instanceID, new ListenerOptions(threshold, interval));
+        updateListening();
+    }
 
-            arrs = line.split("\\s+");
-            long total2 = 0;
-            for (int i = 1; i < arrs.length; ++i) {
-                total2 += Long.parseLong(arrs[i]);
-            }
-            // arrs[4] is the time spent in idle tasks.
-            long used2 = total2 - Long.parseLong(arrs[4]);
-            if (total2 == total1) {
-                mCPULoad = 0.0;
-            } else {
-                mCPULoad = (double) (used2 - used1) / (total2 - total1);
+    /**
+     * Stop sending cpuload events for an instance.
+     */
+    public synchronized void unregisterListener(int instanceID) {
+        mListeners.remove(instanceID);
+        updateListening();
+    }
+
+    // Serve the most demanding listener, and sample only while there is one.
+    private void updateListening() {
+        if (mListeners.size() == 0) {
+            mSampler.stopListening();
+            return;
+        }
+
+        double threshold = Double.MAX_VALUE;
+        long interval = Long.MAX_VALUE;
+        for (int i = 0; i < mListeners.size(); i++) {
+            ListenerOptions options = mListeners.valueAt(i);
+            threshold = Math.min(threshold, options.mThreshold);
+            if (options.mInterval > 0) interval = Math.min(interval, options.mInterval);
+        }
+        mThreshold = threshold;
+        mSampler.setInterval(
+                interval == Long.MAX_VALUE ? CPULoadSampler.DEFAULT_INTERVAL : interval);
+        if (!mIsPaused) mSampler.startListening();
+    }
+
+    @Override
+    public void onSample(CPULoadSampler sampler) {
+        JSONObject data = new JSONObject();
+        try {
+            buildInfo(data);
+            double load = data.getDouble("load");
+            synchronized (this) {
+                if (mNotifiedLoad >= 0 && Math.abs(load - mNotifiedLoad) < mThreshold) return;
+                mNotifiedLoad = load;
             }
-        } catch (IOException e) {
-            mCPULoad = 0.0;
-            return false;
+
+            JSONObject out = new JSONObject();
+            out.put("reply", "cpuLoad");
+            out.put("eventName", "cpuload");
+            out.put("data", data);
+            mDeviceCapabilities.broadcastMessage(out.toString());
+        } catch (JSONException e) {
+            Log.e(TAG, e.toString());
         }
-        return true;
+    }
+
+    public synchronized void onResume() {
+        mIsPaused = false;
+        if (mListeners.size() > 0) mSampler.startListening();
+    }
+
+    public synchronized void onPause() {
+        mIsPaused = true;
+        mSampler.stopListening();
+    }
+
+    public void onDestroy() {
+        mSampler.destroy();
     }
 }
@@ -4,18 +4,55 @@
 
 package org.xwalk.core.internal.extension.api.device_capabilities;
 
+import android.content.Context;
+
 import org.json.JSONObject;
+import org.xwalk.core.internal.XWalkMemoryPressureManager;
 import org.xwalk.core.internal.extension.XWalkExtensionContext;
 
 class DeviceCapabilitiesCodecs {
-    private XWalkMediaCodec mediaCodec;
+    // The codecs don't change while the process runs, so they are only
+    // listed once, by the first request, until memory is short.
+    private static JSONObject sCodecsInfo;
+    // The approximate size of sCodecsInfo.
+    private static long sCodecsInfoSize;
+
+    private static final XWalkMemoryPressureManager.ReleasableCache sCodecsCache =
+            new XWalkMemoryPressureManager.ReleasableCache() {
+        @Override
+        public long release(int level) {
+            synchronized (DeviceCapabilitiesCodecs.class) {
+                if (sCodecsInfo == null) return 0;
+                sCodecsInfo = null;
+                return sCodecsInfoSize;
+            }
+        }
+    };
+
+    private DeviceCapabilities mDeviceCapabilities;
+    private Context mContext;
 
     public DeviceCapabilitiesCodecs(DeviceCapabilities instance,
                                     XWalkExtensionContext context) {
-        mediaCodec = XWalkMediaCodec.Create(instance);
+        mDeviceCapabilities = instance;
+        mContext = context.getContext();
     }
 
+    /**
+     * @return the info, shared by all requests. It must not be modified.
+     */
     public JSONObject getInfo() {
-        return mediaCodec.getCodecsInfo();
+        synchronized (DeviceCapabilitiesCodecs.class) {
+            if (sCodecsInfo != null) return sCodecsInfo;
+            JSONObject info = XWalkMediaCodec.Create(mDeviceCapabilities).getCodecsInfo();
+            if (info.has("error")) return info;
+            sCodecsInfo = info;
+            sCodecsInfoSize = info.toString().length() * 2;
+            // Listing the codecs again is cheap compared to the other caches.
+            XWalkMemoryPressureManager.unregister(sCodecsCache);
+            XWalkMemoryPressureManager.register(mContext, sCodecsCache,
+                    XWalkMemoryPressureManager.RETAIN_LOW);
+            return sCodecsInfo;
+        }
     }
 }
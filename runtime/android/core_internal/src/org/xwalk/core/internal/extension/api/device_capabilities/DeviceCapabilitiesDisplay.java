@@ -26,16 +26,26 @@ class DeviceCapabilitiesDisplay {
     // Holds all available displays connected to the system.
     private final SparseArray<Display> mDisplayList = new SparseArray<Display>();
 
+    // Dropped on every display event, see getInfo().
+    private final InfoSnapshot mSnapshot = new InfoSnapshot() {
+        @Override
+        protected JSONObject compute() {
+            return buildInfo();
+        }
+    };
+
     private final XWalkDisplayManager.DisplayListener mDisplayListener =
             new XWalkDisplayManager.DisplayListener() {
         @Override
         public void onDisplayAdded(int displayId) {
+            mSnapshot.invalidate();
             // Broadcast and add the added display to JavaScript
             notifyAndSaveConnectedDisplay(mDisplayManager.getDisplay(displayId));
         }
 
         @Override
         public void onDisplayRemoved(int displayId) {
+            mSnapshot.invalidate();
             Display disp = mDisplayList.get(displayId);
 
             // Do nothing if the display does not exsit on cache.
@@ -49,6 +59,8 @@ class DeviceCapabilitiesDisplay {
 
         @Override
         public void onDisplayChanged(int displayId) {
+            // Sizes and metrics change with the rotation.
+            mSnapshot.invalidate();
         }
     };
 
@@ -61,7 +73,14 @@ class DeviceCapabilitiesDisplay {
         initDisplayList();
     }
 
+    /**
+     * @return the info, reused until a display event. It must not be modified.
+     */
     public JSONObject getInfo() {
+        return mSnapshot.get();
+    }
+
+    private JSONObject buildInfo() {
         JSONObject out = new JSONObject();
         JSONArray arr = new JSONArray();
 
@@ -130,6 +149,7 @@ class DeviceCapabilitiesDisplay {
 
             mDeviceCapabilities.broadcastMessage(out.toString());
             mDisplayList.put(disp.getDisplayId(), disp);
+            mSnapshot.invalidate();
         } catch (JSONException e) {
             mDeviceCapabilities.printErrorMessage(e);
         }
@@ -144,12 +164,15 @@ class DeviceCapabilitiesDisplay {
 
             mDeviceCapabilities.broadcastMessage(out.toString());
             mDisplayList.remove(disp.getDisplayId());
+            mSnapshot.invalidate();
         } catch (JSONException e) {
             mDeviceCapabilities.printErrorMessage(e);
         }
     }
 
     public void onResume() {
+        // Events were not listened to while paused.
+        mSnapshot.invalidate();
         Display[] displays = mDisplayManager.getDisplays();
 
         // Firstly, check whether display in latest list is in cached display list.
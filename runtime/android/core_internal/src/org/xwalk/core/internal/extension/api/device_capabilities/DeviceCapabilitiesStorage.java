@@ -35,6 +35,14 @@ class DeviceCapabilitiesStorage {
     private boolean mIsListening = false;
     private IntentFilter mIntentFilter = new IntentFilter();
 
+    // Dropped on every media broadcast, see getInfo().
+    private final InfoSnapshot mSnapshot = new InfoSnapshot() {
+        @Override
+        protected JSONObject compute() {
+            return buildInfo();
+        }
+    };
+
     class StorageUnit {
         private int mId;
         private String mName;
@@ -121,6 +129,7 @@ class DeviceCapabilitiesStorage {
     private final BroadcastReceiver mStorageListener = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
+            mSnapshot.invalidate();
             String action = intent.getAction();
             if (Intent.ACTION_MEDIA_MOUNTED.equals(action)) {
                 notifyAndSaveAttachedStorage();
@@ -145,12 +154,21 @@ class DeviceCapabilitiesStorage {
         initStorageList();
     }
 
+    /**
+     * @return the info, reused until a media broadcast. It must not be modified.
+     */
     public JSONObject getInfo() {
+        return mSnapshot.get();
+    }
+
+    private JSONObject buildInfo() {
         JSONObject out = new JSONObject();
         JSONArray arr = new JSONArray();
         try {
             for(int i = 0; i < mStorageList.size(); i++) {
-                arr.put(mStorageList.valueAt(i).convertToJSON());
+                StorageUnit unit = mStorageList.valueAt(i);
+                unit.updateCapacity();
+                arr.put(unit.convertToJSON());
             }
             out.put("storages", arr);
         } catch (JSONException e) {
@@ -239,6 +257,7 @@ class DeviceCapabilitiesStorage {
             return;
         }
 
+        mSnapshot.invalidate();
         StorageUnit unit = mStorageList.valueAt(mStorageList.size() - 1);
         JSONObject out = new JSONObject();
         try {
@@ -269,12 +288,15 @@ class DeviceCapabilitiesStorage {
             mDeviceCapabilities.broadcastMessage(out.toString());
             mStorageList.remove(unit.getId());
             --mStorageCount;
+            mSnapshot.invalidate();
         } catch (JSONException e) {
             mDeviceCapabilities.printErrorMessage(e);
         }
     }
 
     public void onResume() {
+        // Broadcasts were not received while paused.
+        mSnapshot.invalidate();
         // Fistly, check the lasted external storage is valid.
         // If not, remove it and send "ondetached" event.
         StorageUnit lastUnit = mStorageList.valueAt(mStorageList.size() - 1);
@@ -0,0 +1,44 @@
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.extension.api.device_capabilities;
+
+import org.json.JSONObject;
+
+/**
+ * The info of a capability category, kept until the owner sees an event
+ * invalidating it. Info computed while an invalidation happened is not
+ * kept, as it may predate the event. Errors are never kept.
+ *
+ * The returned object is shared, it must not be modified.
+ */
+abstract class InfoSnapshot {
+    private JSONObject mInfo;
+    private int mGeneration = 0;
+
+    /**
+     * @return the info, computed if needed.
+     */
+    JSONObject get() {
+        int generation;
+        synchronized (this) {
+            if (mInfo != null) return mInfo;
+            generation = mGeneration;
+        }
+
+        JSONObject info = compute();
+        if (info.has("error")) return info;
+        synchronized (this) {
+            if (generation == mGeneration) mInfo = info;
+        }
+        return info;
+    }
+
+    synchronized void invalidate() {
+        mGeneration++;
+        mInfo = null;
+    }
+
+    protected abstract JSONObject compute();
+}
@@ -5,9 +5,9 @@
 var _promises = {};
 var _next_promise_id = 0;
 var _listeners = {};
-// Preserve 4 spaces to hold onattach, ondetach, onconnect and ondisconnect's
-// callback functions.
-var _next_listener_id = 4;
+// Preserve 5 spaces to hold onattach, ondetach, onconnect, ondisconnect and
+// oncpuload's callback functions.
+var _next_listener_id = 5;
 
 var Promise = requireNative('sysapps_promise').Promise;
 
@@ -72,6 +72,10 @@ function _createConstClone(obj) {
       var obj_array = obj[key];
       var const_obj_array = [];
       for (var i = 0; i < obj_array.length; ++i) {
+        if (typeof obj_array[i] !== 'object') {
+          const_obj_array.push(obj_array[i]);
+          continue;
+        }
         var const_sub_obj = {};
         for (var sub_key in obj_array[i]) {
           _addConstProperty(const_sub_obj, sub_key, obj_array[i][sub_key]);
@@ -92,9 +96,11 @@ extension.setMessageListener(function(json) {
   if (msg.reply == 'attachStorage' ||
       msg.reply == 'detachStorage' ||
       msg.reply == 'connectDisplay' ||
-      msg.reply == 'disconnectDisplay') {
+      msg.reply == 'disconnectDisplay' ||
+      msg.reply == 'cpuLoad') {
     for (var id in _listeners) {
-      if (_listeners[id]['eventName'] === msg.eventName) {
+      if (_listeners[id]['eventName'] === msg.eventName &&
+          typeof _listeners[id]['callback'] === 'function') {
         _listeners[id]['callback'](_createConstClone(msg.data));
       }
     }
@@ -110,7 +116,25 @@ extension.setMessageListener(function(json) {
   delete _promises[msg._promise_id];
 });
 
-function _addEventListener(isOn, eventName, callback) {
+// Sends the options of all the cpuload listeners, for the sampling to serve
+// the most demanding one. The sampling stops with the last one removed.
+function _updateCPULoadListening() {
+  var options = [];
+  for (var id in _listeners) {
+    if (_listeners[id]['eventName'] === 'cpuload')
+      options.push(_listeners[id]['options'] || {});
+  }
+  var msg = {
+    'cmd': options.length > 0 ? 'addEventListener' : 'removeEventListener',
+    'eventName': 'cpuload',
+    'listeners': options
+  };
+  extension.postMessage(JSON.stringify(msg));
+}
+
+// options is only used by 'cpuload': {threshold: load change to notify,
+// interval: sampling interval in milliseconds}.
+function _addEventListener(isOn, eventName, callback, options) {
   if (typeof eventName !== 'string') {
     console.log("Invalid parameters of eventName!");
     return -1;
@@ -121,14 +145,15 @@ function _addEventListener(isOn, eventName, callback) {
     return -1;
   }
 
-  if (isOn && (typeof callback !== null) && (typeof callback !== 'function')) {
+  if (isOn && (callback !== null) && (typeof callback !== 'function')) {
     console.log("Invalid parameters of callback!");
     return -1;
   }
 
   var listener = {
     'eventName': eventName,
-    'callback': callback
+    'callback': callback,
+    'options': options
   };
 
   var listener_id;
@@ -155,6 +180,17 @@ function _addEventListener(isOn, eventName, callback) {
         listener_id = 3;
         break;
 
+      case 'cpuload':
+        // Setting oncpuload to null removes the listener.
+        if (callback === null) {
+          delete _listeners[4];
+          _updateCPULoadListening();
+          return -1;
+        }
+        _listeners[4] = listener;
+        listener_id = 4;
+        break;
+
       default:
         console.log("Invalid event name!");
         break;
@@ -165,7 +201,9 @@ function _addEventListener(isOn, eventName, callback) {
       _listeners[listener_id] = listener;
   }
 
-  if (_listeners[listener_id] != null) {
+  if (_listeners[listener_id] != null && listener.eventName === 'cpuload') {
+    _updateCPULoadListening();
+  } else if (_listeners[listener_id] != null) {
     var msg = {
       'cmd': 'addEventListener',
       'eventName': listener.eventName
@@ -200,8 +238,24 @@ Object.defineProperty(exports, 'ondisplaydisconnect', {
   }
 });
 
-exports.addEventListener = function(eventName, callback) {
-  return _addEventListener(false, eventName, callback);
+Object.defineProperty(exports, 'oncpuload', {
+  set: function(callback) {
+    _addEventListener(true, 'cpuload', callback);
+  }
+});
+
+exports.addEventListener = function(eventName, callback, options) {
+  return _addEventListener(false, eventName, callback, options);
+}
+
+exports.removeEventListener = function(listener_id) {
+  var listener = _listeners[listener_id];
+  if (!listener)
+    return;
+
+  delete _listeners[listener_id];
+  if (listener.eventName === 'cpuload')
+    _updateCPULoadListening();
 }
 
 var _sendSyncMessage = function(msg) {
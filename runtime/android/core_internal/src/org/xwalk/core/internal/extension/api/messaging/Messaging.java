@@ -13,8 +13,6 @@ import android.database.Cursor;
 import android.net.Uri; 
 
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -22,83 +20,68 @@ import org.json.JSONObject;
 import org.xwalk.core.internal.extension.api.messaging.MessagingManager;
 import org.xwalk.core.internal.extension.api.messaging.MessagingSmsManager;
 import org.xwalk.core.internal.extension.XWalkExtension;
+import org.xwalk.core.internal.extension.XWalkExtensionCommandRouter;
 import org.xwalk.core.internal.extension.XWalkExtensionContext;
-
-interface Command {
-    void runCommand(int instanceID, JSONObject jsonMsg);
-}
+import org.xwalk.core.internal.extension.XWalkExtensionMessage;
 
 public class Messaging extends XWalkExtension {
     public static final String JS_API_PATH = "jsapi/messaging_api.js";
 
     private static final String NAME = "xwalk.experimental.messaging";
 
-    private static HashMap<String, Command> sMethodMap = new HashMap<String, Command>();
-
     private MessagingSmsManager mSmsManager;
     private MessagingManager mMessagingManager;
+    private final XWalkExtensionCommandRouter mRouter = new XWalkExtensionCommandRouter(NAME);
 
-    private void initMethodMap() {
-        sMethodMap.put("msg_smsSend", new Command() {
-            public void runCommand(int instanceID, JSONObject jsonMsg) {
-                mSmsManager.onSmsSend(instanceID, jsonMsg); 
-            };
-        });
-        sMethodMap.put("msg_smsClear", new Command() {
-            public void runCommand(int instanceID, JSONObject jsonMsg) {
-                mSmsManager.onSmsClear(instanceID, jsonMsg);
-            };
-        });
-        sMethodMap.put("msg_smsSegmentInfo", new Command() {
-            public void runCommand(int instanceID, JSONObject jsonMsg) {
-                mSmsManager.onSmsSegmentInfo(instanceID, jsonMsg);
-            };
-        });
-        sMethodMap.put("msg_findMessages", new Command() {
-            public void runCommand(int instanceID, JSONObject jsonMsg) {
-                mMessagingManager.onMsgFindMessages(instanceID, jsonMsg);
-            };
-        });
-        sMethodMap.put("msg_getMessage", new Command() {
-            public void runCommand(int instanceID, JSONObject jsonMsg) {
-                mMessagingManager.onMsgGetMessage(instanceID, jsonMsg);
-            };
-        });
-        sMethodMap.put("msg_deleteMessage", new Command() {
-            public void runCommand(int instanceID, JSONObject jsonMsg) {
-                mMessagingManager.onMsgDeleteMessage(instanceID, jsonMsg);
-            };
-        });
-        sMethodMap.put("msg_deleteConversation", new Command() {
-            public void runCommand(int instanceID, JSONObject jsonMsg) {
-                mMessagingManager.onMsgDeleteConversation(instanceID, jsonMsg);
-            };
-        });
-        sMethodMap.put("msg_markMessageRead", new Command() {
-            public void runCommand(int instanceID, JSONObject jsonMsg) {
-                mMessagingManager.onMsgMarkMessageRead(instanceID, jsonMsg);
-            };
-        });
-        sMethodMap.put("msg_markConversationRead", new Command() {
-            public void runCommand(int instanceID, JSONObject jsonMsg) {
-                mMessagingManager.onMsgMarkConversationRead(instanceID, jsonMsg);
-            };
+    private void initCommands() {
+        mRouter.register("msg_smsSend", new XWalkExtensionCommandRouter.Command() {
+            @Override
+            public void run(int instanceID, XWalkExtensionMessage message) throws JSONException {
+                mSmsManager.onSmsSend(instanceID, message.getJson());
+            }
+        }).register("msg_smsClear", new XWalkExtensionCommandRouter.Command() {
+            @Override
+            public void run(int instanceID, XWalkExtensionMessage message) throws JSONException {
+                mSmsManager.onSmsClear(instanceID, message.getJson());
+            }
+        }).register("msg_smsSegmentInfo", new XWalkExtensionCommandRouter.Command() {
+            @Override
+            public void run(int instanceID, XWalkExtensionMessage message) throws JSONException {
+                mSmsManager.onSmsSegmentInfo(instanceID, message.getJson());
+            }
+        }).register("msg_findMessages", new XWalkExtensionCommandRouter.Command() {
+            @Override
+            public void run(int instanceID, XWalkExtensionMessage message) throws JSONException {
+                mMessagingManager.onMsgFindMessages(instanceID, message.getJson());
+            }
+        }).register("msg_getMessage", new XWalkExtensionCommandRouter.Command() {
+            @Override
+            public void run(int instanceID, XWalkExtensionMessage message) throws JSONException {
+                mMessagingManager.onMsgGetMessage(instanceID, message.getJson());
+            }
+        }).register("msg_deleteMessage", new XWalkExtensionCommandRouter.Command() {
+            @Override
+            public void run(int instanceID, XWalkExtensionMessage message) throws JSONException {
+                mMessagingManager.onMsgDeleteMessage(instanceID, message.getJson());
+            }
+        }).register("msg_deleteConversation", new XWalkExtensionCommandRouter.Command() {
+            @Override
+            public void run(int instanceID, XWalkExtensionMessage message) throws JSONException {
+                mMessagingManager.onMsgDeleteConversation(instanceID, message.getJson());
+            }
+        }).register("msg_markMessageRead", new XWalkExtensionCommandRouter.Command() {
+            @Override
+            public void run(int instanceID, XWalkExtensionMessage message) throws JSONException {
+                mMessagingManager.onMsgMarkMessageRead(instanceID, message.getJson());
+            }
+        }).register("msg_markConversationRead", new XWalkExtensionCommandRouter.Command() {
+            @Override
+            public void run(int instanceID, XWalkExtensionMessage message) throws JSONException {
+                mMessagingManager.onMsgMarkConversationRead(instanceID, message.getJson());
+            }
         });
     }
 
-    private String getCommandString(String message) {
-        if (message.isEmpty()) {
-            return "";
-        }
-
-        try {
-            return new JSONObject(message).getString("cmd");
-        } catch(Exception e) {
-            e.printStackTrace();
-            return "";
-        }
-    }
-
     public Messaging(String jsApiContent, XWalkExtensionContext context) {
         super(NAME, jsApiContent, context);
         mSmsManager = new MessagingSmsManager(mExtensionContext.getActivity(), this);
@@ -106,7 +89,7 @@ public class Messaging extends XWalkExtension {
         //FIXME:(shawn) When onStart and OnStop are ready. This should be moved to onStart.
         mMessagingManager = new MessagingManager(mExtensionContext.getActivity(), this);
 
-        initMethodMap();
+        initCommands();
     }
 
     @Override
@@ -117,21 +100,13 @@ public class Messaging extends XWalkExtension {
 
     @Override
     public void onMessage(int instanceID, String message) {
-        Command command = sMethodMap.get(getCommandString(message));
-
-        if (null != command) {
-            try {
-                command.runCommand(instanceID, new JSONObject(message));
-            } catch(Exception e) {
-                e.printStackTrace();
-                return;
-            }
-        }
+        mRouter.dispatch(instanceID, message);
     }
 
     @Override
     public String onSyncMessage(int instanceID, String message) {
-        if (getCommandString(message).equals("msg_smsServiceId")) {
+        XWalkExtensionMessage peeked = XWalkExtensionMessage.peek(message);
+        if (peeked != null && peeked.getCommand().equals("msg_smsServiceId")) {
             return mSmsManager.getServiceIds();
         }
         return "";
@@ -9,7 +9,9 @@ import java.text.SimpleDateFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashSet;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.xwalk.core.internal.extension.api.messaging.MessagingSmsConstMaps;
@@ -97,50 +99,109 @@ public class MessagingHelpers {
         return new Object[]{filterString, argsStringList.toArray(new String[argsStringList.size()])};
     }
 
+    /**
+     * Build the sort order of a query, with the paging clauses of the
+     * options appended so that the provider only reads the requested rows.
+     */
     public static String buildSqlFilterOptionString(JSONObject filterOption) {
-        String filterOptionString = "";
+        if (null == filterOption) {
+            return null;
+        }
 
+        String column = MessagingSmsConsts.DATE;
+        String order = "DESC";
         try {
             if (filterOption.has("sortBy")) {
-                filterOptionString += " " +
+                String sortBy =
                     MessagingSmsConstMaps.smsTableColumnDict.get(filterOption.getString("sortBy"));
+                if (null != sortBy) {
+                    column = sortBy;
+                    order = "";
+                }
             }
 
             if (filterOption.has("sortOrder")) {
-                filterOptionString += " " + 
+                String sortOrder =
                     MessagingSmsConstMaps.sortOrderDict.get(filterOption.getString("sortOrder"));
+                if (null != sortOrder) {
+                    order = sortOrder;
+                }
             }
 
+            String filterOptionString = column + " " + order;
+            // The values are parsed as numbers, so nothing else gets into the clause.
             if (filterOption.has("limit")) {
-                filterOptionString += " LIMIT " + filterOption.getString("limit");
+                filterOptionString += " LIMIT " + filterOption.getInt("limit");
+            } else if (filterOption.has("offset")) {
+                filterOptionString += " LIMIT -1";
+            }
+
+            if (filterOption.has("offset")) {
+                filterOptionString += " OFFSET " + filterOption.getInt("offset");
             }
+            return filterOptionString;
         } catch (JSONException e) {
             e.printStackTrace();
-            return "";
+            return null;
         }
+    }
 
-        return filterOptionString;
+    /**
+     * Build the projection reading only the columns of the fields listed
+     * in the "fields" option.
+     * @return the columns, or null to read them all.
+     */
+    public static String[] buildSmsProjection(JSONObject filterOption) {
+        if (null == filterOption) {
+            return null;
+        }
+
+        JSONArray fields = filterOption.optJSONArray("fields");
+        if (null == fields) {
+            return null;
+        }
+
+        LinkedHashSet<String> columns = new LinkedHashSet<String>();
+        columns.add(MessagingSmsConsts.ID);
+        for (int i = 0; i < fields.length(); i++) {
+            String column = MessagingSmsConstMaps.smsFieldColumnDict.get(fields.optString(i));
+            if (null != column) {
+                columns.add(column);
+            }
+        }
+        return columns.toArray(new String[columns.size()]);
     }
 
+    /**
+     * Convert the current row of a SMS cursor. Only the fields whose
+     * columns are in the cursor projection are filled.
+     */
     public static JSONObject SmsMessageCursor2Json(Cursor c) {
         JSONObject jsonMsg = null;
 
         try {
             jsonMsg = new JSONObject();
-            jsonMsg.put("messageID", c.getString(c.getColumnIndex(MessagingSmsConsts.ID)));
-            jsonMsg.put("conversationID", c.getString(c.getColumnIndex(MessagingSmsConsts.THREAD_ID)));
+            putString(jsonMsg, "messageID", c, MessagingSmsConsts.ID);
+            putString(jsonMsg, "conversationID", c, MessagingSmsConsts.THREAD_ID);
             jsonMsg.put("type", "sms");
             jsonMsg.put("serviceID", "");
-            jsonMsg.put("from", c.getString(c.getColumnIndex(MessagingSmsConsts.ADDRESS)));
-            jsonMsg.put("timestamp", convertDateLong2String(
-                    c.getLong(c.getColumnIndex(MessagingSmsConsts.DATE))));
-            jsonMsg.put("read", c.getString(c.getColumnIndex(MessagingSmsConsts.READ)));
+            putString(jsonMsg, "from", c, MessagingSmsConsts.ADDRESS);
+            int index = c.getColumnIndex(MessagingSmsConsts.DATE);
+            if (index != -1) {
+                jsonMsg.put("timestamp", convertDateLong2String(c.getLong(index)));
+            }
+            putString(jsonMsg, "read", c, MessagingSmsConsts.READ);
             jsonMsg.put("to", "");
-            jsonMsg.put("body", c.getString(c.getColumnIndex(MessagingSmsConsts.BODY)));
-            jsonMsg.put("state", MessagingSmsConstMaps.smsStateDictI2S.get(
-                    c.getInt(c.getColumnIndex(MessagingSmsConsts.TYPE))));
-            jsonMsg.put("deliveryStatus", MessagingSmsConstMaps.smsDiliveryStatusDictI2S.get(
-                    c.getInt(c.getColumnIndex(MessagingSmsConsts.STATUS))));
+            putString(jsonMsg, "body", c, MessagingSmsConsts.BODY);
+            index = c.getColumnIndex(MessagingSmsConsts.TYPE);
+            if (index != -1) {
+                jsonMsg.put("state", MessagingSmsConstMaps.smsStateDictI2S.get(c.getInt(index)));
+            }
+            index = c.getColumnIndex(MessagingSmsConsts.STATUS);
+            if (index != -1) {
+                jsonMsg.put("deliveryStatus",
+                        MessagingSmsConstMaps.smsDiliveryStatusDictI2S.get(c.getInt(index)));
+            }
             jsonMsg.put("deliveryTimestamp", "");
             jsonMsg.put("messageClass", "");
             return jsonMsg;
@@ -149,4 +210,12 @@ public class MessagingHelpers {
             return null;
         }
     }
+
+    private static void putString(JSONObject jsonMsg, String name, Cursor c, String column)
+            throws JSONException {
+        int index = c.getColumnIndex(column);
+        if (index != -1) {
+            jsonMsg.put(name, c.getString(index));
+        }
+    }
 }
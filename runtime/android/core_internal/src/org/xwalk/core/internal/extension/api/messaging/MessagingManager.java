@@ -34,6 +34,8 @@ import org.xwalk.core.internal.extension.api.messaging.MessagingSmsConsts;
 
 public class MessagingManager {
     private final static String TAG = "MessagingManager"; 
+    // Count of messages per posted chunk of findMessages results.
+    private final static int DEFAULT_CHUNK_SIZE = 100;
     private final Activity mMainActivity;
     private final Messaging mMessagingHandler;
 
@@ -122,44 +124,73 @@ public class MessagingManager {
             sqlArgs = new String[]{messageID};
         }
 
-        Cursor cursor = cr.query(contentUri, null, sqlString, sqlArgs, sqlOption);
+        String[] projection = null;
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        int limit = -1;
+        int offset = 0;
+        if (null != filterOption) {
+            projection = MessagingHelpers.buildSmsProjection(filterOption);
+            chunkSize = Math.max(1, filterOption.optInt("chunkSize", DEFAULT_CHUNK_SIZE));
+            limit = filterOption.optInt("limit", -1);
+            offset = filterOption.optInt("offset", 0);
+        }
+
+        JSONArray results = new JSONArray();
+        int count = 0;
+        if (msgType.equals("mms")) {
+            // TODO:(shawn) Pending on Android MMS related api get public. 
+            // MMS is implemented in native messaging app, but they are not exposed as public APIs.
+            // We ever tired to backport ~60 files with MMS feature supporting. Considering the pros and 
+            // cons, we would rather break the MMS feature than doing the ugly backport.
+        } else {
+            Cursor cursor = cr.query(contentUri, projection, sqlString, sqlArgs, sqlOption);
+            if (null != cursor) {
+                try {
+                    // Post the results by chunks as they are read, so that
+                    // neither side holds the whole result as one message.
+                    while (cursor.moveToNext()) {
+                        JSONObject jsonSmsObj = MessagingHelpers.SmsMessageCursor2Json(cursor);
+                        if (null != jsonSmsObj) {
+                            results.put(jsonSmsObj);
+                            count++;
+                        }
+                        if (results.length() >= chunkSize) {
+                            postResults(instanceID, promise_id, cmd + "_chunk", results, null);
+                            results = new JSONArray();
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        }
 
+        // The page is full, more messages may follow it.
+        Integer nextOffset = (limit > 0 && count == limit) ? offset + count : null;
+        postResults(instanceID, promise_id, cmd + "_ret", results, nextOffset);
+    }
+
+    private void postResults(int instanceID, String promise_id, String cmd,
+            JSONArray results, Integer nextOffset) {
         JSONObject jsonMsgRet = null;
-        JSONArray results = null;
         try {
             jsonMsgRet = new JSONObject();
-            results = new JSONArray(); 
             jsonMsgRet.put("_promise_id", promise_id);
-            jsonMsgRet.put("cmd", cmd + "_ret");
+            jsonMsgRet.put("cmd", cmd);
             JSONObject jsData = new JSONObject();
             jsonMsgRet.put("data", jsData);
             jsData.put("error", false);
             JSONObject jsBody = new JSONObject();
             jsData.put("body", jsBody);
             jsBody.put("results", results);
+            if (null != nextOffset) {
+                jsBody.put("nextOffset", nextOffset);
+            }
         } catch (JSONException e) {
             e.printStackTrace();
             return;
         }
-        
-        try {
-            if (msgType.equals("mms")) {
-                // TODO:(shawn) Pending on Android MMS related api get public. 
-                // MMS is implemented in native messaging app, but they are not exposed as public APIs.
-                // We ever tired to backport ~60 files with MMS feature supporting. Considering the pros and 
-                // cons, we would rather break the MMS feature than doing the ugly backport.
-            } else if (cursor.getCount() > 0) {
-                while (cursor.moveToNext()) {
-                    JSONObject jsonSmsObj = MessagingHelpers.SmsMessageCursor2Json(cursor);
-                    if (null != jsonSmsObj) {
-                        results.put(jsonSmsObj);
-                    }
-                }
-            }
-        } finally {
-            cursor.close();
-        }
-        
+
         mMessagingHandler.postMessage(instanceID, jsonMsgRet.toString());
     }
 
@@ -20,6 +20,9 @@ public class MessagingSmsConstMaps {
         new HashMap<String, Integer>();
     final public static HashMap<String, String> sortOrderDict = 
         new HashMap<String, String>();
+    // Columns needed to fill each field of a message.
+    final public static HashMap<String, String> smsFieldColumnDict =
+        new HashMap<String, String>();
 
     static {
         smsTableColumnDict.put("id", MessagingSmsConsts.ID);
@@ -48,5 +51,13 @@ public class MessagingSmsConstMaps {
         smsStateDictS2I.put("failed", MessagingSmsConsts.MESSAGE_TYPE_FAILED);
         sortOrderDict.put("ascending", "ASC");
         sortOrderDict.put("descending", "DESC");
+        smsFieldColumnDict.put("messageID", MessagingSmsConsts.ID);
+        smsFieldColumnDict.put("conversationID", MessagingSmsConsts.THREAD_ID);
+        smsFieldColumnDict.put("from", MessagingSmsConsts.ADDRESS);
+        smsFieldColumnDict.put("timestamp", MessagingSmsConsts.DATE);
+        smsFieldColumnDict.put("read", MessagingSmsConsts.READ);
+        smsFieldColumnDict.put("body", MessagingSmsConsts.BODY);
+        smsFieldColumnDict.put("state", MessagingSmsConsts.TYPE);
+        smsFieldColumnDict.put("deliveryStatus", MessagingSmsConsts.STATUS);
     }
 }
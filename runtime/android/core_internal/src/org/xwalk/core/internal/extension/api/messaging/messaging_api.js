@@ -3,6 +3,10 @@
 // found in the LICENSE file.
 
 var _promises = {};
+// Results of findMessages calls received so far, or the callbacks they are
+// streamed to, by promise id.
+var _findResults = {};
+var _findCallbacks = {};
 var _next_promise_id = 0;
 var _listeners = {};
 // Preserve 6 spaces to hold onreceived, onsent, ondeliverysuccess,
@@ -219,19 +223,43 @@ MessagingCursor.prototype.previous = function() {
   return ret;
 }
 
+function handleFindMessagesChunk(msgObj) {
+  var id = msgObj._promise_id;
+  if (_isFunction(_findCallbacks[id])) {
+    _findCallbacks[id](msgObj.data.body.results);
+  } else {
+    _findResults[id] = (_findResults[id] || []).concat(msgObj.data.body.results);
+  }
+}
+
 function handleFindMessages(msgObj) {
+  var id = msgObj._promise_id;
+  var streamed = _isFunction(_findCallbacks[id]);
+  if (!msgObj.data.error) {
+    handleFindMessagesChunk(msgObj);
+  }
+  var results = _findResults[id] || [];
+  delete _findResults[id];
+  delete _findCallbacks[id];
+
   if (msgObj.data.error) {
-    if (_isFunction(_promises[msgObj._promise_id].reject)) {
-      _promises[msgObj._promise_id].reject(msgObj.data.body);
+    if (_isFunction(_promises[id].reject)) {
+      _promises[id].reject(msgObj.data.body);
     }
   } else {
-    if (_isFunction(_promises[msgObj._promise_id].fulfill)) {
-      var cursor = new MessagingCursor(msgObj.data.body.results);
-      _promises[msgObj._promise_id].fulfill(cursor);
+    if (_isFunction(_promises[id].fulfill)) {
+      var nextOffset = msgObj.data.body.nextOffset;
+      if (streamed) {
+        _promises[id].fulfill({ nextOffset: nextOffset });
+      } else {
+        var cursor = new MessagingCursor(results);
+        cursor.nextOffset = nextOffset;
+        _promises[id].fulfill(cursor);
+      }
     }
   }
 
-  delete _promises[msgObj._promise_id];
+  delete _promises[id];
 }
 
 function handlePromise(msgObj) {
@@ -261,6 +289,10 @@ extension.setMessageListener(function(json) {
       handleEvent(_msg);
       break;
     }
+    case "msg_findMessages_chunk": {
+      handleFindMessagesChunk(_msg);
+      break;
+    }
     case "msg_findMessages_ret": {
       handleFindMessages(_msg);
       break;
@@ -281,6 +313,10 @@ extension.setMessageListener(function(json) {
   }
 });
 
+// Besides sortBy, sortOrder and limit, |options| may have:
+//   offset: the count of messages to skip, see the nextOffset of the result.
+//   fields: the names of the message fields to read, all if not set.
+//   chunkSize: the count of messages per transferred chunk.
 exports.findMessages = function(filter, options) {
   var _msg = {
     cmd: "msg_findMessages",
@@ -292,6 +328,24 @@ exports.findMessages = function(filter, options) {
   return postMessage(_msg);
 }
 
+// Same as findMessages, but the messages are given to |onmessages| chunk by
+// chunk as they are read instead of being gathered in a cursor. The promise
+// is fulfilled with { nextOffset: n } after the last chunk.
+exports.findMessagesStream = function(filter, options, onmessages) {
+  var _msg = {
+    cmd: "msg_findMessages",
+    data: {
+      filter: filter,
+      options: options
+    }
+  }
+  var p = postMessage(_msg);
+  if (_isFunction(onmessages)) {
+    _findCallbacks[_msg._promise_id] = onmessages;
+  }
+  return p;
+}
+
 exports.findConversations = function(groupBy, filter, options) {
   // TODO:(shawn) Spec is not ready for this part.
 }
@@ -18,6 +18,7 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.security.SecureRandom;
 
 import org.chromium.base.ThreadUtils;
 
@@ -32,19 +33,27 @@ public class PresentationExtension extends XWalkExtension {
     public final static String JS_API_PATH = "jsapi/presentation_api.js";
 
     private final static String NAME = "navigator.presentation";
+    private final static int INVALID_INSTANCE_ID = -1;
     private final static String TAG = "PresentationExtension";
 
     // Tags:
     private final static String TAG_BASE_URL = "baseUrl";
     private final static String TAG_CMD = "cmd";
     private final static String TAG_DATA = "data";
+    private final static String TAG_ENABLED = "enabled";
     private final static String TAG_REQUEST_ID = "requestId";
+    private final static String TAG_TOKEN = "token";
     private final static String TAG_URL = "url";
 
     // Command messages:
+    private final static String CMD_CHANNEL_ATTACH = "ChannelAttach";
+    private final static String CMD_CHANNEL_CLOSE = "ChannelClose";
+    private final static String CMD_CHANNEL_DATA = "ChannelData";
+    private final static String CMD_CHANNEL_OPEN = "ChannelOpen";
     private final static String CMD_DISPLAY_AVAILABLE_CHANGE = "DisplayAvailableChange";
     private final static String CMD_QUERY_DISPLAY_AVAILABILITY = "QueryDisplayAvailability";
     private final static String CMD_REQUEST_SHOW = "RequestShow";
+    private final static String CMD_SET_WARM_MODE = "SetWarmMode";
     private final static String CMD_SHOW_SUCCEEDED = "ShowSucceeded";
     private final static String CMD_SHOW_FAILED = "ShowFailed";
 
@@ -66,6 +75,25 @@ public class PresentationExtension extends XWalkExtension {
     private XWalkPresentationContent.PresentationDelegate mPresentationDelegate;
     private PresentationView mPresentationView;
 
+    // In warm mode, a content and its view are prepared for the preferred
+    // display as soon as it's available, and optionally loaded from the url
+    // hint, so that requestShow only has to show them. Only used on the UI
+    // thread.
+    private boolean mWarmMode = false;
+    private String mWarmUrl;
+    private XWalkPresentationContent mWarmContent;
+    private PresentationView mWarmView;
+
+    // The channel between the page which requested the presentation and the
+    // presentation content. The content proves it's the presentation by
+    // sending back the token given to it once loaded. Channel data messages
+    // are then forwarded as is to the peer instance, without being parsed.
+    private final Object mChannelLock = new Object();
+    private final SecureRandom mRandom = new SecureRandom();
+    private int mOpenerInstanceId = INVALID_INSTANCE_ID;
+    private int mPresentationInstanceId = INVALID_INSTANCE_ID;
+    private String mChannelToken;
+
     /**
      * Listens for the secondary display arrival and removal.
      *
@@ -87,12 +115,19 @@ public class PresentationExtension extends XWalkExtension {
             // Notify that the secondary display for presentation show becomes
             // available now if the first one is added.
             if (mAvailableDisplayCount == 1) notifyAvailabilityChanged(true);
+
+            warmUp(getPreferredDisplay());
         }
 
         @Override
         public void onDisplayRemoved(int displayId) {
             --mAvailableDisplayCount;
 
+            if (mWarmView != null && mWarmView.getDisplay().getDisplayId() == displayId) {
+                discardWarmContent();
+                warmUp(getPreferredDisplay());
+            }
+
             // Notify that the secondary display for presentation show becomes
             // unavailable now if the last one is removed already.
             if (mAvailableDisplayCount == 0) {
@@ -185,18 +220,31 @@ public class PresentationExtension extends XWalkExtension {
         String cmd = null;
         String url = null;
         String baseUrl = null;
+        boolean enabled = false;
+        String token = null;
         try {
             reader.beginObject();
             while (reader.hasNext()) {
                 String name = reader.nextName();
                 if (name.equals(TAG_CMD)) {
                     cmd = reader.nextString();
+                    // The channel data is the hot path, don't read past the
+                    // command, which comes first.
+                    if (cmd.equals(CMD_CHANNEL_DATA)) {
+                        forwardChannelData(instanceId, message);
+                        reader.close();
+                        return;
+                    }
+                } else if (name.equals(TAG_TOKEN)) {
+                    token = reader.nextString();
                 } else if (name.equals(TAG_REQUEST_ID)) {
                     requestId = reader.nextInt();
                 } else if (name.equals(TAG_URL)) {
                     url = reader.nextString();
                 } else if (name.equals(TAG_BASE_URL)) {
                     baseUrl = reader.nextString();
+                } else if (name.equals(TAG_ENABLED)) {
+                    enabled = reader.nextBoolean();
                 } else {
                     reader.skipValue();
                 }
@@ -206,6 +254,10 @@ public class PresentationExtension extends XWalkExtension {
 
             if (cmd != null && cmd.equals(CMD_REQUEST_SHOW) && requestId >= 0) {
                 handleRequestShow(instanceId, requestId, url, baseUrl);
+            } else if (cmd != null && cmd.equals(CMD_SET_WARM_MODE)) {
+                handleSetWarmMode(enabled, url, baseUrl);
+            } else if (cmd != null && cmd.equals(CMD_CHANNEL_ATTACH)) {
+                attachChannel(instanceId, token);
             }
         } catch (IOException e) {
             Log.d(TAG, "Error: " + e);
@@ -248,27 +300,21 @@ public class PresentationExtension extends XWalkExtension {
                 // Check the url passed to requestShow.
                 // If it's relative, combine it with baseUrl to make it abslute.
                 // If the url is invalid, notify the JS side ERROR_INVALID_PARAMETER exception.
-                String targetUrl = url;
-                URI targetUri = null;
+                String targetUrl;
                 try {
-                    targetUri = new URI(url);
-                    if (!targetUri.isAbsolute()) {
-                        URI baseUri = new URI(baseUrl);
-                        targetUrl = baseUri.resolve(targetUri).toString();
-                    }
+                    targetUrl = resolveUrl(url, baseUrl);
                 } catch (URISyntaxException e) {
                     Log.e(TAG, "Invalid url passed to requestShow");
                     notifyRequestShowFail(instanceId, requestId, ERROR_INVALID_PARAMETER);
                     return;
                 }
 
-                mPresentationContent = new XWalkPresentationContent(
-                        mExtensionContext.getContext(),
-                        mExtensionContext.getActivity(),
+                XWalkPresentationContent.PresentationDelegate delegate =
                         new XWalkPresentationContent.PresentationDelegate() {
                     @Override
                     public void onContentLoaded(XWalkPresentationContent content) {
                         notifyRequestShowSucceed(instanceId, requestId, content.getPresentationId());
+                        offerChannel(instanceId, content);
                     }
 
                     @Override
@@ -276,12 +322,32 @@ public class PresentationExtension extends XWalkExtension {
                         if (content == mPresentationContent) {
                             closePresentationContent();
                             if (mPresentationView != null) mPresentationView.cancel();
+                            warmUp(getPreferredDisplay());
                         }
                     }
-                });
+                };
+
+                if (mWarmContent != null) {
+                    // Adopt the warm content, and its view if it's for the same display.
+                    mPresentationContent = mWarmContent;
+                    if (isOnDisplay(mWarmView, preferredDisplay)) mPresentationView = mWarmView;
+                    mWarmContent = null;
+                    mWarmView = null;
+                    mPresentationContent.setDelegate(delegate);
+                    if (mPresentationContent.isLoaded(targetUrl)) {
+                        delegate.onContentLoaded(mPresentationContent);
+                    } else if (!mPresentationContent.isLoading(targetUrl)) {
+                        mPresentationContent.load(targetUrl);
+                    }
+                } else {
+                    mPresentationContent = new XWalkPresentationContent(
+                            mExtensionContext.getContext(),
+                            mExtensionContext.getActivity(),
+                            delegate);
 
-                // Start to load the content from the target url.
-                mPresentationContent.load(targetUrl);
+                    // Start to load the content from the target url.
+                    mPresentationContent.load(targetUrl);
+                }
 
                 // Update the presentation view in order that the content could be presented
                 // on the preferred display.
@@ -290,6 +356,79 @@ public class PresentationExtension extends XWalkExtension {
         });
     }
 
+    private void handleSetWarmMode(final boolean enabled, final String url,
+                                   final String baseUrl) {
+        ThreadUtils.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                String warmUrl = null;
+                try {
+                    if (url != null) warmUrl = resolveUrl(url, baseUrl);
+                } catch (URISyntaxException e) {
+                    Log.e(TAG, "Invalid url hint passed to setWarmMode");
+                }
+
+                // Drop what was prepared for another hint.
+                boolean sameHint = warmUrl == null ? mWarmUrl == null : warmUrl.equals(mWarmUrl);
+                mWarmMode = enabled;
+                mWarmUrl = warmUrl;
+                if (!enabled || !sameHint) discardWarmContent();
+                warmUp(getPreferredDisplay());
+            }
+        });
+    }
+
+    /**
+     * Prepare a content and its view for display, in warm mode and if no
+     * presentation is showed or prepared.
+     */
+    private void warmUp(Display display) {
+        if (!mWarmMode || display == null || mPresentationContent != null ||
+                mWarmContent != null ||
+                Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return;
+        }
+
+        // A warm page closing itself can't be presented anymore. It's not
+        // prepared again until requested, the page would close it again.
+        XWalkPresentationContent.PresentationDelegate delegate =
+                new XWalkPresentationContent.PresentationDelegate() {
+            @Override
+            public void onContentLoaded(XWalkPresentationContent content) {
+            }
+
+            @Override
+            public void onContentClosed(XWalkPresentationContent content) {
+                if (content == mWarmContent) discardWarmContent();
+            }
+        };
+        mWarmContent = new XWalkPresentationContent(
+                mExtensionContext.getContext(), mExtensionContext.getActivity(), delegate);
+        if (mWarmUrl != null) {
+            mWarmContent.load(mWarmUrl);
+        } else {
+            mWarmContent.prepare();
+        }
+        // Don't render it until it's showed.
+        mWarmContent.onHide();
+        mWarmView = createPresentationView(display, mWarmContent);
+    }
+
+    private void discardWarmContent() {
+        mWarmView = null;
+        if (mWarmContent == null) return;
+
+        mWarmContent.close();
+        mWarmContent = null;
+    }
+
+    // If url is relative, combine it with baseUrl to make it absolute.
+    private static String resolveUrl(String url, String baseUrl) throws URISyntaxException {
+        URI targetUri = new URI(url);
+        if (targetUri.isAbsolute()) return url;
+        return new URI(baseUrl).resolve(targetUri).toString();
+    }
+
     @Override
     public String onSyncMessage(int instanceId, String message) {
         if (message.equals(CMD_QUERY_DISPLAY_AVAILABILITY)) {
@@ -332,6 +471,12 @@ public class PresentationExtension extends XWalkExtension {
 
         updatePresentationView(getPreferredDisplay());
 
+        // Displays may have changed while paused.
+        if (mWarmView != null && !isOnDisplay(mWarmView, getPreferredDisplay())) {
+            discardWarmContent();
+        }
+        warmUp(getPreferredDisplay());
+
         // Register the listener to display manager.
         mDisplayManager.registerDisplayListener(mDisplayListener);
     }
@@ -349,7 +494,7 @@ public class PresentationExtension extends XWalkExtension {
 
         // If the presentation view is showed on another display, we need to dismiss it
         // and re-create a new one.
-        if (mPresentationView != null && mPresentationView.getDisplay() != preferredDisplay) {
+        if (mPresentationView != null && !isOnDisplay(mPresentationView, preferredDisplay)) {
             dismissPresentationView();
         }
 
@@ -357,38 +502,52 @@ public class PresentationExtension extends XWalkExtension {
         // the displaying system will automatically restore the content on the view once
         // the Activity gets resumed.
         if (mPresentationView == null && mPresentationContent != null) {
-            // Remove the content view from its previous view hierarchy if have.
-            ViewGroup parent = (ViewGroup)mPresentationContent.getContentView().getParent();
-            if (parent != null) parent.removeView(mPresentationContent.getContentView());
-
-            mPresentationView = PresentationView.createInstance(mExtensionContext.getContext(), preferredDisplay);
-            mPresentationView.setContentView(mPresentationContent.getContentView());
-            mPresentationView.setPresentationListener(new PresentationView.PresentationListener() {
-                @Override
-                public void onDismiss(PresentationView view) {
-                    // We need to pause the content if the view is dismissed from the screen
-                    // to avoid unnecessary overhead to update the content, e.g. stop animation
-                    // and JS execution.
-                    if (view == mPresentationView) {
-                        if (mPresentationContent != null) mPresentationContent.onPause();
-                        mPresentationView = null;
-                    }
-                }
-
-                @Override
-                public void onShow(PresentationView view) {
-                    // The presentation content may be paused due to the presentation view was
-                    // dismissed, we need to resume it when the new view is showed.
-                    if (view == mPresentationView && mPresentationContent != null) {
-                        mPresentationContent.onResume();
-                    }
-                }
-            });
+            mPresentationView = createPresentationView(preferredDisplay, mPresentationContent);
         }
 
         mPresentationView.show();
     }
 
+    // DisplayManager returns new Display objects on each call, so displays are
+    // told apart by their id.
+    private static boolean isOnDisplay(PresentationView view, Display display) {
+        Display viewDisplay = view.getDisplay();
+        return viewDisplay != null && display != null &&
+                viewDisplay.getDisplayId() == display.getDisplayId();
+    }
+
+    private PresentationView createPresentationView(Display display,
+                                                    XWalkPresentationContent content) {
+        // Remove the content view from its previous view hierarchy if have.
+        ViewGroup parent = (ViewGroup)content.getContentView().getParent();
+        if (parent != null) parent.removeView(content.getContentView());
+
+        PresentationView view = PresentationView.createInstance(mExtensionContext.getContext(), display);
+        view.setContentView(content.getContentView());
+        view.setPresentationListener(new PresentationView.PresentationListener() {
+            @Override
+            public void onDismiss(PresentationView view) {
+                // We need to pause the content if the view is dismissed from the screen
+                // to avoid unnecessary overhead to update the content, e.g. stop animation
+                // and JS execution.
+                if (view == mPresentationView) {
+                    if (mPresentationContent != null) mPresentationContent.onPause();
+                    mPresentationView = null;
+                }
+            }
+
+            @Override
+            public void onShow(PresentationView view) {
+                // The presentation content may be paused due to the presentation view was
+                // dismissed, we need to resume it when the new view is showed.
+                if (view == mPresentationView && mPresentationContent != null) {
+                    mPresentationContent.onResume();
+                }
+            }
+        });
+        return view;
+    }
+
     @Override
     public void onPause() {
         dismissPresentationView();
@@ -399,10 +558,17 @@ public class PresentationExtension extends XWalkExtension {
         mDisplayManager.unregisterDisplayListener(mDisplayListener);
     }
 
+    @Override
+    public void onInstanceDestroyed(int instanceId) {
+        // Stop forwarding data to a page which went away.
+        closeChannel(instanceId);
+    }
+
     @Override
     public void onDestroy() {
         // close the presentation content if have.
         closePresentationContent();
+        discardWarmContent();
     }
 
     private void dismissPresentationView() {
@@ -415,7 +581,102 @@ public class PresentationExtension extends XWalkExtension {
     private void closePresentationContent() {
         if (mPresentationContent == null) return;
 
+        closeChannel();
         mPresentationContent.close();
         mPresentationContent = null;
     }
+
+    /**
+     * Give a new channel token to the loaded content, once per page load. It's
+     * the only script evaluated in the content, the data then goes through
+     * postMessage.
+     */
+    private void offerChannel(int openerInstanceId, XWalkPresentationContent content) {
+        byte[] bytes = new byte[16];
+        mRandom.nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes) token.append(String.format("%02x", b));
+
+        closeChannel();
+        synchronized (mChannelLock) {
+            mOpenerInstanceId = openerInstanceId;
+            mChannelToken = token.toString();
+        }
+        content.evaluateJavascript(
+                "navigator.presentation._attachChannel('" + token.toString() + "');");
+    }
+
+    private void attachChannel(int instanceId, String token) {
+        int opener;
+        synchronized (mChannelLock) {
+            if (mChannelToken == null || !mChannelToken.equals(token)) {
+                Log.e(TAG, "Invalid channel token received from instance " + instanceId);
+                return;
+            }
+            // The token is only valid once.
+            mChannelToken = null;
+            mPresentationInstanceId = instanceId;
+            opener = mOpenerInstanceId;
+        }
+        postChannelCommand(opener, CMD_CHANNEL_OPEN);
+        postChannelCommand(instanceId, CMD_CHANNEL_OPEN);
+    }
+
+    private void forwardChannelData(int instanceId, String message) {
+        int peer;
+        synchronized (mChannelLock) {
+            if (mPresentationInstanceId == INVALID_INSTANCE_ID) return;
+            if (instanceId == mOpenerInstanceId) {
+                peer = mPresentationInstanceId;
+            } else if (instanceId == mPresentationInstanceId) {
+                peer = mOpenerInstanceId;
+            } else {
+                return;
+            }
+        }
+        postMessage(peer, message);
+    }
+
+    private void closeChannel() {
+        closeChannel(INVALID_INSTANCE_ID);
+    }
+
+    /**
+     * Close the channel, telling both ends but goneInstanceId, which was
+     * destroyed. Nothing happens if the channel doesn't involve it.
+     */
+    private void closeChannel(int goneInstanceId) {
+        int opener;
+        int presentation;
+        synchronized (mChannelLock) {
+            if (goneInstanceId != INVALID_INSTANCE_ID && goneInstanceId != mOpenerInstanceId &&
+                    goneInstanceId != mPresentationInstanceId) {
+                return;
+            }
+            opener = mOpenerInstanceId;
+            presentation = mPresentationInstanceId;
+            mOpenerInstanceId = INVALID_INSTANCE_ID;
+            mPresentationInstanceId = INVALID_INSTANCE_ID;
+            mChannelToken = null;
+        }
+        if (presentation == INVALID_INSTANCE_ID) return;
+        if (opener != goneInstanceId) postChannelCommand(opener, CMD_CHANNEL_CLOSE);
+        if (presentation != goneInstanceId) postChannelCommand(presentation, CMD_CHANNEL_CLOSE);
+    }
+
+    private void postChannelCommand(int instanceId, String cmd) {
+        StringWriter contents = new StringWriter();
+        JsonWriter writer = new JsonWriter(contents);
+
+        try {
+            writer.beginObject();
+            writer.name(TAG_CMD).value(cmd);
+            writer.endObject();
+            writer.close();
+
+            postMessage(instanceId, contents.toString());
+        } catch (IOException e) {
+            Log.e(TAG, "Error: " + e.toString());
+        }
+    }
 }
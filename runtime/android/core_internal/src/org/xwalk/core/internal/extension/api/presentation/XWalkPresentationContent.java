@@ -24,7 +24,8 @@ public class XWalkPresentationContent {
     private Context mContext;
     private Activity mActivity;
     private PresentationDelegate mDelegate;
-
+    private String mUrl;
+    private boolean mLoaded = false;
 
     public XWalkPresentationContent(Context context, Activity activity, PresentationDelegate delegate) {
         mContext = context;
@@ -32,32 +33,66 @@ public class XWalkPresentationContent {
         mDelegate = delegate;
     }
 
-    public void load(final String url) {
-        if (mContentView == null) {
-            mContentView = new XWalkViewInternal(mContext, mActivity);
-            final XWalkUIClientInternal xWalkUIClient = new XWalkUIClientInternal(mContentView) {
-                @Override
-                public void onJavascriptCloseWindow(XWalkViewInternal view) {
-                    // The content was closed already. Web need to invalidate the
-                    // presentation id now.
-                    mPresentationId = INVALID_PRESENTATION_ID;
-                    onContentClosed();
+    /**
+     * Create the content view without loading anything, so that a later
+     * load() only has to load the page.
+     */
+    public void prepare() {
+        if (mContentView != null) return;
+
+        mContentView = new XWalkViewInternal(mContext, mActivity);
+        final XWalkUIClientInternal xWalkUIClient = new XWalkUIClientInternal(mContentView) {
+            @Override
+            public void onJavascriptCloseWindow(XWalkViewInternal view) {
+                // The content was closed already. Web need to invalidate the
+                // presentation id now.
+                mPresentationId = INVALID_PRESENTATION_ID;
+                mLoaded = false;
+                onContentClosed();
+            }
+
+            @Override
+            public void onPageLoadStopped(
+                    XWalkViewInternal view, String url, LoadStatusInternal status) {
+                if (status == LoadStatusInternal.FINISHED) {
+                    mPresentationId = mContentView.getContentID();
+                    mLoaded = true;
+                    onContentLoaded();
                 }
+            }
+        };
+        mContentView.setUIClient(xWalkUIClient);
+    }
 
-                @Override
-                public void onPageLoadStopped(
-                        XWalkViewInternal view, String url, LoadStatusInternal status) {
-                    if (status == LoadStatusInternal.FINISHED) {
-                        mPresentationId = mContentView.getContentID();
-                        onContentLoaded();
-                    }
-                }
-            };
-            mContentView.setUIClient(xWalkUIClient);
-        }
+    public void load(final String url) {
+        prepare();
+        mUrl = url;
+        mLoaded = false;
         mContentView.load(url, null);
     }
 
+    /**
+     * @return whether url was the last one loaded, and finished loading.
+     */
+    public boolean isLoaded(String url) {
+        return mLoaded && url.equals(mUrl);
+    }
+
+    /**
+     * @return whether url was the last one loaded, and is still loading.
+     */
+    public boolean isLoading(String url) {
+        return !mLoaded && url.equals(mUrl);
+    }
+
+    public void setDelegate(PresentationDelegate delegate) {
+        mDelegate = delegate;
+    }
+
+    public void evaluateJavascript(String script) {
+        if (mContentView != null) mContentView.evaluateJavascript(script, null);
+    }
+
     public int getPresentationId() {
         return mPresentationId;
     }
@@ -77,6 +112,14 @@ public class XWalkPresentationContent {
         mContentView.onHide();
     }
 
+    /**
+     * Stop rendering the content while it's not presented, without pausing
+     * the timers shared with the other views.
+     */
+    public void onHide() {
+        mContentView.onHide();
+    }
+
     public void onResume() {
         mContentView.resumeTimers();
         mContentView.onShow();
@@ -5,9 +5,11 @@
 #include "xwalk/runtime/browser/android/cookie_manager.h"
 
 #include <string>
+#include <vector>
 
 #include "android_webview/browser/scoped_allow_wait_for_legacy_web_view_api.h"
 #include "android_webview/native/aw_browser_dependency_factory.h"
+#include "base/android/jni_array.h"
 #include "base/android/jni_string.h"
 #include "base/bind.h"
 #include "base/bind_helpers.h"
@@ -51,10 +53,16 @@ class CookieManager {
   bool AcceptCookie();
   void SetCookie(const GURL& host, const std::string& cookie_value);
   std::string GetCookie(const GURL& host);
+  void SetCookies(const std::vector<GURL>& hosts,
+                  const std::vector<std::string>& cookie_values,
+                  bool wait_for_completion);
+  void GetCookies(const std::vector<GURL>& hosts,
+                  std::vector<std::string>* cookie_values);
   void RemoveSessionCookie();
   void RemoveAllCookie();
   void RemoveExpiredCookie();
   void FlushCookieStore();
+  void FlushCookieStoreAndWait();
   bool HasCookies();
   bool AllowFileSchemeCookies();
   void SetAcceptFileSchemeCookies(bool accept);
@@ -83,11 +91,30 @@ class CookieManager {
                                std::string* result,
                                const std::string& value);
 
+  void SetCookiesAsyncHelper(
+      const std::vector<GURL>& hosts,
+      const std::vector<std::string>& values,
+      base::WaitableEvent* completion);
+  void SetCookiesCompleted(base::WaitableEvent* completion,
+                           size_t* pending,
+                           bool success);
+
+  void GetCookieValuesAsyncHelper(
+      const std::vector<GURL>& hosts,
+      std::vector<std::string>* results,
+      base::WaitableEvent* completion);
+  void GetCookieValuesCompleted(base::WaitableEvent* completion,
+                                std::vector<std::string>* results,
+                                size_t index,
+                                size_t* pending,
+                                const std::string& value);
+
   void RemoveSessionCookieAsyncHelper(base::WaitableEvent* completion);
   void RemoveAllCookieAsyncHelper(base::WaitableEvent* completion);
   void RemoveCookiesCompleted(int num_deleted);
 
   void FlushCookieStoreAsyncHelper(base::WaitableEvent* completion);
+  void FlushCookieStoreAndWaitAsyncHelper(base::WaitableEvent* completion);
 
   void HasCookiesAsyncHelper(bool* result,
                              base::WaitableEvent* completion);
@@ -208,6 +235,110 @@ void CookieManager::GetCookieValueCompleted(base::WaitableEvent* completion,
   completion->Signal();
 }
 
+// Sets all the cookies from a single task on the FILE thread. When
+// |wait_for_completion| is true, returns once every cookie is set.
+void CookieManager::SetCookies(const std::vector<GURL>& hosts,
+                               const std::vector<std::string>& cookie_values,
+                               bool wait_for_completion) {
+  DCHECK_EQ(hosts.size(), cookie_values.size());
+  if (hosts.empty())
+    return;
+
+  ExecCookieTask(base::Bind(&CookieManager::SetCookiesAsyncHelper,
+                            base::Unretained(this),
+                            hosts,
+                            cookie_values), wait_for_completion);
+}
+
+void CookieManager::SetCookiesAsyncHelper(
+    const std::vector<GURL>& hosts,
+    const std::vector<std::string>& values,
+    base::WaitableEvent* completion) {
+  net::CookieOptions options;
+  options.set_include_httponly();
+
+  if (!completion) {
+    for (size_t i = 0; i < hosts.size(); ++i) {
+      cookie_monster_->SetCookieWithOptionsAsync(
+          hosts[i], values[i], options,
+          base::Bind(&CookieManager::SetCookieCompleted,
+                     base::Unretained(this)));
+    }
+    return;
+  }
+
+  // Deleted by the last completion. The callbacks all run on this thread.
+  size_t* pending = new size_t(hosts.size());
+  for (size_t i = 0; i < hosts.size(); ++i) {
+    cookie_monster_->SetCookieWithOptionsAsync(
+        hosts[i], values[i], options,
+        base::Bind(&CookieManager::SetCookiesCompleted,
+                   base::Unretained(this),
+                   completion,
+                   pending));
+  }
+}
+
+void CookieManager::SetCookiesCompleted(base::WaitableEvent* completion,
+                                        size_t* pending,
+                                        bool success) {
+  if (--*pending > 0)
+    return;
+
+  delete pending;
+  completion->Signal();
+}
+
+// Requests all the cookies at once and waits for the last one.
+void CookieManager::GetCookies(const std::vector<GURL>& hosts,
+                               std::vector<std::string>* cookie_values) {
+  cookie_values->clear();
+  if (hosts.empty())
+    return;
+
+  ExecCookieTask(base::Bind(&CookieManager::GetCookieValuesAsyncHelper,
+                            base::Unretained(this),
+                            hosts,
+                            cookie_values), true);
+}
+
+void CookieManager::GetCookieValuesAsyncHelper(
+    const std::vector<GURL>& hosts,
+    std::vector<std::string>* results,
+    base::WaitableEvent* completion) {
+  net::CookieOptions options;
+  options.set_include_httponly();
+
+  results->resize(hosts.size());
+  // Deleted by the last completion. The callbacks all run on this thread.
+  size_t* pending = new size_t(hosts.size());
+  for (size_t i = 0; i < hosts.size(); ++i) {
+    cookie_monster_->GetCookiesWithOptionsAsync(
+        hosts[i],
+        options,
+        base::Bind(&CookieManager::GetCookieValuesCompleted,
+                   base::Unretained(this),
+                   completion,
+                   results,
+                   i,
+                   pending));
+  }
+}
+
+void CookieManager::GetCookieValuesCompleted(base::WaitableEvent* completion,
+                                             std::vector<std::string>* results,
+                                             size_t index,
+                                             size_t* pending,
+                                             const std::string& value) {
+  (*results)[index] = value;
+  if (--*pending > 0)
+    return;
+
+  delete pending;
+  DCHECK(completion);
+  completion->Signal();
+}
+
 void CookieManager::RemoveSessionCookie() {
   ExecCookieTask(base::Bind(&CookieManager::RemoveSessionCookieAsyncHelper,
                             base::Unretained(this)), false);
@@ -258,6 +389,19 @@ void CookieManager::FlushCookieStore() {
                             base::Unretained(this)), false);
 }
 
+void CookieManager::FlushCookieStoreAndWait() {
+  ExecCookieTask(
+      base::Bind(&CookieManager::FlushCookieStoreAndWaitAsyncHelper,
+                 base::Unretained(this)), true);
+}
+
+void CookieManager::FlushCookieStoreAndWaitAsyncHelper(
+    base::WaitableEvent* completion) {
+  DCHECK(completion);
+  cookie_monster_->FlushStore(
+      base::Bind(&base::WaitableEvent::Signal, base::Unretained(completion)));
+}
+
 bool CookieManager::HasCookies() {
   bool has_cookies;
   ExecCookieTask(base::Bind(&CookieManager::HasCookiesAsyncHelper,
@@ -325,6 +469,34 @@ static jstring GetCookie(JNIEnv* env, jobject obj, jstring url) {
       CookieManager::GetInstance()->GetCookie(host)).Release();
 }
 
+static void SetCookies(JNIEnv* env, jobject obj, jobjectArray urls,
+                       jobjectArray values, jboolean wait_for_completion) {
+  std::vector<base::string16> url_list;
+  base::android::AppendJavaStringArrayToStringVector(env, urls, &url_list);
+  std::vector<std::string> value_list;
+  base::android::AppendJavaStringArrayToStringVector(env, values, &value_list);
+
+  std::vector<GURL> hosts;
+  for (size_t i = 0; i < url_list.size(); ++i)
+    hosts.push_back(GURL(url_list[i]));
+
+  CookieManager::GetInstance()->SetCookies(hosts, value_list,
+                                           wait_for_completion);
+}
+
+static jobjectArray GetCookies(JNIEnv* env, jobject obj, jobjectArray urls) {
+  std::vector<base::string16> url_list;
+  base::android::AppendJavaStringArrayToStringVector(env, urls, &url_list);
+
+  std::vector<GURL> hosts;
+  for (size_t i = 0; i < url_list.size(); ++i)
+    hosts.push_back(GURL(url_list[i]));
+
+  std::vector<std::string> values;
+  CookieManager::GetInstance()->GetCookies(hosts, &values);
+  return base::android::ToJavaArrayOfStrings(env, values).Release();
+}
+
 static void RemoveSessionCookie(JNIEnv* env, jobject obj) {
   CookieManager::GetInstance()->RemoveSessionCookie();
 }
@@ -341,6 +513,10 @@ static void FlushCookieStore(JNIEnv* env, jobject obj) {
   CookieManager::GetInstance()->FlushCookieStore();
 }
 
+static void FlushCookieStoreAndWait(JNIEnv* env, jobject obj) {
+  CookieManager::GetInstance()->FlushCookieStoreAndWait();
+}
+
 static jboolean HasCookies(JNIEnv* env, jobject obj) {
   return CookieManager::GetInstance()->HasCookies();
 }
@@ -13,6 +13,7 @@
 #include "base/android/jni_array.h"
 #include "base/android/jni_string.h"
 #include "base/base_paths_android.h"
+#include "base/bind.h"
 #include "base/json/json_reader.h"
 #include "base/json/json_writer.h"
 #include "base/path_service.h"
@@ -26,6 +27,15 @@
 #include "content/public/common/renderer_preferences.h"
 #include "content/public/common/url_constants.h"
 #include "components/navigation_interception/intercept_navigation_delegate.h"
+#include "net/http/http_network_session.h"
+#include "net/http/http_request_headers.h"
+#include "net/http/http_request_info.h"
+#include "net/http/http_stream_factory.h"
+#include "net/http/http_transaction_factory.h"
+#include "net/ssl/ssl_config_service.h"
+#include "net/url_request/http_user_agent_settings.h"
+#include "net/url_request/url_request_context.h"
+#include "net/url_request/url_request_context_getter.h"
 #include "xwalk/application/common/application_manifest_constants.h"
 #include "xwalk/application/common/manifest.h"
 #include "xwalk/runtime/browser/android/net_disk_cache_remover.h"
@@ -71,6 +81,37 @@ class XWalkContentUserData : public base::SupportsUserData::Data {
   XWalkContent* content_;
 };
 
+// Open |count| connections to the host of |url|, including DNS resolution
+// and TCP/TLS handshake, without issuing any request. The sockets are
+// handed to the pool so that the next navigation to that host can use them.
+void PreconnectOnIOThread(const GURL& url,
+                          int count,
+                          net::URLRequestContextGetter* getter) {
+  DCHECK(BrowserThread::CurrentlyOn(BrowserThread::IO));
+  net::URLRequestContext* context = getter->GetURLRequestContext();
+  net::HttpTransactionFactory* factory = context->http_transaction_factory();
+  net::HttpNetworkSession* session = factory->GetSession();
+  if (!session)
+    return;
+
+  net::HttpRequestInfo request_info;
+  request_info.url = url;
+  request_info.method = "GET";
+  if (context->http_user_agent_settings()) {
+    request_info.extra_headers.SetHeader(
+        net::HttpRequestHeaders::kUserAgent,
+        context->http_user_agent_settings()->GetUserAgent());
+  }
+
+  net::SSLConfig ssl_config;
+  session->ssl_config_service()->GetSSLConfig(&ssl_config);
+  session->GetNextProtos(&ssl_config.next_protos);
+  ssl_config.verify_ev_cert = true;
+
+  session->http_stream_factory()->PreconnectStreams(
+      count, request_info, net::HIGHEST, ssl_config, ssl_config);
+}
+
 // FIXME(wang16): Remove following methods after deprecated fields
 // are not supported any more.
 void PrintManifestDeprecationWarning(std::string field) {
@@ -398,6 +439,22 @@ jboolean XWalkContent::SetState(JNIEnv* env, jobject obj, jbyteArray state) {
   return RestoreFromPickle(&iterator, web_contents_.get());
 }
 
+void XWalkContent::Preconnect(JNIEnv* env,
+                              jobject obj,
+                              jstring url,
+                              jint count) {
+  DCHECK(BrowserThread::CurrentlyOn(BrowserThread::UI));
+  GURL gurl(base::android::ConvertJavaStringToUTF8(env, url));
+  if (!gurl.is_valid() || !gurl.SchemeIsHTTPOrHTTPS() || count <= 0)
+    return;
+
+  scoped_refptr<net::URLRequestContextGetter> getter =
+      web_contents_->GetBrowserContext()->GetRequestContext();
+  BrowserThread::PostTask(
+      BrowserThread::IO, FROM_HERE,
+      base::Bind(&PreconnectOnIOThread, gurl, count, getter));
+}
+
 static jlong Init(JNIEnv* env, jobject obj, jobject web_contents_delegate,
     jobject contents_client_bridge) {
   XWalkContent* xwalk_core_content =
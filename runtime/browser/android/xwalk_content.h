@@ -45,6 +45,7 @@ class XWalkContent {
   base::android::ScopedJavaLocalRef<jbyteArray> GetState(JNIEnv* env,
                                                          jobject obj);
   jboolean SetState(JNIEnv* env, jobject obj, jbyteArray state);
+  void Preconnect(JNIEnv* env, jobject obj, jstring url, jint count);
 
   XWalkRenderViewHostExt* render_view_host_ext() {
     return render_view_host_ext_.get();
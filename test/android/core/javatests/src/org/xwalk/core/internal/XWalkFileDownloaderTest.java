@@ -0,0 +1,200 @@
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal;
+
+import android.content.Context;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+import org.chromium.base.test.util.Feature;
+import org.chromium.content.browser.test.util.CallbackHelper;
+
+import org.xwalk.core.xwview.test.XWalkViewTestBase;
+
+/**
+ * Test suite for XWalkFileDownloader.
+ */
+public class XWalkFileDownloaderTest extends XWalkViewTestBase {
+    private static final String ASSET = "www/index.html";
+    private static final String URL = "file:///android_asset/" + ASSET;
+
+    private Context mContext;
+    private XWalkFileDownloader mDownloader;
+    private File mDst;
+    private File mPart;
+    private File mStamp;
+    private byte[] mData;
+
+    private static class TestListener implements DownloadListener {
+        final CallbackHelper mFinishedHelper = new CallbackHelper();
+        final CallbackHelper mFailedHelper = new CallbackHelper();
+        String mChecksum;
+        boolean mCancelled;
+
+        @Override
+        public void onDownloadStart(String url, String userAgent,
+                String contentDisposition, String mimetype, long contentLength) {
+        }
+
+        @Override
+        public void onDownloadProgress(String url, long downloadedBytes, long totalBytes) {
+        }
+
+        @Override
+        public void onDownloadFinished(String url, String path, String checksum) {
+            mChecksum = checksum;
+            mFinishedHelper.notifyCalled();
+        }
+
+        @Override
+        public void onDownloadFailed(String url, boolean cancelled) {
+            mCancelled = cancelled;
+            mFailedHelper.notifyCalled();
+        }
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mContext = getActivity().getApplicationContext();
+        mDownloader = new XWalkFileDownloader(mContext);
+        mDst = new File(mContext.getCacheDir(), "downloaded.html");
+        mPart = new File(mDst.getPath() + XWalkFileDownloader.PARTIAL_SUFFIX);
+        mStamp = new File(mPart.getPath() + XWalkFileDownloader.STAMP_SUFFIX);
+        mDst.delete();
+        mPart.delete();
+        mStamp.delete();
+        mData = readAll(mContext.getAssets().open(ASSET));
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mDst.delete();
+        mPart.delete();
+        mStamp.delete();
+        super.tearDown();
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = input.read(buffer)) >= 0) output.write(buffer, 0, count);
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void write(File file, byte[] data, int length) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(data, 0, length);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    // The stamp the downloader records for a packaged asset.
+    private String assetStamp() throws Exception {
+        long modified = mContext.getPackageManager().getPackageInfo(
+                mContext.getPackageName(), 0).lastUpdateTime;
+        return mData.length + ":" + modified;
+    }
+
+    private void waitForFinished(TestListener listener) throws Exception {
+        listener.mFinishedHelper.waitForCallback(0, 1, WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @SmallTest
+    @Feature({"FileDownloader"})
+    public void testEnqueue() throws Throwable {
+        TestListener listener = new TestListener();
+        assertTrue(mDownloader.enqueue(URL, mDst, mData.length, listener));
+        waitForFinished(listener);
+
+        assertEquals(sha256(mData), listener.mChecksum);
+        assertEquals(sha256(mData), sha256(readAll(new FileInputStream(mDst))));
+        assertFalse(mPart.exists());
+        assertFalse(mStamp.exists());
+    }
+
+    @SmallTest
+    @Feature({"FileDownloader"})
+    public void testResume() throws Throwable {
+        // A partial download with the right stamp is kept as is, so altered
+        // partial data shows it was resumed from.
+        byte[] expected = mData.clone();
+        int partLength = expected.length / 2;
+        for (int i = 0; i < partLength; i++) expected[i] = 'x';
+        write(mPart, expected, partLength);
+        write(mStamp, assetStamp().getBytes(), assetStamp().length());
+
+        TestListener listener = new TestListener();
+        assertTrue(mDownloader.enqueue(URL, mDst, mData.length, listener));
+        waitForFinished(listener);
+
+        assertEquals(sha256(expected), listener.mChecksum);
+        assertEquals(sha256(expected), sha256(readAll(new FileInputStream(mDst))));
+    }
+
+    @SmallTest
+    @Feature({"FileDownloader"})
+    public void testRestartWhenSourceChanged() throws Throwable {
+        byte[] partial = mData.clone();
+        int partLength = partial.length / 2;
+        for (int i = 0; i < partLength; i++) partial[i] = 'x';
+        write(mPart, partial, partLength);
+        String stale = (mData.length + 1) + ":1";
+        write(mStamp, stale.getBytes(), stale.length());
+
+        TestListener listener = new TestListener();
+        assertTrue(mDownloader.enqueue(URL, mDst, mData.length, listener));
+        waitForFinished(listener);
+
+        assertEquals(sha256(mData), listener.mChecksum);
+        assertEquals(sha256(mData), sha256(readAll(new FileInputStream(mDst))));
+    }
+
+    @SmallTest
+    @Feature({"FileDownloader"})
+    public void testCancel() throws Throwable {
+        assertFalse(mDownloader.cancel(URL));
+
+        TestListener listener = new TestListener();
+        assertTrue(mDownloader.enqueue(URL, mDst, mData.length, listener));
+        if (mDownloader.cancel(URL)) {
+            // Already being cancelled.
+            assertFalse(mDownloader.cancel(URL));
+            listener.mFailedHelper.waitForCallback(
+                    0, 1, WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertTrue(listener.mCancelled);
+            assertFalse(mDst.exists());
+            assertFalse(mPart.exists());
+            assertEquals(0, listener.mFinishedHelper.getCallCount());
+        } else {
+            // It completed before it could be cancelled.
+            waitForFinished(listener);
+            assertTrue(mDst.exists());
+        }
+        assertFalse(mDownloader.cancel(URL));
+    }
+}
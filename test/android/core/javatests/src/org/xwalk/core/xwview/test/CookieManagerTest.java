@@ -11,6 +11,7 @@ import org.chromium.base.test.util.Feature;
 import android.test.MoreAsserts;
 import android.test.suitebuilder.annotation.MediumTest;
 import android.util.Pair;
+import android.webkit.ValueCallback;
 
 import org.chromium.content.browser.test.util.Criteria;
 import org.chromium.content.browser.test.util.CriteriaHelper;
@@ -19,9 +20,13 @@ import org.chromium.net.test.util.TestWebServer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.xwalk.core.XWalkView;
 import org.xwalk.core.internal.XWalkCookieManager;
@@ -233,4 +238,89 @@ public class CookieManagerTest extends XWalkViewTestBase {
             }
         }));
     }
+
+    @MediumTest
+    @Feature({"BatchCookies"})
+    public void testSetAndGetCookies() throws InterruptedException {
+        mCookieManager.setAcceptCookie(true);
+        mCookieManager.removeAllCookie();
+
+        final String url1 = "http://www.example.com";
+        final String url2 = "http://www.example.org";
+        final String url3 = "http://www.example.net";
+        Map<String, List<String>> cookies = new HashMap<String, List<String>>();
+        cookies.put(url1, Arrays.asList("name1=test1", "name2=test2"));
+        cookies.put(url2, Arrays.asList("name3=test3"));
+        mCookieManager.setCookies(cookies);
+
+        Map<String, String> result = mCookieManager.getCookies(Arrays.asList(url1, url2, url3));
+        assertEquals(3, result.size());
+        validateCookies(result.get(url1), "name1", "name2");
+        validateCookies(result.get(url2), "name3");
+        assertNull(result.get(url3));
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Map<String, String> asyncResult = new HashMap<String, String>();
+        mCookieManager.getCookiesAsync(Arrays.asList(url2),
+                new ValueCallback<Map<String, String>>() {
+            @Override
+            public void onReceiveValue(Map<String, String> value) {
+                asyncResult.putAll(value);
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(6000, TimeUnit.MILLISECONDS));
+        validateCookies(asyncResult.get(url2), "name3");
+
+        mCookieManager.removeAllCookie();
+        assertTrue(CriteriaHelper.pollForCriteria(new Criteria() {
+            @Override
+            public boolean isSatisfied() {
+                return !mCookieManager.hasCookies();
+            }
+        }));
+    }
+
+    @MediumTest
+    @Feature({"BatchCookies"})
+    public void testSetCookiesAsyncAndFlush() throws InterruptedException {
+        mCookieManager.setAcceptCookie(true);
+        mCookieManager.removeAllCookie();
+
+        final String url1 = "http://www.example.com";
+        final String url2 = "http://www.example.org";
+        Map<String, List<String>> cookies = new HashMap<String, List<String>>();
+        cookies.put(url1, Arrays.asList("name1=test1", "name2=test2"));
+        cookies.put(url2, Arrays.asList("name3=test3"));
+
+        // The cookies are all set when the callback is called, without polling.
+        final CountDownLatch setLatch = new CountDownLatch(1);
+        mCookieManager.setCookiesAsync(cookies, new ValueCallback<Void>() {
+            @Override
+            public void onReceiveValue(Void value) {
+                setLatch.countDown();
+            }
+        });
+        assertTrue(setLatch.await(6000, TimeUnit.MILLISECONDS));
+        validateCookies(mCookieManager.getCookie(url1), "name1", "name2");
+        validateCookies(mCookieManager.getCookie(url2), "name3");
+
+        final CountDownLatch flushLatch = new CountDownLatch(1);
+        mCookieManager.flushCookieStoreAsync(new ValueCallback<Void>() {
+            @Override
+            public void onReceiveValue(Void value) {
+                flushLatch.countDown();
+            }
+        });
+        assertTrue(flushLatch.await(6000, TimeUnit.MILLISECONDS));
+        assertTrue(mCookieManager.hasCookies());
+
+        mCookieManager.removeAllCookie();
+        assertTrue(CriteriaHelper.pollForCriteria(new Criteria() {
+            @Override
+            public boolean isSatisfied() {
+                return !mCookieManager.hasCookies();
+            }
+        }));
+    }
 }
@@ -0,0 +1,63 @@
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.xwview.test;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.chromium.base.test.util.Feature;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Test suite for prerender().
+ */
+public class PrerenderTest extends XWalkViewTestBase {
+    final String mTitle = "Crosswalk Sample Application";
+    final String mUrl = "file:///android_asset/www/index.html";
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    private boolean prerenderOnUiThread(final String url) throws Throwable {
+        return runTestOnUiThreadAndGetResult(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return getXWalkView().prerender(url);
+            }
+        });
+    }
+
+    @SmallTest
+    @Feature({"Prerender"})
+    public void testPrerenderAndLoad() throws Throwable {
+        assertTrue(prerenderOnUiThread(mUrl));
+        loadUrlAsync(mUrl);
+        assertTrue(pollOnUiThread(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mTitle.equals(getXWalkView().getTitle());
+            }
+        }));
+    }
+
+    @SmallTest
+    @Feature({"Prerender"})
+    public void testWrongPrediction() throws Throwable {
+        final String name = "index.html";
+        final String fileContent = getFileContent(name);
+
+        assertTrue(prerenderOnUiThread("file:///android_asset/www/unused.html"));
+        loadDataSync(name, fileContent, "text/html", false);
+        assertEquals(mTitle, getTitleOnUiThread());
+        assertNull(runTestOnUiThreadAndGetResult(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return getXWalkView().getPrerenderUrl();
+            }
+        }));
+    }
+}
@@ -0,0 +1,109 @@
+// Copyright (c) 2014 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.xwview.test;
+
+import android.app.Activity;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.chromium.base.test.util.Feature;
+import org.chromium.net.test.util.TestWebServer;
+
+import org.xwalk.core.XWalkView;
+import org.xwalk.core.XWalkViewManager;
+import org.xwalk.core.xwview.test.util.CommonResources;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Test suite for XWalkViewManager.
+ */
+public class XWalkViewManagerTest extends XWalkViewTestBase {
+    private static final String TITLE = "discarded page title";
+
+    private TestWebServer mWebServer;
+    private XWalkView mXWalkView;
+    private XWalkView mOtherXWalkView;
+    private XWalkViewManager mManager;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+
+        final Activity activity = getActivity();
+        mXWalkView = getXWalkView();
+        mOtherXWalkView = createXWalkViewContainerOnMainSync(activity,
+                new XWalkViewTestBase.TestXWalkUIClient(),
+                new XWalkViewTestBase.TestXWalkResourceClient());
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mManager = new XWalkViewManager(activity, 1);
+            }
+        });
+        mWebServer = new TestWebServer(false);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        if (mWebServer != null) {
+            mWebServer.shutdown();
+        }
+        super.tearDown();
+    }
+
+    private int getLiveViewCountOnUiThread() throws Throwable {
+        return runTestOnUiThreadAndGetResult(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return mManager.getLiveViewCount();
+            }
+        });
+    }
+
+    @SmallTest
+    @Feature({"XWalkViewManager"})
+    public void testDiscardAndRestore() throws Throwable {
+        String html = CommonResources.makeHtmlPageFrom("<title>" + TITLE + "</title>", "");
+        String url = mWebServer.setResponse("/discard.html", html, null);
+        loadUrlSync(url);
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mXWalkView.onHide();
+                mManager.add(mXWalkView);
+                mManager.add(mOtherXWalkView);
+            }
+        });
+        assertEquals(1, getLiveViewCountOnUiThread());
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mXWalkView.onShow();
+            }
+        });
+        assertEquals(2, getLiveViewCountOnUiThread());
+        assertTrue(pollOnUiThread(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return TITLE.equals(mXWalkView.getTitle());
+            }
+        }));
+    }
+
+    @SmallTest
+    @Feature({"XWalkViewManager"})
+    public void testVisibleViewIsKept() throws Throwable {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mManager.add(mXWalkView);
+                mManager.add(mOtherXWalkView);
+            }
+        });
+        assertEquals(2, getLiveViewCountOnUiThread());
+    }
+}
@@ -9,6 +9,8 @@ import android.app.Activity;
 import android.content.Context;
 import android.test.ActivityInstrumentationTestCase2;
 
+import org.chromium.content.browser.test.util.Criteria;
+import org.chromium.content.browser.test.util.CriteriaHelper;
 import org.xwalk.app.runtime.XWalkRuntimeClient;
 import org.xwalk.app.XWalkRuntimeActivityBase;
 import org.xwalk.test.util.XWalkRuntimeClientTestUtilBase.PageStatusCallback;
@@ -23,6 +25,20 @@ public class XWalkRuntimeClientTestGeneric<T extends XWalkRuntimeActivityBase>
         super.setUp();
 
         final XWalkRuntimeActivityBase activity = getActivity();
+        // In shared mode, the runtime view is loaded once the runtime library is probed.
+        assertTrue(CriteriaHelper.pollForCriteria(new Criteria() {
+            @Override
+            public boolean isSatisfied() {
+                final boolean[] tried = new boolean[1];
+                getInstrumentation().runOnMainSync(new Runnable() {
+                    @Override
+                    public void run() {
+                        tried[0] = activity.hasTriedLoadRuntimeView();
+                    }
+                });
+                return tried[0];
+            }
+        }));
         getInstrumentation().runOnMainSync(new Runnable() {
             @Override
             public void run() {